@@ -5,6 +5,7 @@ import javax.swing.JPanel;
 import javax.swing.ImageIcon;
 import javax.swing.JButton;
 import javax.swing.JFileChooser;
+import javax.swing.SwingUtilities;
 
 import java.awt.BorderLayout;
 import java.awt.Container;
@@ -15,7 +16,10 @@ import java.awt.GridBagLayout;
 import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 
+import java.util.List;
 import java.util.Locale;
 import java.util.Scanner;
 
@@ -38,8 +42,12 @@ public class AAC implements ActionListener {
 	private int endIndex;
 	private static final int NUM_ACROSS = 3;
 	private static final int NUM_DOWN = 3;
-	private String[] images;
+	private static final int NUM_PREDICTIONS = 4;
+	private static final String PREDICTION = "predict:";
+	private List<String> images;
+	private AACMappings.Prediction[] predictions;
 	private AACMappings aacMappings;
+	private Autosaver autosaver;
 	private Scanner input;
 
 	/**
@@ -50,14 +58,39 @@ public class AAC implements ActionListener {
 	 */
 	public AAC(String filename) {
 		//this.aacMappings = new AACCategory("test");
-		this.aacMappings = new AACMappings(filename);
-		this.images = this.aacMappings.getImageLocs();
+		// Show the home page at once; the categories are read in the background
+		this.aacMappings = new AACMappings(filename, AACMappings.LoadMode.STREAMING);
+		// Changes go to a journal, which saving makes durable
+		this.aacMappings.openJournal(filename + ".journal");
+		// Remember the text of every image added, to offer it when it is added again;
+		// the vocabulary belongs to this board, so it sits next to its file
+		this.aacMappings.openVocabulary(filename + ".vocabulary");
+		// Keep a full copy of the board up to date without waiting on the disk
+		this.autosaver = new Autosaver(this.aacMappings, "AACMappingsNew.txt",
+				Autosaver.DEFAULT_DELAY, e -> SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(
+						this.frame, "Could not save the board: " + e.getMessage(), "AAC Save",
+						JOptionPane.ERROR_MESSAGE)));
+		// Show edits made to the file by other programs, and the file rewritten by a
+		// journal fold; reloading keeps the changes still in the journal
+		this.aacMappings.startWatching(() -> SwingUtilities.invokeLater(this::reloaded));
+		this.images = this.aacMappings.getImageList();
+		this.predictions = this.aacMappings.predict(NUM_PREDICTIONS);
 		this.startIndex = 0;
-		this.endIndex = Math.min(NUM_ACROSS * NUM_DOWN, this.images.length);
+		this.endIndex = Math.min(NUM_ACROSS * NUM_DOWN, this.images.size());
 		frame = new JFrame();
 		frame.setPreferredSize(new Dimension(500, 500));
 		loadImages(NUM_ACROSS, NUM_DOWN);
 		frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+		// Save the last changes before exiting, rather than dropping those made
+		// within the autosave delay
+		frame.addWindowListener(new WindowAdapter() {
+			@Override
+			public void windowClosing(WindowEvent e) {
+				AAC.this.aacMappings.stopWatching();
+				AAC.this.autosaver.close();
+				AAC.this.aacMappings.closeVocabulary();
+			}
+		});
 		frame.pack();
 		frame.setVisible(true);
 		input = new Scanner(System.in);
@@ -78,9 +111,9 @@ public class AAC implements ActionListener {
 		topPanel.setLayout(new GridBagLayout());
 		GridBagConstraints c = new GridBagConstraints();
 		String category = "Home Page";
-		if (!this.aacMappings.getCurrentCategory().equals("")) {
-			category = this.aacMappings.getCurrentCategory();
-	}
+		if (!this.aacMappings.getCategory().equals("")) {
+			category = this.aacMappings.getCategory();
+		}
 
 		c.gridx = 0;
 		c.gridy = 0;
@@ -94,6 +127,12 @@ public class AAC implements ActionListener {
 			home.setActionCommand("");
 			home.addActionListener(this);
 			panel1.add(home);
+			if (!this.aacMappings.getCategory().equals("")) {
+				JButton up = new JButton("Up");
+				up.setActionCommand("up");
+				up.addActionListener(this);
+				panel1.add(up);
+			}
 			JButton save = new JButton(new ImageIcon("img/save.png"));
 			save.setActionCommand("save");
 			save.addActionListener(this);
@@ -106,6 +145,22 @@ public class AAC implements ActionListener {
 		c.gridx = 0;
 		c.gridy = 1;
 		topPanel.add(panel1, c);
+
+		// add the predicted next items, from any category
+		if (this.predictions.length > 0) {
+			JPanel strip = new JPanel();
+			strip.setLayout(new GridLayout(1, NUM_PREDICTIONS));
+			for (int i = 0; i < this.predictions.length; i++) {
+				JButton button = new JButton(new ImageIcon(this.predictions[i].getImageLoc()));
+				button.setToolTipText(this.predictions[i].getText());
+				button.setActionCommand(PREDICTION + i);
+				button.addActionListener(this);
+				strip.add(button);
+			}
+			c.gridx = 0;
+			c.gridy = 2;
+			topPanel.add(strip, c);
+		}
 		pane.add(topPanel, BorderLayout.PAGE_START);
 
 		// if on page 2+, add back button
@@ -122,10 +177,10 @@ public class AAC implements ActionListener {
 		int currImage = startIndex;
 		for (int y = 0; y < length; y++) {
 			for (int x = 0; x < width; x++) {
-				if (currImage < this.images.length) {
-					ImageIcon img = new ImageIcon(images[currImage]);
+				if (currImage < this.images.size()) {
+					ImageIcon img = new ImageIcon(images.get(currImage));
 					JButton button = new JButton(img);
-					button.setActionCommand(images[currImage]);
+					button.setActionCommand(images.get(currImage));
 					button.addActionListener(this);
 					panel.add(button);
 					currImage++;
@@ -136,7 +191,7 @@ public class AAC implements ActionListener {
 		pane.add(panel, BorderLayout.CENTER);
 
 		// if have later pages, add next button
-		if (endIndex < images.length) {
+		if (endIndex < images.size()) {
 			JButton nextArrow = new JButton(new ImageIcon("img/next.png"));
 			nextArrow.setActionCommand("next");
 			nextArrow.addActionListener(this);
@@ -183,12 +238,12 @@ public class AAC implements ActionListener {
 			this.endIndex -= NUM_ACROSS * NUM_DOWN;
 		} else if (actionCommand.equals("next")) {
 			this.startIndex += NUM_ACROSS * NUM_DOWN;
-			this.endIndex = Math.min(endIndex + NUM_ACROSS * NUM_DOWN, this.images.length);
+			this.endIndex = Math.min(endIndex + NUM_ACROSS * NUM_DOWN, this.images.size());
 		} else if (actionCommand.equals("save") && this.aacMappings instanceof AACMappings) {
-			((AACMappings) this.aacMappings).writeToFile("AACMappingsNew.txt");
-			this.images = this.aacMappings.getImageLocs();
+			this.aacMappings.saveJournal();
+			this.images = this.aacMappings.getImageList();
 			this.startIndex = 0;
-			this.endIndex = Math.min(NUM_ACROSS * NUM_DOWN, this.images.length);
+			this.endIndex = Math.min(NUM_ACROSS * NUM_DOWN, this.images.size());
 		} else if (actionCommand.equals("add")) {
 			JFileChooser chooser = new JFileChooser();
 			int returnVal = chooser.showOpenDialog(frame);
@@ -196,37 +251,71 @@ public class AAC implements ActionListener {
 			if (returnVal == JFileChooser.APPROVE_OPTION) {
 				imageLoc = chooser.getSelectedFile().getPath();
 				String result = (String) JOptionPane.showInputDialog(frame, "What is the text?", "AAC Add",
-						JOptionPane.PLAIN_MESSAGE, null, null, "");
+						JOptionPane.PLAIN_MESSAGE, null, null, this.aacMappings.suggestText(imageLoc));
 				if (result != null && result.length() > 0) {
-					this.aacMappings.add(imageLoc, result);
+					this.aacMappings.addItem(imageLoc, result);
+					this.autosaver.changed();
 				}
 			}
-			this.images = this.aacMappings.getImageLocs();
+			this.images = this.aacMappings.getImageList();
 			this.startIndex = 0;
-			this.endIndex = Math.min(NUM_ACROSS * NUM_DOWN, this.images.length);
+			this.endIndex = Math.min(NUM_ACROSS * NUM_DOWN, this.images.size());
 		} else if (actionCommand.equals("") && this.aacMappings instanceof AACMappings) {
 			((AACMappings) this.aacMappings).reset();
-			this.images = this.aacMappings.getImageLocs();
+			this.images = this.aacMappings.getImageList();
+			this.startIndex = 0;
+			this.endIndex = Math.min(NUM_ACROSS * NUM_DOWN, this.images.size());
+		} else if (actionCommand.equals("up")) {
+			this.aacMappings.back();
+			this.images = this.aacMappings.getImageList();
 			this.startIndex = 0;
-			this.endIndex = Math.min(NUM_ACROSS * NUM_DOWN, this.images.length);
+			this.endIndex = Math.min(NUM_ACROSS * NUM_DOWN, this.images.size());
+		} else if (actionCommand.startsWith(PREDICTION)) {
+			AACMappings.Prediction prediction =
+					this.predictions[Integer.parseInt(actionCommand.substring(PREDICTION.length()))];
+			speak(this.aacMappings.selectTile(prediction.getCategory(), prediction.getImageLoc()));
 		} else {
-			if (this.aacMappings.getCurrentCategory().equals("")) {
-				this.aacMappings.getText(actionCommand);
-				this.images = this.aacMappings.getImageLocs();
+			// Selecting a category enters it; anything else is spoken
+			String toSpeak = this.aacMappings.select(actionCommand);
+			if (toSpeak.equals("")) {
+				this.images = this.aacMappings.getImageList();
 				this.startIndex = 0;
-				this.endIndex = Math.min(NUM_ACROSS * NUM_DOWN, this.images.length);
+				this.endIndex = Math.min(NUM_ACROSS * NUM_DOWN, this.images.size());
 			} else {
-				try {
-					String toSpeak = this.aacMappings.getText(actionCommand);
-					synthesizer.speakPlainText(toSpeak, null);
-					synthesizer.waitEngineState(Synthesizer.QUEUE_EMPTY);
-				} catch (Exception e1) {
-					e1.printStackTrace();
-				}
+				speak(toSpeak);
 			}
 		}
+		this.predictions = this.aacMappings.predict(NUM_PREDICTIONS);
 		loadImages(NUM_ACROSS, NUM_DOWN);
 
 	}
 
+	/**
+	 * Shows the page again after the mappings file was reloaded, staying on
+	 * the same part of it where it still has tiles
+	 */
+	private void reloaded() {
+		this.images = this.aacMappings.getImageList();
+		if (this.startIndex >= this.images.size()) {
+			this.startIndex = 0;
+		}
+		this.endIndex = Math.min(this.startIndex + NUM_ACROSS * NUM_DOWN, this.images.size());
+		this.predictions = this.aacMappings.predict(NUM_PREDICTIONS);
+		loadImages(NUM_ACROSS, NUM_DOWN);
+	}
+
+	/**
+	 * Speaks the given text aloud
+	 *
+	 * @param toSpeak the text to speak
+	 */
+	private void speak(String toSpeak) {
+		try {
+			synthesizer.speakPlainText(toSpeak, null);
+			synthesizer.waitEngineState(Synthesizer.QUEUE_EMPTY);
+		} catch (Exception e1) {
+			e1.printStackTrace();
+		}
+	}
+
 }
\ No newline at end of file
@@ -1,7 +1,16 @@
-import edu.grinnell.csc207.util.AssociativeArray;
-import edu.grinnell.csc207.util.KVPair;
+import edu.grinnell.csc207.util.Footprint;
+import edu.grinnell.csc207.util.FrequencyRanking;
 import edu.grinnell.csc207.util.KeyNotFoundException;
 import edu.grinnell.csc207.util.NullKeyException;
+import edu.grinnell.csc207.util.StringMap;
+import edu.grinnell.csc207.util.StringMultiMap;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
 import java.util.NoSuchElementException;
 
 /**
@@ -12,9 +21,26 @@ import java.util.NoSuchElementException;
  * Help obtained: Evening Tutors
  */
 public class AACCategory {
+
+    /**
+     * The orders in which a category can list its images.
+     */
+    public enum Order {
+        /** The order in which the images were added. */
+        INSERTION,
+        /** Most used first, with recent uses counting more; see {@link FrequencyRanking}. */
+        FREQUENCY
+    }
+
     // Fields
-    private String name;
-    private AssociativeArray<String, String> imageMap;
+    private final String name;
+    private StringMap imageMap;
+    private StringMultiMap textIndex; // Maps normalized text to the images that say it
+    private FrequencyRanking ranking; // Ranks the images by use, whatever the order; null until needed
+    private Order order;
+    private String[] images; // The image locations as of imagesModCount
+    private List<String> imageList; // A read-only view of images
+    private int imagesModCount; // The modCount() of the order's source when images was built
 
     // Constructors
     /**
@@ -24,7 +50,9 @@ public class AACCategory {
      */
     public AACCategory(String nameInput) {
         this.name = nameInput;
-        this.imageMap = new AssociativeArray<>();
+        this.imageMap = new StringMap();
+        this.textIndex = new StringMultiMap();
+        this.order = Order.INSERTION;
     }
 
     // Methods
@@ -37,13 +65,110 @@ public class AACCategory {
      */
     public void addItem(String imageLoc, String text) {
         try {
+            if (this.imageMap.hasKey(imageLoc)) {
+                this.unindex(imageLoc);
+            }
             this.imageMap.set(imageLoc, text);  // Handle potential NullKeyException here
+            this.textIndex.add(normalize(text), imageLoc);
+            if (this.ranking != null) {
+                this.ranking.add(imageLoc);
+            }
         } catch (NullKeyException e) {
             System.err.println("Error: Invalid (null) key provided.");
             e.printStackTrace();
         }
     }
 
+    /**
+     * Adds the first count mappings of image locations to texts, as if by
+     * calling {@link #addItem} on each pair, but growing the category at most
+     * once.
+     *
+     * @param imageLocs the locations of the images
+     * @param texts     the texts associated with the images
+     * @param count     the number of mappings to add
+     */
+    public void addItems(String[] imageLocs, String[] texts, int count) {
+        this.imageMap.ensureCapacity(this.imageMap.size() + count);
+        for (int i = 0; i < count; i++) {
+            this.addItem(imageLocs[i], texts[i]);
+        }
+    }
+
+    /**
+     * Removes the mapping for the given image location, if any. The other
+     * images keep their order.
+     *
+     * @param imageLoc the location of the image
+     */
+    public void removeItem(String imageLoc) {
+        if (this.imageMap.hasKey(imageLoc)) {
+            this.unindex(imageLoc);
+            this.imageMap.remove(imageLoc);
+            if (this.ranking != null) {
+                this.ranking.remove(imageLoc);
+            }
+        }
+    }
+
+    /**
+     * Sets the order in which {@link #getImages()} lists the images. Uses
+     * are counted in either order, so switching to frequency order ranks
+     * the images by every use so far.
+     *
+     * @param newOrder the order
+     */
+    public void setOrder(Order newOrder) {
+        this.order = newOrder;
+        this.images = null;
+    }
+
+    /**
+     * Returns the order in which {@link #getImages()} lists the images.
+     *
+     * @return the order
+     */
+    public Order getOrder() {
+        return this.order;
+    }
+
+    /**
+     * Writes the use counts of the images, for {@link #loadFrequencies}.
+     *
+     * @param out the output to write to
+     * @throws IOException if writing fails
+     */
+    public void saveFrequencies(DataOutput out) throws IOException {
+        if (this.ranking == null) {
+            out.writeInt(0); // No images used, as FrequencyRanking.save writes it
+        } else {
+            this.ranking.save(out);
+        }
+    }
+
+    /**
+     * Reads use counts written by {@link #saveFrequencies}, replacing the
+     * counts of the images they name.
+     *
+     * @param in the input to read from
+     * @throws IOException if reading fails
+     */
+    public void loadFrequencies(DataInput in) throws IOException {
+        this.ranking().load(in);
+    }
+
+    /**
+     * Returns the images in this category whose text matches the given
+     * text, ignoring case and surrounding whitespace.
+     *
+     * @param text the text to look for
+     * @return the matching image locations, in the order they were added;
+     *         an empty array if there are none
+     */
+    public String[] findImages(String text) {
+        return this.textIndex.get(normalize(text)).clone();
+    }
+
     /**
      * Returns the name of the category.
      *
@@ -54,17 +179,70 @@ public class AACCategory {
     }
 
     /**
-     * Returns an array of all the images in the category.
+     * Returns a new array of all the images in the category, in the order
+     * set by {@link #setOrder}. Callers that only read the images can use
+     * {@link #getImageList()} instead, which copies nothing.
      *
      * @return an array of image locations
      */
     public String[] getImages() {
-        String[] images = new String[this.imageMap.size()];
-        int size = 0;
-        for (KVPair<String, String> pair : this.imageMap) {
-            images[size++] = pair.getKey();  // Get the image location
+        return this.images().clone();
+    }
+
+    /**
+     * Returns the images in the order set by {@link #setOrder}, building
+     * the array again only when the images or their order have changed
+     * since the last call. The array is shared, so it must not be modified
+     * or handed out.
+     */
+    private String[] images() {
+        boolean byUse = this.order == Order.FREQUENCY;
+        int modCount = byUse ? this.ranking().modCount() : this.imageMap.modCount();
+        if (this.images == null || this.imagesModCount != modCount) {
+            this.images = byUse ? this.ranking().keys() : this.imageMap.keys();
+            this.imageList = Collections.unmodifiableList(Arrays.asList(this.images));
+            this.imagesModCount = modCount;
         }
-        return images;
+        return this.images;
+    }
+
+    /**
+     * Returns a read-only list of all the images in the category, in the
+     * same order as {@link #getImages()}. The list is shared between calls
+     * until the images change.
+     *
+     * @return a list of image locations
+     */
+    public List<String> getImageList() {
+        this.images();
+        return this.imageList;
+    }
+
+    /**
+     * Estimates the memory retained by this category, including its text
+     * index.
+     *
+     * @return the estimated footprint
+     */
+    public Footprint footprint() {
+        return this.footprint(new Footprint());
+    }
+
+    /**
+     * Adds the memory retained by this category to a footprint.
+     *
+     * @param total the footprint to add to
+     * @return {@code total}
+     */
+    public Footprint footprint(Footprint total) {
+        total.addOther(this, 3 * Footprint.REFERENCE);
+        total.addOther(this.name, 0);
+        this.imageMap.footprint(total);
+        this.textIndex.footprint(total);
+        if (this.ranking != null) {
+            this.ranking.footprint(total);
+        }
+        return total;
     }
 
     /**
@@ -92,6 +270,39 @@ public class AACCategory {
         return this.imageMap.hasKey(imageLoc);
     }
 
+    /**
+     * Returns the number of images in the category.
+     *
+     * @return the number of images
+     */
+    public int size() {
+        return this.imageMap.size();
+    }
+
+    /**
+     * Returns the image at the given position, counting in the order the
+     * images were added whatever the order set by {@link #setOrder}.
+     *
+     * @param i the position, from 0 to {@code size() - 1}
+     * @return the image location
+     * @throws IndexOutOfBoundsException if the position is out of range
+     */
+    public String imageAt(int i) {
+        return this.imageMap.keyAt(i);
+    }
+
+    /**
+     * Returns the text of the image at the given position, counting as
+     * {@link #imageAt} does.
+     *
+     * @param i the position, from 0 to {@code size() - 1}
+     * @return the text of the image
+     * @throws IndexOutOfBoundsException if the position is out of range
+     */
+    public String textAt(int i) {
+        return this.imageMap.valueAt(i);
+    }
+
     /**
      * Returns a string representation of the category.
      *
@@ -100,8 +311,9 @@ public class AACCategory {
     @Override
     public String toString() {
         StringBuilder result = new StringBuilder();
-        for (KVPair<String, String> pair : this.imageMap) {
-            result.append(">").append(pair.getKey()).append(" ").append(pair.getValue()).append("\n");
+        for (int i = 0; i < this.imageMap.size(); i++) {
+            result.append(">").append(this.imageMap.keyAt(i)).append(" ")
+                .append(this.imageMap.valueAt(i)).append("\n");
         }
         return result.toString();
     }
@@ -109,7 +321,7 @@ public class AACCategory {
     // Newly added methods
 
     /**
-     * Returns an array of image locations (paths) in the category.
+     * Returns a new array of image locations (paths) in the category.
      *
      * @return an array of image locations
      */
@@ -118,12 +330,60 @@ public class AACCategory {
     }
 
     /**
-     * Returns the text associated with the given image location (selected).
+     * Returns the ranking of the images by use, building it, with no uses,
+     * the first time it is needed. Categories that are never used nor
+     * listed by frequency so never pay for one.
+     */
+    private FrequencyRanking ranking() {
+        if (this.ranking == null) {
+            this.ranking = new FrequencyRanking();
+            try {
+                for (String imageLoc : this.imageMap.keys()) {
+                    this.ranking.add(imageLoc);
+                }
+            } catch (NullKeyException e) {
+                // Image locations are never null
+                throw new IllegalStateException(e);
+            }
+        }
+        return this.ranking;
+    }
+
+    /**
+     * Removes an image from the text index. The image must be present.
+     *
+     * @param imageLoc the location of the image
+     */
+    private void unindex(String imageLoc) {
+        try {
+            this.textIndex.remove(normalize(this.imageMap.get(imageLoc)), imageLoc);
+        } catch (KeyNotFoundException e) {
+            // Checked by the caller
+        }
+    }
+
+    /**
+     * Normalizes text for lookup in the text index, so that lookups ignore
+     * case and surrounding whitespace.
+     *
+     * @param text the text
+     * @return the normalized text
+     */
+    static String normalize(String text) {
+        return (text == null) ? "" : text.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Returns the text associated with the given image location (selected),
+     * and counts the use of the image.
      *
      * @param imageLoc the location of the image
      * @return the text associated with the image
+     * @throws NoSuchElementException if the image location is not found
      */
     public String select(String imageLoc) {
-        return getText(imageLoc);  // This method is an alias for getText()
+        String text = getText(imageLoc);
+        this.ranking().use(imageLoc);
+        return text;
     }
 }
\ No newline at end of file
@@ -1,179 +1,2019 @@
 import edu.grinnell.csc207.util.*;
-import java.io.BufferedReader;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 
 /**
- * Creates a set of mappings of an AAC that has two levels, one for categories
- * and then within each category, it has images that have associated text to be spoken.
- * This class provides the methods for interacting with the categories and updating
- * the set of images that would be shown and handling interactions.
+ * Creates a set of mappings of an AAC whose home page lists categories,
+ * each with images that have associated text to be spoken and, possibly,
+ * categories nested inside it, to any depth. This class provides the
+ * methods for interacting with the categories and updating the set of
+ * images that would be shown and handling interactions.
+ * <p>
+ * In the mappings file, a line without a {@code >} is a category on the
+ * home page. The lines after it, up to the next such line, are its
+ * contents: {@code >image text} for an item, and for a nested category a
+ * line {@code >+} followed by {@code >image name}, whose own contents
+ * follow with one more {@code >} each, and so on. A category is identified by its image, so category
+ * images are unique across the board.
+ * </p>
+ * <p>
+ * By default ({@link LoadMode#LAZY}), only the home page is built when the
+ * mappings are created, along with the byte range of each category's
+ * lines in the file; the contents of a category are read from the file
+ * when it is first entered, or when an operation needs the whole board,
+ * such as {@link #search} or {@link #writeToFile}. The file must not
+ * change while some category is unread. With {@link LoadMode#STREAMING},
+ * a background thread also reads the categories in file order.
+ * </p>
+ * <p>
+ * The mappings file may also be a binary board, as written by
+ * {@link #writeBinaryFile}, which holds the same board as fixed-width
+ * records over a table of distinct strings, so reading it involves no
+ * parsing. The two formats are told apart by their first bytes.
+ * </p>
+ * <p>
+ * Changes can be kept in a journal next to the mappings file (see
+ * {@link #openJournal}), so that saving costs as much as the changes
+ * since the last save rather than the whole board; the journal is folded
+ * into the mappings file in the background from time to time.
+ * </p>
+ * <p>
+ * When a text mappings file is edited while the board is in use, {@link
+ * #reload} (or a watcher started by {@link #startWatching}) applies the
+ * edits to the board: only the top-level categories whose lines changed,
+ * as told by a hash of each category's lines, are read again.
+ * </p>
+ * <p>
+ * Mappings are thread-safe: every public method holds the mappings' lock,
+ * as does the background thread while it reads each category, except
+ * {@link #getCategory}, which the display calls on every repaint. The
+ * categories are kept in a {@link ConcurrentAssociativeArray}, whose
+ * reads do not lock, so the name of the category being viewed can be read
+ * while a reload or a snapshot holds the lock.
+ * </p>
  *
  * @author Catie Baker & Moise Milenge
  */
 public class AACMappings implements AACPage {
 
-    private AssociativeArray<String, AACCategory> categories; // Maps category names to AACCategory instances
-    private String currentCategory; // The current category being viewed/displayed
+    /**
+     * When the contents of the categories are read.
+     */
+    public enum LoadMode {
+        /** Read every category when the mappings are created. */
+        EAGER,
+        /** Read each category from the file when it is first needed. */
+        LAZY,
+        /**
+         * Read the home page at once and the categories on a background
+         * thread; a category needed before then is read at once.
+         */
+        STREAMING,
+        /**
+         * Read every category when the mappings are created, parsing the
+         * top-level categories on all cores. A binary board is read as
+         * with {@link #EAGER}, having nothing to parse.
+         */
+        PARALLEL
+    }
+
+    private ConcurrentAssociativeArray<String, AACCategory> categories; // Maps the image of every category, at any depth, to the category
+    private StringMap parents; // Maps the image of every category to the image of the category holding it, or ""
+    private AACCategory home; // The home page, with one item per top-level category
+    private String[] path; // The images of the categories entered from the home page, outermost first
+    private int depth; // The number of categories in path that are entered
+    private volatile String currentCategory; // The image of the category being viewed, or "" on the home page
+    private String filename; // The mappings file
+    private Parser parser; // Parses the mappings file, mapped into memory while some category is unread
+    private BinaryBoard binary; // The records of the mapped file, if it is a binary board
+    private AssociativeArray<String, int[]> unread; // Maps categories not read yet to {first byte, end byte, depth}, or {first record, end record, 0}
+    private StringMultiMap boardIndex; // Maps normalized item text to the images of the categories with it
+    private SearchIndex searchIndex; // Indexes every tile for search; categories are in category ""
+    private AACCategory.Order order; // The order in which every category lists its images
+    private NextTilePredictor predictor; // Learns which tile follows which; tiles are named by tile()
+    private Predicate<String> onBoard; // Whether a tile named by tile() is still on the board
+    private String[] predicted; // Scratch space for predict()
+    private BoardJournal journal; // Records every change, once opened
+    private Path journalFile; // The file of journal
+    private AssociativeArray<String, long[]> blocks; // Maps each top-level category of the text file to {hash, first byte, end byte}
+    private WatchService watcher; // Watches the mappings file, once started
+    private MappedStringMap vocabulary; // Maps each image added to the board to its last text, once opened
+    private PersistentAssociativeArray<String, BoardSnapshot.Page> pages; // The lines of each category as of the last snapshot, once taken
+    private AssociativeArray<String, Boolean> changed; // The categories, or "" for the home page, whose pages are out of date
+
+    /** Separates the category image from the item image in a tile name. */
+    private static final char TILE_SEPARATOR = '\n';
+
+    // Byte patterns for lineEnd(): newline, 1 and 0x80 in every byte of a long.
+    private static final long NEWLINES = 0x0A0A0A0A0A0A0A0AL;
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    /** Fold the journal into the mappings file once it grows past this. */
+    private static final long COMPACT_BYTES = 1 << 20;
+
+    /** Mixes the words of a block into its hash (the 64-bit golden ratio). */
+    private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    /** Reload once the mappings file has not changed for this long. */
+    private static final long QUIET_MILLIS = 100;
+
+    /** Marks a file written by saveFrequencies ("AACF"). */
+    private static final int FREQUENCIES_MAGIC = 0x41414346;
+
+    /**
+     * Creates a set of mappings for the AAC based on the provided
+     * file. The file is read in to create categories; each category
+     * is filled with its items when it is first needed.
+     *
+     * @param filename the name of the file that stores the mapping information
+     */
+    public AACMappings(String filename) {
+        this(filename, LoadMode.LAZY);
+    }
+
+    /**
+     * Creates a set of mappings for the AAC based on the provided
+     * file. The file is read in to create categories and fill each
+     * of the categories with initial items, at once or as they are
+     * needed.
+     *
+     * @param filename the name of the file that stores the mapping information
+     * @param mode when to read the contents of the categories
+     */
+    public AACMappings(String filename, LoadMode mode) {
+        this();
+        loadMappings(filename, mode); // Load the mappings from the provided file
+        if (mode == LoadMode.STREAMING && unread.size() > 0) {
+            Thread loader = new Thread(this::loadInBackground, "AACMappings loader");
+            loader.setDaemon(true);
+            loader.start();
+        }
+    }
+
+    /**
+     * Creates an empty set of mappings, with no file read yet.
+     */
+    private AACMappings() {
+        categories = new ConcurrentAssociativeArray<>();
+        parents = new StringMap();
+        home = new AACCategory("");
+        path = new String[8];
+        depth = 0;
+        currentCategory = "";
+        unread = new AssociativeArray<>();
+        boardIndex = new StringMultiMap();
+        searchIndex = new SearchIndex();
+        order = AACCategory.Order.INSERTION;
+        predictor = new NextTilePredictor();
+        onBoard = this::isOnBoard;
+        predicted = new String[0];
+    }
+
+    /**
+     * Reads every category of a mappings file, as {@link LoadMode#EAGER}
+     * does, but fails if the file cannot be read rather than leaving the
+     * board empty, for callers that go on to write the board over a file.
+     *
+     * @param filename the name of the file that stores the mapping information
+     * @return the mappings
+     * @throws IOException if the file cannot be read
+     */
+    static AACMappings readAll(String filename) throws IOException {
+        AACMappings mappings = new AACMappings();
+        try {
+            mappings.readMappings(filename, LoadMode.EAGER);
+        } catch (NullKeyException e) {
+            // Images read from a file are never null
+            throw new IllegalStateException(e);
+        }
+        return mappings;
+    }
+
+    /**
+     * Reads the unread categories one at a time, in file order, holding the
+     * lock only while reading each, so a caller that needs a category waits
+     * for at most one other category to be read first.
+     */
+    private void loadInBackground() {
+        while (true) {
+            synchronized (this) {
+                if (unread.size() == 0) {
+                    return;
+                }
+                ensureRead(unread.keyAt(0));
+            }
+            Thread.yield(); // Let a waiting caller take the lock
+        }
+    }
+
+    /**
+     * Loads the mappings from a file. The file is mapped into memory and
+     * scanned once for the home page, or, for a binary board, the home
+     * page's records are read; unless every category is read now, the
+     * mapping is kept, with the range of each category, until every
+     * category has been read.
+     *
+     * @param filename the name of the file to read
+     * @param mode when to read the contents of the categories
+     */
+    private void loadMappings(String filename, LoadMode mode) {
+        try {
+            readMappings(filename, mode);
+        } catch (IOException | NullKeyException e) {
+            System.err.println("Error reading file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Loads the mappings from a file, as {@link #loadMappings} does.
+     *
+     * @param filename the name of the file to read
+     * @param mode when to read the contents of the categories
+     * @throws IOException if the file cannot be read
+     * @throws NullKeyException if an image is null
+     */
+    private void readMappings(String filename, LoadMode mode) throws IOException, NullKeyException {
+        boolean eager = mode == LoadMode.EAGER || mode == LoadMode.PARALLEL;
+        this.filename = filename;
+        try (FileChannel channel = FileChannel.open(Path.of(filename), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("File too large: " + filename);
+            }
+            ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                .order(ByteOrder.LITTLE_ENDIAN); // For lineEnd()
+            if (BinaryBoard.isBinary(bytes)) {
+                binary = new BinaryBoard(bytes);
+                readRecords("", home, 0, binary.homeCount(), eager);
+            } else {
+                parser = new Parser(bytes);
+                Contents top = parser.parse(0, bytes.limit(), 0);
+                blocks = blocksOf(bytes, top);
+                addContents("", home, top, 0, mode == LoadMode.EAGER);
+                if (mode == LoadMode.PARALLEL) {
+                    readInParallel();
+                }
+            }
+            if (unread.size() == 0) {
+                parser = null;
+                binary = null;
+            }
+        }
+    }
+
+    /**
+     * Reads the contents of a category: its lines at the given depth, which
+     * are its items and nested categories. The contents of the nested
+     * categories are read too if asked, and otherwise left to be read when
+     * needed. The items are added to the category in one batch, so the
+     * category grows at most once.
+     *
+     * @param categoryImage the image of the category, or "" for the home page
+     * @param category the category
+     * @param from the index of the first byte of the contents
+     * @param to the index after the last byte of the contents
+     * @param level the number of {@code >} before each item of the category
+     * @param eager whether to read the nested categories too
+     * @throws NullKeyException if an image is null
+     */
+    private void readCategory(String categoryImage, AACCategory category, int from, int to,
+        int level, boolean eager) throws NullKeyException {
+        addContents(categoryImage, category, parser.parse(from, to, level), level, eager);
+    }
+
+    /**
+     * Adds the parsed contents of a category to the board: registers its
+     * nested categories, adds its items unless they were added when it was
+     * parsed, and indexes them. Nested categories that were parsed too are
+     * added the same way; the others are read now if asked, and otherwise
+     * left to be read when needed.
+     *
+     * @param categoryImage the image of the category, or "" for the home page
+     * @param category the category
+     * @param contents the parsed contents
+     * @param level the number of {@code >} before each item of the category
+     * @param eager whether to read the nested categories that were not parsed
+     * @throws NullKeyException if an image is null
+     */
+    private void addContents(String categoryImage, AACCategory category, Contents contents,
+        int level, boolean eager) throws NullKeyException {
+        touch(categoryImage);
+        for (int i = 0; i < contents.count; i++) {
+            int first = contents.firsts[i];
+            int end = contents.ends[i];
+            if (first < 0) {
+                continue; // An item
+            }
+            String imageLoc = contents.imageLocs[i];
+            Contents nested = (contents.nested == null) ? null : contents.nested[i];
+            if (nested != null) {
+                register(imageLoc, nested.category, categoryImage);
+                addContents(imageLoc, nested.category, nested, level + 1, true);
+                continue;
+            }
+            AACCategory nestedCategory = register(imageLoc, newCategory(contents.texts[i]),
+                categoryImage);
+            if (end > first && eager) {
+                readCategory(imageLoc, nestedCategory, first, end, level + 1, true);
+            } else if (end > first) {
+                unread.set(imageLoc, new int[] {first, end, level + 1});
+            }
+        }
+        if (contents.category == null) {
+            category.addItems(contents.imageLocs, contents.texts, contents.count);
+        }
+        if (contents.normalized == null) {
+            index(categoryImage, contents.imageLocs, contents.texts, contents.count);
+        } else {
+            // Indexed for search when parsed; only the board index is left
+            for (int i = 0; i < contents.count; i++) {
+                boardIndex.add(contents.normalized[i], categoryImage);
+            }
+        }
+    }
+
+    /**
+     * Reads every unread category, which must all be top-level ones. The
+     * categories are split into chunks of adjacent ones, which are parsed,
+     * with everything nested in them, filled and indexed on the common
+     * fork-join pool: each chunk gets a search index of its own tiles, and
+     * the normalized texts for the board index. This thread merges the
+     * chunks' search indexes into the board's and registers the
+     * categories, which must be done one at a time, chunk by chunk in file
+     * order as each chunk is ready, while the later chunks are parsed. The
+     * merge copies postings rather than splitting texts into words, so
+     * most of the work of a load is done in parallel.
+     *
+     * @throws NullKeyException if an image is null
+     */
+    private void readInParallel() throws NullKeyException {
+        int count = unread.size();
+        String[] images = new String[count];
+        int[][] blocks = new int[count][];
+        AACCategory[] filled = new AACCategory[count];
+        try {
+            for (int i = 0; i < count; i++) {
+                images[i] = unread.keyAt(i);
+                blocks[i] = unread.valueAt(i);
+                filled[i] = categories.get(images[i]);
+            }
+        } catch (KeyNotFoundException e) {
+            // Every unread category is registered
+            throw new IllegalStateException(e);
+        }
+        Contents[] parsed = new Contents[count];
+        long chunkBytes = Math.max(ParseTask.MIN_BYTES,
+            parser.bytes.limit() / (8L * ForkJoinPool.getCommonPoolParallelism()));
+        ParseTask[] tasks = new ParseTask[count];
+        int chunks = 0;
+        for (int from = 0; from < count; ) {
+            int to = from + 1;
+            while (to < count && blocks[to][1] - blocks[from][0] <= chunkBytes) {
+                to++;
+            }
+            tasks[chunks] = new ParseTask(parser.bytes, images, blocks, filled, parsed, from, to,
+                order);
+            ForkJoinPool.commonPool().execute(tasks[chunks++]);
+            from = to;
+        }
+        for (int c = 0; c < chunks; c++) {
+            tasks[c].join();
+            searchIndex.addAll(tasks[c].shard);
+            for (int i = tasks[c].from; i < tasks[c].to; i++) {
+                unread.remove(images[i]);
+                addContents(images[i], filled[i], parsed[i], 1, true);
+            }
+        }
+    }
+
+    /**
+     * Reads the contents of a category from a binary board: its range of
+     * records, which are its items and nested categories. As with
+     * {@link #readCategory}, nested categories are read now only if asked.
+     *
+     * @param categoryImage the image of the category, or "" for the home page
+     * @param category the category
+     * @param from the first record of the category
+     * @param to the record after the last record of the category
+     * @param eager whether to read the nested categories too
+     * @throws NullKeyException if an image is null
+     */
+    private void readRecords(String categoryImage, AACCategory category, int from, int to,
+        boolean eager) throws NullKeyException {
+        touch(categoryImage);
+        int count = to - from;
+        String[] imageLocs = new String[count];
+        String[] texts = new String[count];
+        for (int i = 0; i < count; i++) {
+            int r = from + i;
+            imageLocs[i] = binary.image(r);
+            texts[i] = binary.text(r);
+            int first = binary.firstChild(r);
+            if (first < 0) {
+                continue; // An item
+            }
+            AACCategory nestedCategory = register(imageLocs[i], newCategory(texts[i]),
+                categoryImage);
+            int end = first + binary.childCount(r);
+            if (end > first && eager) {
+                readRecords(imageLocs[i], nestedCategory, first, end, true);
+            } else if (end > first) {
+                unread.set(imageLocs[i], new int[] {first, end, 0});
+            }
+        }
+        category.addItems(imageLocs, texts, count);
+        index(categoryImage, imageLocs, texts, count);
+    }
+
+    /**
+     * Reads a category that was left unread, from the text or the binary
+     * board.
+     *
+     * @param categoryImage the image of the category
+     * @param block the range of the category, from unread
+     * @param eager whether to read the nested categories too
+     * @throws KeyNotFoundException if the category is gone
+     * @throws NullKeyException if an image is null
+     */
+    private void readBlock(String categoryImage, int[] block, boolean eager)
+        throws KeyNotFoundException, NullKeyException {
+        AACCategory category = categories.get(categoryImage);
+        if (binary != null) {
+            readRecords(categoryImage, category, block[0], block[1], eager);
+        } else {
+            readCategory(categoryImage, category, block[0], block[1], block[2], eager);
+        }
+    }
+
+    /**
+     * Returns the index of the newline that ends the line starting at
+     * {@code pos}, or {@code to} if the line runs to the end. Eight bytes
+     * are tested at a time: subtracting 1 from each byte of the word XOR
+     * newlines borrows out of exactly the bytes that were newlines (the
+     * lowest one first, in a little-endian word).
+     */
+    private static int lineEnd(ByteBuffer bytes, int pos, int to) {
+        for (; pos + Long.BYTES <= to; pos += Long.BYTES) {
+            long word = bytes.getLong(pos) ^ NEWLINES;
+            long found = (word - ONES) & ~word & HIGH_BITS;
+            if (found != 0) {
+                return pos + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+        }
+        while (pos < to && bytes.get(pos) != '\n') {
+            pos++;
+        }
+        return pos;
+    }
+
+    /**
+     * Returns the number of {@code >} that start the line at {@code pos}.
+     */
+    private static int levelOf(ByteBuffer bytes, int pos, int to) {
+        int level = 0;
+        while (pos + level < to && bytes.get(pos + level) == '>') {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * Returns the index of the first byte from {@code pos} that is not
+     * whitespace as {@link String#trim} sees it, or {@code to}. Bytes of
+     * multi-byte characters are never whitespace.
+     */
+    private static int skipBlanks(ByteBuffer bytes, int pos, int to) {
+        while (pos < to && (bytes.get(pos) & 0xFF) <= ' ') {
+            pos++;
+        }
+        return pos;
+    }
+
+    /**
+     * Determines whether the rest of a line, after its {@code >}, is the
+     * marker of a nested category: a lone {@code +}, which no file written
+     * before categories could be nested holds, since every line of those
+     * has a space.
+     */
+    private static boolean isMarker(ByteBuffer bytes, int pos, int eol) {
+        return pos < eol && bytes.get(pos) == '+'
+            && (pos + 1 == eol || (pos + 2 == eol && bytes.get(pos + 1) == '\r'));
+    }
+
+    /**
+     * Returns the index after the last byte before {@code to} that is not
+     * whitespace, or {@code from}.
+     */
+    private static int trimBlanks(ByteBuffer bytes, int from, int to) {
+        while (to > from && (bytes.get(to - 1) & 0xFF) <= ' ') {
+            to--;
+        }
+        return to;
+    }
+
+    /**
+     * Records where a new category is.
+     *
+     * @param categoryImage the image of the new category
+     * @param category the new category
+     * @param parentImage the image of the category holding it, or "" for the
+     *        home page
+     * @return {@code category}
+     * @throws NullKeyException if the image is null
+     */
+    private AACCategory register(String categoryImage, AACCategory category, String parentImage)
+        throws NullKeyException {
+        categories.set(categoryImage, category);
+        parents.set(categoryImage, parentImage);
+        touch(categoryImage);
+        return category;
+    }
+
+    /**
+     * Notes that the lines of a category have changed, so that the next
+     * snapshot makes its page again. Until the first snapshot, there are
+     * no pages to keep up to date.
+     *
+     * @param categoryImage the image of the category, or "" for the home page
+     */
+    private void touch(String categoryImage) {
+        if (pages == null) {
+            return;
+        }
+        try {
+            changed.set(categoryImage, true);
+        } catch (NullKeyException e) {
+            // Images are never null
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Creates an empty category in the board's order.
+     *
+     * @param name the name of the category
+     * @return the new category
+     */
+    private AACCategory newCategory(String name) {
+        AACCategory category = new AACCategory(name);
+        category.setOrder(order);
+        return category;
+    }
+
+    /**
+     * Reads the contents of a category from the mapped file, if they have
+     * not been read yet.
+     *
+     * @param categoryImage the image of the category
+     */
+    private void ensureRead(String categoryImage) {
+        if (!unread.hasKey(categoryImage)) {
+            return;
+        }
+        try {
+            int[] block = unread.get(categoryImage);
+            unread.remove(categoryImage);
+            readBlock(categoryImage, block, false);
+        } catch (KeyNotFoundException | NullKeyException e) {
+            System.err.println("Error reading category " + categoryImage + ": " + e.getMessage());
+        }
+        if (unread.size() == 0) {
+            parser = null;
+            binary = null;
+        }
+    }
+
+    /**
+     * Reads the contents of every category that has not been read yet, so
+     * that operations over the whole board see all of it.
+     */
+    public synchronized void loadAll() {
+        try {
+            while (unread.size() > 0) {
+                String categoryImage = unread.keyAt(0);
+                int[] block = unread.get(categoryImage);
+                unread.remove(categoryImage);
+                readBlock(categoryImage, block, true);
+            }
+        } catch (KeyNotFoundException | NullKeyException e) {
+            System.err.println("Error reading file: " + e.getMessage());
+        }
+        parser = null;
+        binary = null;
+    }
+
+    /**
+     * Determines whether a category not read yet holds, at any depth, a
+     * nested category with the given image. Such a category is only
+     * registered once the category holding it is read, so it must be
+     * looked for in the file. The lines are compared, not parsed, so no
+     * strings are made.
+     *
+     * @param imageLoc the image
+     * @return true if an unread category holds a category with the image
+     */
+    private boolean isUnreadCategory(String imageLoc) {
+        if (unread.size() == 0) {
+            return false;
+        }
+        if (binary != null) {
+            for (int i = 0; i < unread.size(); i++) {
+                int[] block = unread.valueAt(i);
+                if (hasCategoryRecord(block[0], block[1], imageLoc)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        byte[] image = imageLoc.getBytes(Charset.defaultCharset());
+        for (int i = 0; i < unread.size(); i++) {
+            int[] block = unread.valueAt(i);
+            if (parser.hasCategory(block[0], block[1], image)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Determines whether a range of records of the binary board, or the
+     * records nested in them, holds a category with the given image.
+     */
+    private boolean hasCategoryRecord(int from, int to, String imageLoc) {
+        for (int r = from; r < to; r++) {
+            int first = binary.firstChild(r);
+            if (first >= 0 && (binary.image(r).equals(imageLoc)
+                || hasCategoryRecord(first, first + binary.childCount(r), imageLoc))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Determines whether an image of a category is a nested category.
+     *
+     * @param categoryImage the image of the category, or "" for the home page
+     * @param imageLoc the image
+     * @return true if selecting the image enters a category
+     */
+    private boolean isCategory(String categoryImage, String imageLoc) {
+        try {
+            return parents.hasKey(imageLoc) && parents.get(imageLoc).equals(categoryImage);
+        } catch (KeyNotFoundException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the category being viewed, or the home page.
+     *
+     * @throws KeyNotFoundException if the category is gone
+     */
+    private AACCategory page() throws KeyNotFoundException {
+        return currentCategory.equals("") ? home : categories.get(currentCategory);
+    }
+
+    /**
+     * Records items of a category in the board and search indexes. On the
+     * home page, only the search index records the categories.
+     *
+     * @param categoryImage the image of the category, or "" for the home page
+     * @param imageLocs the images of the items
+     * @param texts the texts of the items
+     * @param count the number of items to use
+     * @throws NullKeyException if an image is null
+     */
+    private void index(String categoryImage, String[] imageLocs, String[] texts, int count)
+        throws NullKeyException {
+        for (int i = 0; i < count; i++) {
+            if (categoryImage.equals("")) {
+                searchIndex.add("", imageLocs[i], texts[i]);
+                continue;
+            }
+            boardIndex.add(AACCategory.normalize(texts[i]), categoryImage);
+            searchIndex.add(categoryImage, imageLocs[i], texts[i]);
+        }
+    }
+
+    /**
+     * Removes a category from the board index for a text, unless the
+     * category still has an item with that text.
+     *
+     * @param categoryImage the image of the category
+     * @param category the category
+     * @param text the text
+     */
+    private void unindex(String categoryImage, AACCategory category, String text) {
+        if (category.findImages(text).length == 0) {
+            boardIndex.remove(AACCategory.normalize(text), categoryImage);
+        }
+    }
+
+    /**
+     * Given the image location selected, it determines the action to be
+     * taken. This can be updating the information that should be displayed
+     * or returning text to be spoken.
+     *
+     * @param imageLoc the location where the image is stored
+     * @return if there is text to be spoken, it returns that information, otherwise
+     *         it returns the empty string
+     * @throws NoSuchElementException if the image provided is not in the current
+     *                                category
+     */
+    @Override
+    public synchronized String select(String imageLoc) {
+        try {
+            if (isCategory(currentCategory, imageLoc)) {
+                // Enter the category if the image represents a category
+                ensureRead(imageLoc);
+                if (depth == path.length) {
+                    path = Arrays.copyOf(path, depth * 2);
+                }
+                path[depth++] = imageLoc;
+                currentCategory = imageLoc;
+                return "";
+            } else if (!currentCategory.equals("") && page().hasImage(imageLoc)) {
+                // If we're in a category, return the text for the selected image
+                String text = page().select(imageLoc);
+                predictor.observe(tile(currentCategory, imageLoc));
+                return text;
+            } else {
+                System.out.println("No image selected: " + imageLoc);
+                return "";
+            }
+        } catch (KeyNotFoundException e) {
+            System.out.println("No image selected: " + imageLoc);
+            return "";
+        } catch (NullKeyException e) {
+            // The image was found, so it is not null
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Selects an item of any category, such as a predicted one, without
+     * leaving the current category.
+     *
+     * @param categoryImage the image of the category holding the item
+     * @param imageLoc the location of the item's image
+     * @return the text of the item, or the empty string if there is no such
+     *         item
+     */
+    public synchronized String selectTile(String categoryImage, String imageLoc) {
+        try {
+            if (categories.hasKey(categoryImage) && !isCategory(categoryImage, imageLoc)
+                && categories.get(categoryImage).hasImage(imageLoc)) {
+                String text = categories.get(categoryImage).select(imageLoc);
+                predictor.observe(tile(categoryImage, imageLoc));
+                return text;
+            }
+        } catch (KeyNotFoundException e) {
+            // Fall through to report it
+        } catch (NullKeyException e) {
+            // The image was found, so it is not null
+            throw new IllegalStateException(e);
+        }
+        System.out.println("No image selected: " + imageLoc);
+        return "";
+    }
+
+    /**
+     * Predicts the items most likely to be selected next, from the items
+     * selected so far: what usually follows the last two, then what usually
+     * follows the last one, then what is selected most. Items may come from
+     * any category.
+     *
+     * @param limit the maximum number of predictions
+     * @return the predicted items, best first
+     */
+    public synchronized Prediction[] predict(int limit) {
+        if (predicted.length < limit) {
+            predicted = new String[limit];
+        }
+        int count = predictor.predict(predicted, limit, onBoard);
+        Prediction[] predictions = new Prediction[count];
+        for (int i = 0; i < count; i++) {
+            String tile = predicted[i];
+            int split = tile.indexOf(TILE_SEPARATOR);
+            String categoryImage = tile.substring(0, split);
+            String imageLoc = tile.substring(split + 1);
+            try {
+                predictions[i] = new Prediction(categoryImage, imageLoc,
+                    categories.get(categoryImage).getText(imageLoc));
+            } catch (KeyNotFoundException e) {
+                // onBoard let only tiles of existing categories through
+                throw new IllegalStateException(e);
+            }
+        }
+        return predictions;
+    }
+
+    /**
+     * Starts a new utterance: later predictions no longer depend on the
+     * items selected so far, though what has been learned from them is
+     * kept.
+     */
+    public synchronized void startUtterance() {
+        predictor.startUtterance();
+    }
+
+    /**
+     * Names a tile for the predictor. Image locations are single tokens of
+     * the mappings file, so they never hold the separator.
+     */
+    private static String tile(String categoryImage, String imageLoc) {
+        return categoryImage + TILE_SEPARATOR + imageLoc;
+    }
+
+    /**
+     * Determines whether a tile named by {@link #tile} is still on the board.
+     */
+    private boolean isOnBoard(String tile) {
+        int split = tile.indexOf(TILE_SEPARATOR);
+        try {
+            String categoryImage = tile.substring(0, split);
+            return categories.hasKey(categoryImage)
+                && categories.get(categoryImage).hasImage(tile.substring(split + 1));
+        } catch (KeyNotFoundException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Provides an array of all the images in the current category, or of
+     * the category images on the home page. The array is a copy, so
+     * changing it leaves the board alone; {@link #getImageList()} copies
+     * nothing.
+     *
+     * @return the array of images in the current category; if there are no images,
+     *         it should return an empty array
+     */
+    @Override
+    public synchronized String[] getImageLocs() {
+        try {
+            return page().getImageLocs();
+        } catch (KeyNotFoundException e) {
+            // Handle the exception, e.g., log it or provide feedback
+            System.out.println("Category not found: " + currentCategory);
+        }
+        return new String[0]; // Return an empty array if no current category or exception occurs
+    }
+
+    /**
+     * Provides a read-only list of the images that {@link #getImageLocs()}
+     * returns, in the same order. The list is shared between calls until
+     * the images change.
+     *
+     * @return the list of images in the current category, or of the category
+     *         images on the home page
+     */
+    public synchronized List<String> getImageList() {
+        try {
+            return page().getImageList();
+        } catch (KeyNotFoundException e) {
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Resets the current category of the AAC back to the default
+     * category (empty string).
+     */
+    @Override
+    public synchronized void reset() {
+        depth = 0; // The entries of path are overwritten as categories are entered
+        currentCategory = ""; // Reset to default category (empty)
+    }
+
+    /**
+     * Returns to the category holding the current one, or to the home page
+     * from a top-level category. On the home page, this does nothing.
+     */
+    @Override
+    public synchronized void back() {
+        if (depth > 0) {
+            depth--;
+            currentCategory = (depth == 0) ? "" : path[depth - 1];
+        }
+    }
+
+    /**
+     * Writes the AAC mappings stored to a file. The file is replaced in one
+     * step, so a failed or interrupted write leaves it as it was; to write
+     * without waiting, see {@link Autosaver}.
+     *
+     * @param filename the name of the file to write the AAC mapping to
+     */
+    public synchronized void writeToFile(String filename) {
+        try {
+            writeText(filename);
+        } catch (IOException e) {
+            System.err.println("Error writing to file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the AAC mappings stored to a file in the text format.
+     *
+     * @param filename the name of the file to write the AAC mapping to
+     * @throws IOException if writing fails
+     */
+    void writeText(String filename) throws IOException {
+        snapshot().write(Path.of(filename));
+    }
+
+    /**
+     * Copies the lines of the board, in the text format, so that they can
+     * be written without holding the lock. Only the pages of the categories
+     * that changed since the last snapshot are made again; the rest are
+     * shared with it. Categories that have not been read yet stay unread:
+     * their lines are copied from the text file as they are, or made from
+     * the records of a binary board.
+     *
+     * @return the snapshot
+     */
+    synchronized BoardSnapshot snapshot() {
+        try {
+            if (pages == null) {
+                pages = new PersistentAssociativeArray<>();
+                changed = new AssociativeArray<>();
+                pages = pages.set("", page("", home));
+                for (KVPair<String, AACCategory> pair : categories) {
+                    pages = pages.set(pair.getKey(), page(pair.getKey(), pair.getValue()));
+                }
+            }
+            for (int i = 0; i < changed.size(); i++) {
+                String image = changed.keyAt(i);
+                if (image.equals("")) {
+                    pages = pages.set("", page("", home));
+                } else if (categories.hasKey(image)) {
+                    pages = pages.set(image, page(image, categories.get(image)));
+                } else {
+                    pages = pages.remove(image);
+                }
+            }
+        } catch (KeyNotFoundException | NullKeyException e) {
+            // The categories are registered, and images are never null
+            throw new IllegalStateException(e);
+        }
+        if (changed.size() > 0) {
+            changed = new AssociativeArray<>();
+        }
+        return new BoardSnapshot(pages);
+    }
+
+    /**
+     * Writes the AAC mappings stored to a file as a binary board, which
+     * loads without parsing. Each category's contents are written together,
+     * in the order they were added, and the categories in breadth-first
+     * order from the home page; each distinct string is written once.
+     *
+     * @param filename the name of the file to write the AAC mapping to
+     */
+    public synchronized void writeBinaryFile(String filename) {
+        try {
+            writeBinary(filename);
+        } catch (IOException e) {
+            System.err.println("Error writing to file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the AAC mappings stored to a file as a binary board.
+     *
+     * @param filename the name of the file to write the AAC mapping to
+     * @throws IOException if writing fails
+     */
+    void writeBinary(String filename) throws IOException {
+        loadAll();
+        BinaryBoard.Builder builder = new BinaryBoard.Builder();
+        String[] queue = new String[categories.size() + 1];
+        queue[0] = "";
+        int tail = 1;
+        int next = home.size(); // The first record of the next category's contents
+        try {
+            for (int head = 0; head < tail; head++) {
+                String categoryImage = queue[head];
+                AACCategory category = categoryImage.equals("") ? home
+                    : categories.get(categoryImage);
+                for (int i = 0; i < category.size(); i++) {
+                    String imageLoc = category.imageAt(i);
+                    if (isCategory(categoryImage, imageLoc)) {
+                        int size = categories.get(imageLoc).size();
+                        builder.add(imageLoc, category.textAt(i), next, size);
+                        next += size;
+                        queue[tail++] = imageLoc;
+                    } else {
+                        builder.add(imageLoc, category.textAt(i), -1, 0);
+                    }
+                }
+            }
+            builder.write(Path.of(filename), home.size());
+        } catch (KeyNotFoundException e) {
+            // Every category on the board is registered
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Makes the page of a category: its lines, in the order they were
+     * added, or, if it has not been read, its lines in the mapped file.
+     *
+     * @param categoryImage the image of the category, or "" for the home page
+     * @param category the category
+     * @return the page
+     * @throws KeyNotFoundException if an unread category has no range
+     */
+    private BoardSnapshot.Page page(String categoryImage, AACCategory category)
+        throws KeyNotFoundException {
+        if (unread.hasKey(categoryImage)) {
+            int[] block = unread.get(categoryImage);
+            if (binary == null) {
+                return new BoardSnapshot.Page(parser.bytes.slice(block[0], block[1] - block[0]));
+            }
+            BoardSnapshot.Page page = new BoardSnapshot.Page(block[1] - block[0], true);
+            pageRecords(page, block[0], block[1], 0);
+            return page;
+        }
+        BoardSnapshot.Page page = new BoardSnapshot.Page(category.size(), false);
+        for (int i = 0; i < category.size(); i++) {
+            String imageLoc = category.imageAt(i);
+            page.add(0, isCategory(categoryImage, imageLoc), imageLoc, category.textAt(i));
+        }
+        return page;
+    }
+
+    /**
+     * Adds the lines of a range of records of the binary board, and of the
+     * records nested in them, to a page.
+     */
+    private void pageRecords(BoardSnapshot.Page page, int from, int to, int level) {
+        for (int r = from; r < to; r++) {
+            int first = binary.firstChild(r);
+            page.add(level, first >= 0, binary.image(r), binary.text(r));
+            if (first >= 0) {
+                pageRecords(page, first, first + binary.childCount(r), level + 1);
+            }
+        }
+    }
+
+    /**
+     * Adds the mapping to the current category (or the default category if
+     * that is the current category). On the default category, this adds a
+     * new, empty category named by the text.
+     *
+     * @param imageLoc the location of the image
+     * @param text     the text associated with the image
+     */
+    @Override
+    public synchronized void addItem(String imageLoc, String text) {
+        if (currentCategory.equals("")) {
+            addCategory(imageLoc, text);
+        } else if (addItemTo(currentCategory, imageLoc, text)) {
+            record(BoardJournal.ADD_ITEM, imageLoc, text);
+            remember(imageLoc, text);
+        }
+    }
+
+    /**
+     * Adds an item to a category, or changes its text.
+     *
+     * @param categoryImage the image of the category
+     * @param imageLoc the location of the image
+     * @param text the text associated with the image
+     * @return true if the item was added
+     */
+    private boolean addItemTo(String categoryImage, String imageLoc, String text) {
+        if (isCategory(categoryImage, imageLoc)) {
+            System.err.println("Category already exists: " + imageLoc);
+            return false;
+        }
+        try {
+            AACCategory category = categories.get(categoryImage);
+            String oldText = category.hasImage(imageLoc) ? category.getText(imageLoc) : null;
+            category.addItem(imageLoc, text);
+            if (!category.hasImage(imageLoc)) {
+                return false;
+            }
+            touch(categoryImage);
+            boardIndex.add(AACCategory.normalize(text), categoryImage);
+            searchIndex.add(categoryImage, imageLoc, text);
+            if (oldText != null) {
+                unindex(categoryImage, category, oldText);
+            }
+            return true;
+        } catch (KeyNotFoundException e) {
+            System.err.println("Category not found: " + categoryImage);
+            return false;
+        } catch (NullKeyException e) {
+            // Normalized texts are never null
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Adds a new, empty category to the current category, or to the home
+     * page.
+     *
+     * @param imageLoc the image of the new category, which no other category
+     *        on the board may have
+     * @param name the name of the new category
+     */
+    @Override
+    public synchronized void addCategory(String imageLoc, String name) {
+        if (addCategoryTo(currentCategory, imageLoc, name)) {
+            record(BoardJournal.ADD_CATEGORY, imageLoc, name);
+            remember(imageLoc, name);
+        }
+    }
+
+    /**
+     * Adds a new, empty category to a category, or to the home page.
+     *
+     * @param parentImage the image of the category, or "" for the home page
+     * @param imageLoc the image of the new category
+     * @param name the name of the new category
+     * @return true if the category was added
+     */
+    private boolean addCategoryTo(String parentImage, String imageLoc, String name) {
+        try {
+            if (categories.hasKey(imageLoc) || isUnreadCategory(imageLoc)) {
+                System.err.println("Category already exists: " + imageLoc);
+                return false;
+            }
+            AACCategory parent = parentImage.equals("") ? home : categories.get(parentImage);
+            if (parent.hasImage(imageLoc)) {
+                System.err.println("Image already in use: " + imageLoc);
+                return false;
+            }
+            register(imageLoc, newCategory(name), parentImage);
+            parent.addItem(imageLoc, name);
+            touch(parentImage);
+            index(parentImage, new String[] {imageLoc}, new String[] {name}, 1);
+            return true;
+        } catch (NullKeyException e) {
+            System.err.println("Error: Invalid (null) key provided.");
+        } catch (KeyNotFoundException e) {
+            System.err.println("Category not found: " + parentImage);
+        }
+        return false;
+    }
+
+    /**
+     * Removes the mapping for the image from the current category, or the
+     * home page. If the image is a category, this removes it along with
+     * everything in it. The other images keep their order.
+     *
+     * @param imageLoc the location of the image
+     */
+    @Override
+    public synchronized void removeItem(String imageLoc) {
+        if (removeItemFrom(currentCategory, imageLoc)) {
+            record(BoardJournal.REMOVE, imageLoc, "");
+        }
+    }
+
+    /**
+     * Removes a tile from a category, or from the home page, along with
+     * everything in it if it is a category.
+     *
+     * @param categoryImage the image of the category, or "" for the home page
+     * @param imageLoc the location of the image
+     * @return true if the tile was there
+     */
+    private boolean removeItemFrom(String categoryImage, String imageLoc) {
+        try {
+            AACCategory category = categoryImage.equals("") ? home
+                : categories.get(categoryImage);
+            if (!category.hasImage(imageLoc)) {
+                return false;
+            }
+            if (isCategory(categoryImage, imageLoc)) {
+                removeCategory(imageLoc);
+            }
+            String text = category.getText(imageLoc);
+            category.removeItem(imageLoc);
+            touch(categoryImage);
+            if (categoryImage.equals("")) {
+                searchIndex.remove("", imageLoc);
+            } else {
+                unindex(categoryImage, category, text);
+                searchIndex.remove(categoryImage, imageLoc);
+            }
+            return true;
+        } catch (KeyNotFoundException e) {
+            System.err.println("Category not found: " + categoryImage);
+            return false;
+        }
+    }
+
+    /**
+     * Forgets a category and everything in it, removing its items from the
+     * indexes. Its tile in the category holding it is left to the caller.
+     *
+     * @param categoryImage the image of the category
+     * @throws KeyNotFoundException if there is no such category
+     */
+    private void removeCategory(String categoryImage) throws KeyNotFoundException {
+        AACCategory category = categories.get(categoryImage);
+        for (int i = 0; i < category.size(); i++) {
+            String image = category.imageAt(i);
+            if (isCategory(categoryImage, image)) {
+                removeCategory(image);
+            }
+            boardIndex.remove(AACCategory.normalize(category.textAt(i)), categoryImage);
+            searchIndex.remove(categoryImage, image);
+        }
+        categories.remove(categoryImage);
+        parents.remove(categoryImage);
+        unread.remove(categoryImage);
+        touch(categoryImage);
+    }
+
+    /**
+     * Keeps every later change to the board in a journal file, after
+     * applying the changes already in it to the board. Changes are written
+     * to the journal as they are made and made durable by
+     * {@link #saveJournal}. Only the categories the changes are in are
+     * read.
+     *
+     * @param filename the name of the journal file
+     */
+    public synchronized void openJournal(String filename) {
+        try {
+            if (journal != null) {
+                journal.close();
+            }
+            journalFile = Path.of(filename);
+            Path older = olderJournal();
+            if (Files.exists(older)) {
+                // A fold cut short by a crash left its journal; apply it and fold it again
+                BoardJournal.replay(older, this::replay);
+                String base = this.filename;
+                CompletableFuture.runAsync(() -> fold(base, older));
+            }
+            journal = new BoardJournal(journalFile);
+            journal.replay(this::replay);
+        } catch (IOException e) {
+            System.err.println("Error reading file: " + e.getMessage());
+            journal = null;
+        }
+    }
+
+    /**
+     * Makes the changes since the last save durable, at a cost that depends
+     * on the changes rather than on the board. Once the journal is large,
+     * this also starts folding it into the mappings file.
+     */
+    public synchronized void saveJournal() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.sync();
+            if (journal.size() > COMPACT_BYTES) {
+                compactJournal();
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing to file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Folds the journal into the mappings file in the background: the
+     * changes so far move to a second journal, and a new mappings file is
+     * written from the old one and those changes, replacing it atomically
+     * as {@link #writeToFile} does, while later changes go on to an empty
+     * journal. Nothing is
+     * done if there is no journal or a fold is already under way.
+     * <p>
+     * The mappings file is replaced by a rename, so reading the categories
+     * not read yet goes on from the old file where renaming an open file is
+     * allowed (as on Linux and macOS). If a crash comes between the rename
+     * and the deletion of the second journal, its changes are applied again
+     * at the next {@link #openJournal}, which leaves the same tiles.
+     * </p>
+     *
+     * @return a future completed when the fold is done
+     */
+    public synchronized CompletableFuture<Void> compactJournal() {
+        Path older = (journal == null) ? null : olderJournal();
+        if (older == null || Files.exists(older)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        try {
+            journal.rotate(older);
+        } catch (IOException e) {
+            System.err.println("Error writing to file: " + e.getMessage());
+            return CompletableFuture.completedFuture(null);
+        }
+        String base = filename;
+        return CompletableFuture.runAsync(() -> fold(base, older));
+    }
+
+    /**
+     * Writes a mappings file with the changes of a journal applied, replacing
+     * the old one, and deletes the journal. A mappings file that cannot be
+     * read is left as it is, with the journal.
+     *
+     * @param base the name of the mappings file
+     * @param older the journal
+     */
+    private static void fold(String base, Path older) {
+        try {
+            boolean binary = BinaryBoard.isBinary(Path.of(base));
+            AACMappings board = readAll(base);
+            BoardJournal.replay(older, board::replay);
+            if (binary) {
+                board.writeBinary(base);
+            } else {
+                board.writeText(base);
+            }
+            Files.delete(older);
+        } catch (IOException e) {
+            System.err.println("Error writing to file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the file a journal moves to while it is folded.
+     */
+    private Path olderJournal() {
+        return journalFile.resolveSibling(journalFile.getFileName() + ".old");
+    }
+
+    /**
+     * Appends a change to the current category, or to the home page, to
+     * the journal, if there is one.
+     *
+     * @param kind the kind of change
+     * @param imageLoc the image of the tile
+     * @param text the text of the tile
+     */
+    private void record(byte kind, String imageLoc, String text) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.append(kind, path, depth, imageLoc, text);
+        } catch (IOException e) {
+            System.err.println("Error writing to file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Applies a change from a journal, reading the categories on its path
+     * first. Changes to categories that are gone are skipped.
+     *
+     * @param kind the kind of change
+     * @param categoryPath the images of the categories from the home page
+     * @param imageLoc the image of the tile
+     * @param text the text of the tile
+     */
+    private void replay(byte kind, String[] categoryPath, String imageLoc, String text) {
+        for (String categoryImage : categoryPath) {
+            ensureRead(categoryImage);
+        }
+        String categoryImage = (categoryPath.length == 0) ? ""
+            : categoryPath[categoryPath.length - 1];
+        if (!categoryImage.equals("") && !categories.hasKey(categoryImage)) {
+            return;
+        }
+        if (kind == BoardJournal.ADD_CATEGORY) {
+            addCategoryTo(categoryImage, imageLoc, text);
+        } else if (kind == BoardJournal.REMOVE) {
+            removeItemFrom(categoryImage, imageLoc);
+        } else if (!categoryImage.equals("")) {
+            addItemTo(categoryImage, imageLoc, text);
+        }
+    }
+
+    /**
+     * Remembers the text given to every image added to the board from now
+     * on in a vocabulary file, so that {@link #suggestText} can offer it
+     * when the image is added again. The vocabulary is mapped into memory
+     * rather than read, so even a large one costs almost no heap and opens
+     * at once. The file belongs to this board until the vocabulary is
+     * closed: boards can use the same vocabulary one after another, but if
+     * another board, in this process or another, has it open, no
+     * vocabulary is opened.
+     *
+     * @param filename the name of the vocabulary file
+     */
+    public synchronized void openVocabulary(String filename) {
+        closeVocabulary();
+        try {
+            vocabulary = MappedStringMap.open(filename);
+        } catch (IOException e) {
+            System.err.println("Error reading file: " + e.getMessage());
+        }
+    }
 
     /**
-     * Creates a set of mappings for the AAC based on the provided
-     * file. The file is read in to create categories and fill each
-     * of the categories with initial items.
+     * Writes the vocabulary out and closes it, if one is open.
+     */
+    public synchronized void closeVocabulary() {
+        if (vocabulary == null) {
+            return;
+        }
+        try {
+            vocabulary.close();
+        } catch (IOException e) {
+            System.err.println("Error writing to file: " + e.getMessage());
+        }
+        vocabulary = null;
+    }
+
+    /**
+     * Suggests the text for an image about to be added: its text on the
+     * page being viewed if it is there, or else the text it was last added
+     * with, on any board that has used the vocabulary.
      *
-     * @param filename the name of the file that stores the mapping information
+     * @param imageLoc the location of the image
+     * @return the suggested text, or the empty string if there is none
      */
-    public AACMappings(String filename) {
-        categories = new AssociativeArray<>();
-        currentCategory = "";
-        loadMappings(filename); // Load the mappings from the provided file
+    public synchronized String suggestText(String imageLoc) {
+        try {
+            AACCategory page = page();
+            if (page.hasImage(imageLoc)) {
+                return page.getText(imageLoc);
+            }
+            if (vocabulary != null && vocabulary.hasKey(imageLoc)) {
+                return vocabulary.get(imageLoc);
+            }
+        } catch (KeyNotFoundException e) {
+            // Nothing to suggest
+        }
+        return "";
     }
 
     /**
-     * Loads the category and item mappings from a file.
+     * Adds an image and its text to the vocabulary, if one is open.
      *
-     * @param filename the name of the file to read
+     * @param imageLoc the location of the image
+     * @param text the text of the image
      */
-    private void loadMappings(String filename) {
-        try (BufferedReader reader = new BufferedReader(new FileReader(filename))) {
-            String line;
-            AACCategory category = null;  // Initialize the category
-            while ((line = reader.readLine()) != null) {
-                if (!line.startsWith(">")) {
-                    // This line defines a category
-                    String[] parts = line.split(" ", 2);
-                    String categoryImage = parts[0].trim();
-                    String categoryName = parts[1].trim();
-
-                    // Create a new category and add it to the associative array
-                    category = new AACCategory(categoryName);  // Instantiate the AACCategory
-                    categories.set(categoryImage, category);   // Add to categories
-                } else {
-                    // This line defines an item in the current category
-                    String[] parts = line.substring(1).split(" ", 2);
-                    String imageLoc = parts[0].trim();
-                    String text = parts[1].trim();
-                    if (category != null) {
-                        category.addItem(imageLoc, text);
+    private void remember(String imageLoc, String text) {
+        if (vocabulary == null) {
+            return;
+        }
+        try {
+            vocabulary.set(imageLoc, text);
+        } catch (NullKeyException e) {
+            System.err.println("Error: Invalid (null) key provided.");
+        } catch (UncheckedIOException e) {
+            System.err.println("Error writing to file: " + e.getCause().getMessage());
+        }
+    }
+
+    /**
+     * Applies the changes to the text mappings file since it was loaded, or
+     * last reloaded, to the board. Top-level categories taken out of the
+     * file are removed, new ones added, and those whose lines changed are
+     * read again, keeping the use counts of their items; the others are
+     * left as they are, along with any changes made to them on the board.
+     * Changes in the journal (see {@link #openJournal}) to the categories
+     * read again are applied to them again, so a fold of the journal, which
+     * rewrites the file, loses nothing, and the board matches what a
+     * restart would load. The categories entered stay entered as long as
+     * they are still there.
+     *
+     * @return the number of top-level categories added, removed or read
+     *         again
+     */
+    public synchronized int reload() {
+        try (FileChannel channel = FileChannel.open(Path.of(filename), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("File too large: " + filename);
+            }
+            ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                .order(ByteOrder.LITTLE_ENDIAN);
+            if (BinaryBoard.isBinary(bytes)) {
+                throw new IOException("Cannot reload a binary board: " + filename);
+            }
+            Parser newParser = new Parser(bytes);
+            Contents top = newParser.parse(0, bytes.limit(), 0);
+            AssociativeArray<String, long[]> newBlocks = blocksOf(bytes, top);
+            AssociativeArray<String, Integer> shifts = new AssociativeArray<>();
+            AssociativeArray<String, byte[]> counts = new AssociativeArray<>();
+            int changes = 0;
+
+            // Take out what is gone or changed first, so that a category can
+            // move from one top-level category to another.
+            String[] onHome = home.getImages();
+            for (String image : onHome) {
+                long[] oldBlock = (blocks != null && blocks.hasKey(image)) ? blocks.get(image) : null;
+                long[] newBlock = newBlocks.hasKey(image) ? newBlocks.get(image) : null;
+                if (newBlock == null) {
+                    if (blocks == null || oldBlock != null) {
+                        removeItemFrom("", image); // Not added on the board
+                        changes++;
                     }
+                } else if (oldBlock != null && oldBlock[0] == newBlock[0]) {
+                    shifts.set(image, (int) (newBlock[1] - oldBlock[1]));
+                } else {
+                    saveCounts(image, counts);
+                    removeCategory(image);
                 }
             }
-        } catch (IOException | NullKeyException e) {
+            for (int i = 0; i < unread.size(); i++) {
+                String owner = topLevelOf(unread.keyAt(i));
+                int shift = shifts.hasKey(owner) ? shifts.get(owner) : 0;
+                unread.valueAt(i)[0] += shift;
+                unread.valueAt(i)[1] += shift;
+                touch(unread.keyAt(i)); // Its page holds lines of the old mapping
+            }
+
+            parser = newParser;
+            binary = null;
+            AssociativeArray<String, Boolean> rebuilt = new AssociativeArray<>();
+            for (int i = 0; i < top.count; i++) {
+                String image = top.imageLocs[i];
+                long[] oldBlock = (blocks != null && blocks.hasKey(image)) ? blocks.get(image) : null;
+                if (oldBlock != null && oldBlock[0] == newBlocks.get(image)[0]) {
+                    continue; // Unchanged, or removed on the board
+                }
+                if (home.hasImage(image)) {
+                    register(image, newCategory(top.texts[i]), "");
+                    home.addItem(image, top.texts[i]);
+                    touch("");
+                    searchIndex.add("", image, top.texts[i]);
+                } else if (!addCategoryTo("", image, top.texts[i])) {
+                    continue;
+                }
+                readCategory(image, categories.get(image), top.firsts[i], top.ends[i], 1, false);
+                rebuilt.set(image, true);
+                changes++;
+            }
+            replayJournals(rebuilt);
+            reorderHome(top, newBlocks);
+            blocks = newBlocks;
+            for (int i = 0; i < counts.size(); i++) {
+                String image = counts.keyAt(i);
+                ensureRead(image);
+                if (categories.hasKey(image)) {
+                    categories.get(image).loadFrequencies(
+                        new DataInputStream(new ByteArrayInputStream(counts.valueAt(i))));
+                }
+            }
+            if (unread.size() == 0) {
+                parser = null;
+            }
+            keepPath();
+            return changes;
+        } catch (IOException | KeyNotFoundException | NullKeyException e) {
             System.err.println("Error reading file: " + e.getMessage());
+            return 0;
         }
     }
 
     /**
-     * Given the image location selected, it determines the action to be
-     * taken. This can be updating the information that should be displayed
-     * or returning text to be spoken.
+     * Applies the changes in the journal, and in any journal being folded,
+     * again to the top-level categories just read again from the file, in
+     * the order they were made. The board so ends up as a restart would
+     * leave it: the mappings file with the journals applied over it. A
+     * category the journal adds and the file already has is left alone.
      *
-     * @param imageLoc the location where the image is stored
-     * @return if there is text to be spoken, it returns that information, otherwise
-     *         it returns the empty string
-     * @throws NoSuchElementException if the image provided is not in the current
-     *                                category
+     * @param rebuilt the images of the top-level categories read again
+     * @throws IOException if a journal cannot be read
      */
-    @Override
-    public String select(String imageLoc) {
+    private void replayJournals(AssociativeArray<String, Boolean> rebuilt) throws IOException {
+        if (journal == null || rebuilt.size() == 0) {
+            return;
+        }
+        BoardJournal.Handler handler = (kind, categoryPath, imageLoc, text) -> {
+            String topLevel = (categoryPath.length == 0) ? imageLoc : categoryPath[0];
+            if (rebuilt.hasKey(topLevel)
+                && !(kind == BoardJournal.ADD_CATEGORY && categories.hasKey(imageLoc))) {
+                replay(kind, categoryPath, imageLoc, text);
+            }
+        };
+        BoardJournal.replay(olderJournal(), handler);
+        BoardJournal.replay(journalFile, handler);
+    }
+
+    /**
+     * Starts a thread that watches the mappings file and calls
+     * {@link #reload} once it has changed and stayed unchanged for a moment,
+     * as an editor may write it in several steps. The watcher stops with
+     * {@link #stopWatching}. Categories not read yet are read from the new
+     * file, so, short of a reload, the file should only be replaced, not
+     * rewritten in place, while some category is unread.
+     *
+     * @param onReload what to do after a reload that changed the board; it
+     *        runs on the watcher's thread
+     */
+    public synchronized void startWatching(Runnable onReload) {
+        if (watcher != null) {
+            return;
+        }
+        Path file = Path.of(filename).toAbsolutePath();
         try {
-            if (categories.hasKey(imageLoc)) {
-                // Change the category if the image represents a category
-                currentCategory = categories.get(imageLoc).getCategory();
-                return "";
-            } else if (!currentCategory.equals("") && categories.get(currentCategory).hasImage(imageLoc)) {
-                // If we're in a category, return the text for the selected image
-                return categories.get(currentCategory).select(imageLoc);
-            } else {
-                System.out.println("No image selected: " + imageLoc);
-                return "";
+            WatchService service = file.getFileSystem().newWatchService();
+            file.getParent().register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+            watcher = service;
+            Thread thread = new Thread(() -> watch(service, file, onReload),
+                "AACMappings reloader");
+            thread.setDaemon(true);
+            thread.start();
+        } catch (IOException e) {
+            System.err.println("Error watching file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stops the watcher started by {@link #startWatching}, if any.
+     */
+    public synchronized void stopWatching() {
+        if (watcher == null) {
+            return;
+        }
+        try {
+            watcher.close();
+        } catch (IOException e) {
+            System.err.println("Error watching file: " + e.getMessage());
+        }
+        watcher = null;
+    }
+
+    /**
+     * Waits for changes to the mappings file and reloads it, until the
+     * watch service is closed.
+     *
+     * @param service the watch service
+     * @param file the mappings file
+     * @param onReload what to do after a reload that changed the board
+     */
+    private void watch(WatchService service, Path file, Runnable onReload) {
+        try {
+            while (true) {
+                boolean changed = isAbout(service.take(), file);
+                WatchKey key;
+                while ((key = service.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    changed |= isAbout(key, file);
+                }
+                if (changed && reload() > 0) {
+                    onReload.run();
+                }
             }
-        } catch (KeyNotFoundException e) {
-            System.out.println("No image selected: " + imageLoc);
-            return "";
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Stopped
+        }
+    }
+
+    /**
+     * Determines whether the events of a watch key include the mappings
+     * file, and readies the key for more events.
+     */
+    private static boolean isAbout(WatchKey key, Path file) {
+        boolean about = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            about |= file.getFileName().equals(event.context());
         }
+        key.reset();
+        return about;
     }
 
     /**
-     * Provides an array of all the images in the current category
+     * Hashes the lines of each top-level category of a text file, with its
+     * name, so that reload() can tell which categories changed.
      *
-     * @return the array of images in the current category; if there are no images,
-     *         it should return an empty array
+     * @param bytes the mapped file
+     * @param top the home page of the file
+     * @return a map from the image of each top-level category to {hash,
+     *         first byte, end byte} of its lines
+     * @throws NullKeyException if an image is null
      */
-    @Override
-    public String[] getImageLocs() {
+    private static AssociativeArray<String, long[]> blocksOf(ByteBuffer bytes, Contents top)
+        throws NullKeyException {
+        AssociativeArray<String, long[]> result = new AssociativeArray<>();
+        for (int i = 0; i < top.count; i++) {
+            int from = top.firsts[i];
+            int to = top.ends[i];
+            long hash = to - from;
+            int pos = from;
+            for (; pos + Long.BYTES <= to; pos += Long.BYTES) {
+                hash = (hash ^ bytes.getLong(pos)) * HASH_MULTIPLIER;
+                hash ^= hash >>> 32;
+            }
+            for (; pos < to; pos++) {
+                hash = (hash ^ bytes.get(pos)) * HASH_MULTIPLIER;
+            }
+            hash = hash * 31 + top.texts[i].hashCode();
+            result.set(top.imageLocs[i], new long[] {hash, from, to});
+        }
+        return result;
+    }
+
+    /**
+     * Saves the use counts of a category and of the categories in it that
+     * have been read, by image.
+     *
+     * @param categoryImage the image of the category
+     * @param counts where to save the counts
+     * @throws KeyNotFoundException if the category is not registered
+     * @throws IOException if the counts cannot be written
+     */
+    private void saveCounts(String categoryImage, AssociativeArray<String, byte[]> counts)
+        throws KeyNotFoundException, IOException {
+        if (unread.hasKey(categoryImage)) {
+            return; // Never entered, so never used
+        }
+        AACCategory category = categories.get(categoryImage);
+        ByteArrayOutputStream saved = new ByteArrayOutputStream();
+        category.saveFrequencies(new DataOutputStream(saved));
         try {
-            if (!currentCategory.equals("") && categories.hasKey(currentCategory)) {
-                return categories.get(currentCategory).getImageLocs();
+            counts.set(categoryImage, saved.toByteArray());
+        } catch (NullKeyException e) {
+            // Registered images are never null
+            throw new IllegalStateException(e);
+        }
+        for (int i = 0; i < category.size(); i++) {
+            if (isCategory(categoryImage, category.imageAt(i))) {
+                saveCounts(category.imageAt(i), counts);
             }
-        } catch (KeyNotFoundException e) {
-            // Handle the exception, e.g., log it or provide feedback
-            System.out.println("Category not found: " + currentCategory);
         }
-        return new String[0]; // Return an empty array if no current category or exception occurs
     }
 
     /**
-     * Resets the current category of the AAC back to the default
-     * category (empty string).
+     * Returns the image of the top-level category holding a category.
+     *
+     * @param categoryImage the image of a registered category
+     * @throws KeyNotFoundException if the category is not registered
      */
-    public void reset() {
-        currentCategory = ""; // Reset to default category (empty)
+    private String topLevelOf(String categoryImage) throws KeyNotFoundException {
+        String parent = parents.get(categoryImage);
+        while (!parent.equals("")) {
+            categoryImage = parent;
+            parent = parents.get(categoryImage);
+        }
+        return categoryImage;
     }
 
     /**
-     * Writes the AAC mappings stored to a file.
+     * Puts the top-level categories of the file in the file's order, before
+     * any added on the board.
      *
-     * @param filename the name of the file to write the AAC mapping to
+     * @param top the home page of the file
+     * @param newBlocks the top-level categories of the file
+     */
+    private void reorderHome(Contents top, AssociativeArray<String, long[]> newBlocks) {
+        String[] images = new String[home.size()];
+        String[] names = new String[home.size()];
+        int count = 0;
+        for (int i = 0; i < top.count; i++) {
+            if (home.hasImage(top.imageLocs[i]) && count < images.length) {
+                images[count] = top.imageLocs[i];
+                names[count++] = home.getText(top.imageLocs[i]);
+            }
+        }
+        for (int i = 0; i < home.size() && count < images.length; i++) {
+            if (!newBlocks.hasKey(home.imageAt(i))) {
+                images[count] = home.imageAt(i);
+                names[count++] = home.textAt(i);
+            }
+        }
+        boolean same = count == home.size();
+        for (int i = 0; i < count && same; i++) {
+            same = images[i].equals(home.imageAt(i));
+        }
+        if (!same) {
+            for (int i = 0; i < count; i++) {
+                home.removeItem(images[i]);
+            }
+            home.addItems(images, names, count);
+            touch("");
+        }
+    }
+
+    /**
+     * Leaves the categories entered that are no longer there, keeping the
+     * enclosing ones.
+     */
+    private void keepPath() {
+        int kept = 0;
+        while (kept < depth && isCategory((kept == 0) ? "" : path[kept - 1], path[kept])) {
+            kept++;
+        }
+        depth = kept;
+        currentCategory = (depth == 0) ? "" : path[depth - 1];
+    }
+
+    /**
+     * Searches every tile of the board, categories included, by the words
+     * of its text and image name. Results match each word of the query
+     * exactly, as a prefix or with a typo, and come best first. The
+     * category of a result is the image of the category holding the tile,
+     * or "" for a category tile on the home page. Categories that have not
+     * been entered yet are read first.
+     *
+     * @param query the words to look for
+     * @param limit the maximum number of results
+     * @return the matching tiles, best first
+     */
+    public synchronized SearchIndex.Result[] search(String query, int limit) {
+        loadAll();
+        return searchIndex.search(query, limit);
+    }
+
+    /**
+     * Finds the categories that have an item with the given text, ignoring
+     * case and surrounding whitespace. Selecting one of them from the home
+     * page and calling {@link #findImages} then gives the items themselves.
+     *
+     * @param text the text to look for
+     * @return the images of the matching categories; an empty array if
+     *         there are none
+     */
+    public synchronized String[] findCategories(String text) {
+        loadAll();
+        return boardIndex.get(AACCategory.normalize(text)).clone();
+    }
+
+    /**
+     * Finds the images that can be displayed whose text matches the given
+     * text, ignoring case and surrounding whitespace. Nested categories match
+     * by name.
+     *
+     * @param text the text to look for
+     * @return the matching images; an empty array if there are none
+     */
+    public synchronized String[] findImages(String text) {
+        try {
+            return page().findImages(text);
+        } catch (KeyNotFoundException e) {
+            return new String[0];
+        }
+    }
+
+    /**
+     * Sets the order in which every category, including those added later,
+     * lists its images, nested categories included. The home page always
+     * lists the categories in the order they were added.
+     *
+     * @param newOrder the order
      */
-    public void writeToFile(String filename) {
-        try (FileWriter writer = new FileWriter(filename)) {
-            // Get the keys as an Object[] and cast each to a String
-            Object[] categoryKeys = categories.keys(); // returns Object[]
+    public synchronized void setOrder(AACCategory.Order newOrder) {
+        order = newOrder;
+        categories.forEach((image, category) -> category.setOrder(newOrder));
+    }
 
-            for (Object categoryKeyObj : categoryKeys) {
-                String categoryKey = (String) categoryKeyObj; // Cast each key to String
-                AACCategory category = categories.get(categoryKey);
-                writer.write(categoryKey + " " + category.getCategory() + "\n");
-                for (String imageLoc : category.getImageLocs()) {
-                    writer.write(">" + imageLoc + " " + category.select(imageLoc) + "\n");
+    /**
+     * Writes how often, and how recently, each item of each category has
+     * been selected, so a later session can restore the frequency order.
+     *
+     * @param filename the name of the file to write the frequencies to
+     */
+    public synchronized void saveFrequencies(String filename) {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(filename)))) {
+            out.writeInt(FREQUENCIES_MAGIC);
+            out.writeInt(categories.size() - unread.size());
+            for (KVPair<String, AACCategory> pair : categories) {
+                if (unread.hasKey(pair.getKey())) {
+                    continue; // Never entered, so never used
                 }
+                out.writeUTF(pair.getKey());
+                pair.getValue().saveFrequencies(out);
             }
-        } catch (IOException | KeyNotFoundException e) {
+        } catch (IOException e) {
             System.err.println("Error writing to file: " + e.getMessage());
         }
     }
 
     /**
-     * Adds the mapping to the current category (or the default category if
-     * that is the current category)
+     * Reads frequencies written by {@link #saveFrequencies}, reading the
+     * categories they were saved for. Categories and items that are no
+     * longer on the board are skipped; a missing file leaves the
+     * frequencies as they are.
      *
-     * @param imageLoc the location of the image
-     * @param text     the text associated with the image
+     * @param filename the name of the file to read the frequencies from
      */
-    public void addItem(String imageLoc, String text) {
-        if (currentCategory.equals("")) {
-            System.err.println("No current category set. Cannot add item.");
-        } else {
-            try {
-                categories.get(currentCategory).addItem(imageLoc, text);
-            } catch (KeyNotFoundException e) {
-                System.err.println("Category not found: " + currentCategory);
+    public synchronized void loadFrequencies(String filename) {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(filename)))) {
+            if (in.readInt() != FREQUENCIES_MAGIC) {
+                throw new IOException("Not a frequencies file: " + filename);
+            }
+            int count = in.readInt();
+            AACCategory skipped = new AACCategory("");
+            for (int i = 0; i < count; i++) {
+                String categoryImage = in.readUTF();
+                // Reading a category registers its nested ones, which are saved after it
+                ensureRead(categoryImage);
+                AACCategory category = categories.hasKey(categoryImage)
+                    ? categories.get(categoryImage) : skipped;
+                category.loadFrequencies(in);
             }
+        } catch (FileNotFoundException e) {
+            // Nothing has been saved yet.
+        } catch (IOException | KeyNotFoundException e) {
+            System.err.println("Error reading file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Estimates the memory retained by these mappings: the categories with
+     * their items, the byte ranges of categories not read yet, the indexes,
+     * and the pages kept for snapshots.
+     *
+     * @return the estimated footprint
+     */
+    public synchronized Footprint footprint() {
+        Footprint total = new Footprint();
+        total.addOther(this, 22 * Footprint.REFERENCE + Integer.BYTES);
+        categories.footprint(total);
+        categories.forEach((image, category) -> category.footprint(total));
+        home.footprint(total);
+        parents.footprint(total);
+        total.addArray(path, path.length, Footprint.REFERENCE, depth);
+        total.addOther(filename, 0);
+        unread.footprint(total);
+        unread.forEach((image, block) -> total.addArray(block, 3, Integer.BYTES, 3));
+        if (blocks != null) {
+            blocks.footprint(total);
+            blocks.forEach((image, block) -> total.addArray(block, 3, Long.BYTES, 3));
+        }
+        if (binary != null) {
+            binary.footprint(total);
+        }
+        if (parser != null) {
+            total.addOther(parser, 2 * Footprint.REFERENCE);
+            total.addArray(parser.scratch, parser.scratch.length, Byte.BYTES, 0);
+        }
+        boardIndex.footprint(total);
+        searchIndex.footprint(total);
+        predictor.footprint(total);
+        if (pages != null) {
+            BoardSnapshot.footprint(pages, total);
+            changed.footprint(total);
+        }
+        return total;
+    }
+
+    /**
+     * Estimates the memory retained by one category.
+     *
+     * @param categoryImage the image of the category
+     * @return the estimated footprint of the category
+     * @throws NoSuchElementException if there is no such category
+     */
+    public synchronized Footprint footprint(String categoryImage) {
+        try {
+            return categories.get(categoryImage).footprint();
+        } catch (KeyNotFoundException e) {
+            throw new NoSuchElementException("Category not found: " + categoryImage);
         }
     }
 
     /**
-     * Gets the name of the current category
+     * Gets the name of the current category. It does not wait for the
+     * mappings' lock, so it may name the category being left while another
+     * thread changes it.
      *
      * @return returns the current category or the empty string if on the default
      *         category
      */
     @Override
     public String getCategory() {
-        return currentCategory;
+        String currentCategory = this.currentCategory;
+        try {
+            return currentCategory.equals("") ? "" : categories.get(currentCategory).getCategory();
+        } catch (KeyNotFoundException e) {
+            return "";
+        }
     }
 
     /**
@@ -184,15 +2024,313 @@ public class AACMappings implements AACPage {
      * @return true if it is in the set of images that can be displayed, false otherwise
      */
     @Override
-    public boolean hasImage(String imageLoc) {
+    public synchronized boolean hasImage(String imageLoc) {
         try {
-            if (!currentCategory.equals("") && categories.hasKey(currentCategory)) {
-                return categories.get(currentCategory).hasImage(imageLoc);
-            }
+            return page().hasImage(imageLoc);
         } catch (KeyNotFoundException e) {
             // Handle the case where the key is not found
             System.out.println("Category not found: " + currentCategory);
         }
         return false;
     }
-}
\ No newline at end of file
+
+    /**
+     * A predicted item: where it is and what it says.
+     */
+    public static final class Prediction {
+        private final String category;
+        private final String imageLoc;
+        private final String text;
+
+        private Prediction(String category, String imageLoc, String text) {
+            this.category = category;
+            this.imageLoc = imageLoc;
+            this.text = text;
+        }
+
+        /**
+         * Returns the image of the category holding the item.
+         *
+         * @return the category image
+         */
+        public String getCategory() {
+            return this.category;
+        }
+
+        /**
+         * Returns the image location of the item.
+         *
+         * @return the image location
+         */
+        public String getImageLoc() {
+            return this.imageLoc;
+        }
+
+        /**
+         * Returns the text of the item.
+         *
+         * @return the text
+         */
+        public String getText() {
+            return this.text;
+        }
+    }
+
+    /**
+     * The lines of one category, parsed but not yet added to the board.
+     */
+    private static final class Contents {
+        private String[] imageLocs = new String[16];
+        private String[] texts = new String[16];
+        private int[] firsts = new int[16]; // For each tile, its nested category's first byte, or -1
+        private int[] ends = new int[16]; // For each nested category, the byte after its contents
+        private int count;
+        private Contents[] nested; // The parsed nested categories, if parsed with them
+        private AACCategory category; // The category, if already filled with the items
+        private String[] normalized; // The normalized texts, if already indexed for search
+    }
+
+    /**
+     * Parses the lines of a mapped mappings file. A parser reuses one
+     * buffer to decode strings, so each thread needs its own; the file is
+     * only read, so parsers can share it.
+     */
+    private static final class Parser {
+        private final ByteBuffer bytes;
+        private byte[] scratch; // Reused by decode()
+
+        private Parser(ByteBuffer bytes) {
+            this.bytes = bytes;
+            this.scratch = new byte[256];
+        }
+
+        /**
+         * Parses the lines of a category at the given depth, which are its
+         * items and nested categories, noting the byte range of each nested
+         * category's contents: the deeper (or blank) lines after it.
+         * <p>
+         * Each line is parsed in place: the image runs to the first space
+         * and the text is the rest, each without surrounding whitespace,
+         * and only those two strings are decoded. Lines deeper than the
+         * category's items are only counted past. Blank lines are skipped,
+         * a line without a space is an image with empty text, and a line
+         * that is only {@code +} marks the next as a nested category.
+         * </p>
+         *
+         * @param from the index of the first byte of the contents
+         * @param to the index after the last byte of the contents
+         * @param level the number of {@code >} before each item of the category
+         * @return the parsed contents
+         */
+        private Contents parse(int from, int to, int level) {
+            Contents contents = new Contents();
+            int count = 0;
+            int pos = from;
+            boolean marked = false; // Whether the last line at this depth was a marker
+            while (pos < to) {
+                int start = pos;
+                int eol = lineEnd(bytes, pos, to);
+                pos = (eol < to) ? eol + 1 : to;
+                if (levelOf(bytes, start, eol) != level) {
+                    continue; // Lines deeper than an item are not part of the board
+                }
+                start += level;
+                if (level > 0 && isMarker(bytes, start, eol)) {
+                    marked = true;
+                    continue;
+                }
+                boolean nested = level == 0 || marked;
+                int space = start;
+                while (space < eol && bytes.get(space) != ' ') {
+                    space++;
+                }
+                int imageStart = skipBlanks(bytes, start, space);
+                int imageEnd = trimBlanks(bytes, imageStart, space);
+                int textStart = (space < eol) ? skipBlanks(bytes, space + 1, eol) : eol;
+                int textEnd = trimBlanks(bytes, textStart, eol);
+                if (imageStart == imageEnd && textStart == textEnd) {
+                    continue; // A blank line
+                }
+                marked = false;
+                if (count == contents.imageLocs.length) {
+                    contents.imageLocs = Arrays.copyOf(contents.imageLocs, count * 2);
+                    contents.texts = Arrays.copyOf(contents.texts, count * 2);
+                    contents.firsts = Arrays.copyOf(contents.firsts, count * 2);
+                    contents.ends = Arrays.copyOf(contents.ends, count * 2);
+                }
+                contents.imageLocs[count] = decode(imageStart, imageEnd);
+                contents.texts[count] = decode(textStart, textEnd);
+                contents.firsts[count] = -1;
+                if (nested) {
+                    contents.firsts[count] = pos;
+                    while (pos < to) {
+                        int end = lineEnd(bytes, pos, to);
+                        if (levelOf(bytes, pos, end) <= level && skipBlanks(bytes, pos, end) < end) {
+                            break;
+                        }
+                        pos = (end < to) ? end + 1 : to;
+                    }
+                    contents.ends[count] = pos;
+                }
+                count++;
+            }
+            contents.count = count;
+            return contents;
+        }
+
+        /**
+         * Determines whether a line in the given range, at any depth, is a
+         * nested category with the given image, encoded as the file is.
+         * Lines that {@link #parse} would skip, being deeper than an item,
+         * count too, so the answer errs towards yes.
+         *
+         * @param from the index of the first byte of the range
+         * @param to the index after the last byte of the range
+         * @param image the encoded image
+         * @return true if some line is a category with the image
+         */
+        private boolean hasCategory(int from, int to, byte[] image) {
+            int pos = from;
+            int marked = -1; // The depth of the last line, if it was a marker
+            while (pos < to) {
+                int start = pos;
+                int eol = lineEnd(bytes, pos, to);
+                pos = (eol < to) ? eol + 1 : to;
+                int level = levelOf(bytes, start, eol);
+                start += level;
+                if (skipBlanks(bytes, start, eol) == eol) {
+                    continue; // A blank line
+                }
+                boolean nested = level == marked;
+                marked = (level > 0 && isMarker(bytes, start, eol)) ? level : -1;
+                if (!nested) {
+                    continue; // Not a nested category
+                }
+                int space = start;
+                while (space < eol && bytes.get(space) != ' ') {
+                    space++;
+                }
+                int imageStart = skipBlanks(bytes, start, space);
+                int imageEnd = trimBlanks(bytes, imageStart, space);
+                if (imageEnd - imageStart != image.length) {
+                    continue;
+                }
+                int i = 0;
+                while (i < image.length && bytes.get(imageStart + i) == image[i]) {
+                    i++;
+                }
+                if (i == image.length) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Parses a category with everything nested in it, and fills it and
+         * new categories for the nested ones with their items.
+         *
+         * @param category the category to fill
+         * @param from the index of the first byte of the contents
+         * @param to the index after the last byte of the contents
+         * @param level the number of {@code >} before each item of the category
+         * @param order the order of the new categories
+         * @return the parsed contents
+         */
+        private Contents parseAll(AACCategory category, int from, int to, int level,
+            AACCategory.Order order) {
+            Contents contents = this.parse(from, to, level);
+            contents.nested = new Contents[contents.count];
+            for (int i = 0; i < contents.count; i++) {
+                if (contents.firsts[i] >= 0) {
+                    AACCategory nested = new AACCategory(contents.texts[i]);
+                    nested.setOrder(order);
+                    contents.nested[i] = this.parseAll(nested, contents.firsts[i],
+                        contents.ends[i], level + 1, order);
+                }
+            }
+            category.addItems(contents.imageLocs, contents.texts, contents.count);
+            contents.category = category;
+            return contents;
+        }
+
+        /**
+         * Decodes a range of bytes in the default charset, as FileReader and
+         * FileWriter use, copying them once into a reused buffer on the way
+         * to the string.
+         */
+        private String decode(int from, int to) {
+            int length = to - from;
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            bytes.get(from, scratch, 0, length);
+            return new String(scratch, 0, length, Charset.defaultCharset());
+        }
+    }
+
+    /**
+     * Parses and fills a chunk of adjacent top-level categories.
+     */
+    private static final class ParseTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        /** The smallest chunk worth a task of its own, in bytes. */
+        private static final int MIN_BYTES = 64 * 1024;
+
+        private final transient ByteBuffer bytes;
+        private final String[] images; // The image of each category
+        private final int[][] blocks; // The {first byte, end byte, depth} of each category
+        private final AACCategory[] filled; // The categories to fill
+        private final Contents[] parsed; // Where to put the parsed contents of each category
+        private final int from; // The first category of the chunk
+        private final int to; // The category after the chunk
+        private final AACCategory.Order order;
+        private final transient SearchIndex shard; // The tiles of the chunk, indexed for search
+
+        private ParseTask(ByteBuffer bytes, String[] images, int[][] blocks, AACCategory[] filled,
+            Contents[] parsed, int from, int to, AACCategory.Order order) {
+            this.bytes = bytes;
+            this.images = images;
+            this.blocks = blocks;
+            this.filled = filled;
+            this.parsed = parsed;
+            this.from = from;
+            this.to = to;
+            this.order = order;
+            this.shard = new SearchIndex();
+        }
+
+        @Override
+        protected void compute() {
+            Parser parser = new Parser(bytes);
+            try {
+                for (int i = from; i < to; i++) {
+                    parsed[i] = parser.parseAll(filled[i], blocks[i][0], blocks[i][1],
+                        blocks[i][2], order);
+                    index(images[i], parsed[i]);
+                }
+            } catch (NullKeyException e) {
+                // Parsed images are never null
+                throw new IllegalStateException(e);
+            }
+        }
+
+        /**
+         * Indexes the tiles of a parsed category, and of the categories
+         * nested in it, in the order that addContents would.
+         */
+        private void index(String categoryImage, Contents contents) throws NullKeyException {
+            for (int i = 0; i < contents.count; i++) {
+                if (contents.nested[i] != null) {
+                    index(contents.imageLocs[i], contents.nested[i]);
+                }
+            }
+            contents.normalized = new String[contents.count];
+            for (int i = 0; i < contents.count; i++) {
+                contents.normalized[i] = AACCategory.normalize(contents.texts[i]);
+                shard.add(categoryImage, contents.imageLocs[i], contents.texts[i]);
+            }
+        }
+    }
+}
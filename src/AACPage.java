@@ -18,9 +18,25 @@ public interface AACPage {
 	 */
 	public void addItem(String imageLoc, String text);
 
+	/**
+	 * Adds a new, empty category to the page, shown as the image
+	 * location and entered by selecting it
+	 * @param imageLoc the location of the image of the category
+	 * @param name the name of the category
+	 */
+	public void addCategory(String imageLoc, String name);
+
+	/**
+	 * Removes the image location from the page, along with whatever
+	 * it maps to. The remaining images keep their order.
+	 * @param imageLoc the location of the image
+	 */
+	public void removeItem(String imageLoc);
+
 	/**
 	 * Returns an array of all the images to be displayed on
-	 * the page
+	 * the page. The array is the caller's own, so changing it
+	 * leaves the page alone.
 	 * @return the array of image locations; if there are no images,
 	 * it should return an empty array
 	 */
@@ -44,6 +60,17 @@ public interface AACPage {
 	 */
 	public String select(String imageLoc);
 
+	/**
+	 * Returns to the page that holds the current one, or stays on
+	 * the home page if that is the current page
+	 */
+	public void back();
+
+	/**
+	 * Returns to the home page
+	 */
+	public void reset();
+
 
 	/**
 	 * Determines if the provided image is in the set of images that
@@ -0,0 +1,160 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+/**
+ * Saves a board to a file in the background whenever it changes, so that
+ * the caller never waits for the disk. Changes are reported with
+ * {@link #changed}; a save starts once no change has been reported for a
+ * short delay, so a burst of changes is written once. A save copies the
+ * board under its lock (see {@link AACMappings#snapshot}), then writes the
+ * copy without the lock and replaces the file atomically, so a crash
+ * during a save leaves the last complete save.
+ * <p>
+ * Failed saves are reported to a handler, on the saving thread; the next
+ * change tries again.
+ * </p>
+ *
+ * @author Moise Milenge
+ */
+public class Autosaver implements AutoCloseable {
+
+    /** The default quiet time before a save, in milliseconds. */
+    public static final long DEFAULT_DELAY = 500;
+
+    private final AACMappings mappings;
+    private final Path file;
+    private final long delayNanos;
+    private final Consumer<IOException> onError;
+    private final Thread saver;
+
+    // Guarded by this.
+    private long requested; // The number of changes reported
+    private long saved; // The number of changes covered by the last save
+    private long lastChange; // When the last change was reported, by System.nanoTime()
+    private boolean urgent; // Whether to save without waiting for the delay
+    private boolean closed;
+
+    /**
+     * Creates an autosaver that waits {@link #DEFAULT_DELAY} after the last
+     * change, and reports failures on standard error.
+     *
+     * @param mappings the board to save
+     * @param filename the name of the file to save it to
+     */
+    public Autosaver(AACMappings mappings, String filename) {
+        this(mappings, filename, DEFAULT_DELAY,
+            e -> System.err.println("Error writing to file: " + e.getMessage()));
+    }
+
+    /**
+     * Creates an autosaver and starts its thread.
+     *
+     * @param mappings the board to save
+     * @param filename the name of the file to save it to
+     * @param delayMillis how long to wait after the last change before saving
+     * @param onError what to do when a save fails
+     */
+    public Autosaver(AACMappings mappings, String filename, long delayMillis,
+        Consumer<IOException> onError) {
+        this.mappings = mappings;
+        this.file = Path.of(filename);
+        this.delayNanos = delayMillis * 1_000_000;
+        this.onError = onError;
+        this.saver = new Thread(this::run, "AACMappings autosave");
+        this.saver.setDaemon(true);
+        this.saver.start();
+    }
+
+    /**
+     * Reports that the board has changed, so it should be saved soon. This
+     * never blocks on a save.
+     */
+    public synchronized void changed() {
+        this.requested++;
+        this.lastChange = System.nanoTime();
+        this.notifyAll();
+    }
+
+    /**
+     * Saves the changes reported so far at once, without waiting for the
+     * delay, and waits for the save to finish (or fail).
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized void flush() throws InterruptedException {
+        long target = this.requested;
+        if (this.saved < target) {
+            this.urgent = true;
+            this.notifyAll();
+        }
+        while (this.saved < target && this.saver.isAlive()) {
+            this.wait();
+        }
+    }
+
+    /**
+     * Saves any changes not saved yet, then stops the saving thread. This
+     * waits for the last save even if interrupted, so that closing never
+     * loses changes; the interrupt is kept for the caller to see.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            this.closed = true;
+            this.urgent = true;
+            this.notifyAll();
+        }
+        boolean interrupted = false;
+        while (true) {
+            try {
+                this.saver.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits for changes and saves them, until closed.
+     */
+    private void run() {
+        while (true) {
+            long target;
+            synchronized (this) {
+                try {
+                    while (this.saved == this.requested && !this.closed) {
+                        this.wait();
+                    }
+                    while (!this.urgent) {
+                        long left = this.delayNanos - (System.nanoTime() - this.lastChange);
+                        if (left <= 0) {
+                            break;
+                        }
+                        this.wait(left / 1_000_000, (int) (left % 1_000_000));
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (this.saved == this.requested) {
+                    return; // Closed with nothing to save
+                }
+                target = this.requested;
+                this.urgent = this.closed;
+            }
+            try {
+                this.mappings.snapshot().write(this.file);
+            } catch (IOException e) {
+                this.onError.accept(e);
+            }
+            synchronized (this) {
+                this.saved = target;
+                this.notifyAll();
+            }
+        }
+    }
+}
@@ -0,0 +1,331 @@
+import edu.grinnell.csc207.util.AssociativeArray;
+import edu.grinnell.csc207.util.KVPair;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Microbenchmarks for the util package and for board operations, so that
+ * changes to the data structures can be measured. Each benchmark is run in
+ * a few warm-up iterations and then in several measured iterations of
+ * about {@code ITERATION_NANOS} each; the report gives the mean time per
+ * operation, its spread across iterations, and the bytes allocated per
+ * operation (where the JVM reports per-thread allocation).
+ *
+ * <pre>
+ * java -Xms2g Benchmarks [name filter ...]
+ * </pre>
+ *
+ * Only benchmarks whose name contains one of the filters are run, e.g.
+ * {@code java Benchmarks AssociativeArray.get} or {@code java Benchmarks
+ * AACMappings}.
+ *
+ * @author Moise Milenge
+ */
+public class Benchmarks {
+
+    /** The numbers of entries for the AssociativeArray benchmarks. */
+    private static final int[] SIZES = {16, 1_024, 65_536, 1_048_576};
+
+    /** The boards to generate, as {categories, items per category}. */
+    private static final int[][] BOARDS = {{10, 20}, {100, 200}};
+
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASURED_ITERATIONS = 5;
+    private static final long ITERATION_NANOS = 200_000_000L;
+
+    /** Results are folded in here so the JIT cannot discard the work. */
+    private static long blackhole;
+
+    /**
+     * A benchmark body, which performs the given number of operations.
+     */
+    private interface Body {
+        void run(int ops) throws Exception;
+    }
+
+    private static String[] filters;
+
+    /**
+     * Runs the benchmarks whose names match the command-line filters, or
+     * all of them if there are none.
+     *
+     * @param args the name filters
+     * @throws Exception if a benchmark fails
+     */
+    public static void main(String[] args) throws Exception {
+        filters = args;
+        System.out.printf("%-44s %10s %14s %10s %12s%n",
+            "Benchmark", "Size", "ns/op", "+-", "B/op");
+        for (int size : SIZES) {
+            associativeArray(size);
+        }
+        Path dir = Files.createTempDirectory("aac-bench");
+        for (int[] board : BOARDS) {
+            board(dir, board[0], board[1]);
+        }
+        System.out.println("(blackhole " + (blackhole & 1) + ")");
+    }
+
+    // +------------+---------------------------------------------------
+    // | Benchmarks |
+    // +------------+
+
+    private static void associativeArray(int size) throws Exception {
+        String[] keys = new String[size];
+        String[] missing = new String[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = "img/key-" + i + ".png";
+            missing[i] = "img/missing-" + i + ".png";
+        }
+        int mask = size - 1; // sizes are powers of two
+        AssociativeArray<String, String> map = new AssociativeArray<>();
+        for (String key : keys) {
+            map.set(key, key);
+        }
+        String label = Integer.toString(size);
+
+        run("AssociativeArray.get", label, ops -> {
+            for (int i = 0; i < ops; i++) {
+                blackhole += map.get(keys[i & mask]).length();
+            }
+        });
+        run("AssociativeArray.hasKey (miss)", label, ops -> {
+            for (int i = 0; i < ops; i++) {
+                blackhole += map.hasKey(missing[i & mask]) ? 1 : 0;
+            }
+        });
+        run("AssociativeArray.set (update)", label, ops -> {
+            for (int i = 0; i < ops; i++) {
+                map.set(keys[i & mask], keys[(i + 1) & mask]);
+            }
+        });
+        run("AssociativeArray.remove+set", label, ops -> {
+            for (int i = 0; i < ops; i++) {
+                String key = keys[i & mask];
+                map.remove(key);
+                map.set(key, key);
+            }
+        });
+        run("AssociativeArray.keys", label, ops -> {
+            for (int i = 0; i < ops; i++) {
+                blackhole += map.keys().length;
+            }
+        });
+        run("AssociativeArray.iterator", label, ops -> {
+            for (int i = 0; i < ops; i++) {
+                for (KVPair<String, String> pair : map) {
+                    blackhole += pair.getKey().length();
+                }
+            }
+        });
+    }
+
+    private static void board(Path dir, int categories, int items) throws Exception {
+        Path file = dir.resolve("board-" + categories + "x" + items + ".txt");
+        writeBoard(file, categories, items);
+        String filename = file.toString();
+        String output = dir.resolve("out-" + categories + "x" + items + ".txt").toString();
+        String label = categories + "x" + items;
+
+        AACCategory category = new AACCategory("bench");
+        for (int i = 0; i < items; i++) {
+            category.addItem(item(0, i), "word " + i);
+        }
+        run("AACCategory.getImages", label, ops -> {
+            for (int i = 0; i < ops; i++) {
+                blackhole += category.getImages().length;
+            }
+        });
+        run("AACCategory.getImageList", label, ops -> {
+            for (int i = 0; i < ops; i++) {
+                blackhole += category.getImageList().size();
+            }
+        });
+
+        // Build the image names up front, so the loop measures only select.
+        String[] categoryImages = new String[categories];
+        String[][] itemImages = new String[categories][items];
+        for (int c = 0; c < categories; c++) {
+            categoryImages[c] = category(c);
+            for (int i = 0; i < items; i++) {
+                itemImages[c][i] = item(c, i);
+            }
+        }
+        AACMappings mappings = new AACMappings(filename);
+        run("AACMappings.select (tile+back)", label, ops -> {
+            for (int i = 0; i < ops; i++) {
+                int c = i % categories;
+                mappings.select(categoryImages[c]);
+                blackhole += mappings.select(itemImages[c][i % items]).length();
+                mappings.reset();
+            }
+        });
+        run("AACMappings.predict", label, ops -> {
+            for (int i = 0; i < ops; i++) {
+                blackhole += mappings.predict(4).length;
+            }
+        });
+        mappings.select(category(0));
+        run("AACMappings.getImageLocs", label, ops -> {
+            for (int i = 0; i < ops; i++) {
+                blackhole += mappings.getImageLocs().length;
+            }
+        });
+        mappings.reset();
+        String[] queries = {"word", "word 1", "categ", "wrod 7", "item 19"};
+        run("AACMappings.search", label, ops -> {
+            for (int i = 0; i < ops; i++) {
+                blackhole += mappings.search(queries[i % queries.length], 10).length;
+            }
+        });
+        run("AACMappings.loadMappings", label, ops -> {
+            for (int i = 0; i < ops; i++) {
+                blackhole += new AACMappings(filename).getImageLocs().length;
+            }
+        });
+        run("AACMappings.loadMappings (eager)", label, ops -> {
+            for (int i = 0; i < ops; i++) {
+                blackhole += new AACMappings(filename, AACMappings.LoadMode.EAGER)
+                    .getImageLocs().length;
+            }
+        });
+        run("AACMappings.loadMappings (parallel)", label, ops -> {
+            for (int i = 0; i < ops; i++) {
+                blackhole += new AACMappings(filename, AACMappings.LoadMode.PARALLEL)
+                    .getImageLocs().length;
+            }
+        });
+        String binaryFile = dir.resolve("board-" + label + ".bin").toString();
+        mappings.writeBinaryFile(binaryFile);
+        run("AACMappings.loadMappings (binary)", label, ops -> {
+            for (int i = 0; i < ops; i++) {
+                blackhole += new AACMappings(binaryFile).getImageLocs().length;
+            }
+        });
+        run("AACMappings.loadMappings (binary, eager)", label, ops -> {
+            for (int i = 0; i < ops; i++) {
+                blackhole += new AACMappings(binaryFile, AACMappings.LoadMode.EAGER)
+                    .getImageLocs().length;
+            }
+        });
+        run("AACMappings.writeToFile", label, ops -> {
+            for (int i = 0; i < ops; i++) {
+                mappings.writeToFile(output);
+            }
+        });
+        mappings.openJournal(dir.resolve("journal-" + label).toString());
+        mappings.select(category(0));
+        run("AACMappings.addItem+saveJournal", label, ops -> {
+            for (int i = 0; i < ops; i++) {
+                mappings.addItem(item(0, i % items), "changed " + i);
+                mappings.saveJournal();
+            }
+        });
+        mappings.reset();
+    }
+
+    // +---------+--------------------------------------------------------
+    // | Helpers |
+    // +---------+
+
+    private static String category(int c) {
+        return "img/category-" + c + "/category.png";
+    }
+
+    private static String item(int c, int i) {
+        return "img/category-" + c + "/item-" + i + ".png";
+    }
+
+    /**
+     * Writes a board with the given numbers of categories and items.
+     */
+    private static void writeBoard(Path file, int categories, int items) throws IOException {
+        try (FileWriter writer = new FileWriter(file.toFile())) {
+            for (int c = 0; c < categories; c++) {
+                writer.write(category(c) + " category " + c + "\n");
+                for (int i = 0; i < items; i++) {
+                    writer.write(">" + item(c, i) + " word " + c + " " + i + "\n");
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs one benchmark, if it matches the filters, and prints its result.
+     */
+    private static void run(String name, String size, Body body) throws Exception {
+        if (!matches(name)) {
+            return;
+        }
+
+        // Find a number of operations that takes about one iteration.
+        int ops = 1;
+        long elapsed;
+        while ((elapsed = time(body, ops)) < ITERATION_NANOS / 10 && ops < (1 << 28)) {
+            ops *= 2;
+        }
+        ops = (int) Math.max(1, Math.min(Integer.MAX_VALUE,
+            (long) ops * ITERATION_NANOS / Math.max(1, elapsed)));
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            time(body, ops);
+        }
+
+        double[] nanosPerOp = new double[MEASURED_ITERATIONS];
+        long allocated = allocatedBytes();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            nanosPerOp[i] = (double) time(body, ops) / ops;
+        }
+        allocated = allocatedBytes() - allocated;
+
+        double mean = 0;
+        for (double t : nanosPerOp) {
+            mean += t / MEASURED_ITERATIONS;
+        }
+        double variance = 0;
+        for (double t : nanosPerOp) {
+            variance += (t - mean) * (t - mean) / MEASURED_ITERATIONS;
+        }
+        String bytesPerOp = (allocated < 0) ? "n/a"
+            : String.format("%.1f", (double) allocated / ((long) ops * MEASURED_ITERATIONS));
+        System.out.printf("%-44s %10s %14.1f %10.1f %12s%n",
+            name, size, mean, Math.sqrt(variance), bytesPerOp);
+    }
+
+    private static long time(Body body, int ops) throws Exception {
+        long start = System.nanoTime();
+        body.run(ops);
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Returns the bytes allocated so far by this thread, or -1 if the JVM
+     * does not report it.
+     */
+    @SuppressWarnings("deprecation") // getId() is still the key the bean uses
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean) bean;
+            if (sun.isThreadAllocatedMemorySupported() && sun.isThreadAllocatedMemoryEnabled()) {
+                return sun.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    private static boolean matches(String name) {
+        if (filters.length == 0) {
+            return true;
+        }
+        for (String filter : filters) {
+            if (name.contains(filter)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,344 @@
+import edu.grinnell.csc207.util.AssociativeArray;
+import edu.grinnell.csc207.util.Footprint;
+import edu.grinnell.csc207.util.KeyNotFoundException;
+import edu.grinnell.csc207.util.NullKeyException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A board in the binary format, read in place from a mapped file. All
+ * numbers are little-endian ints:
+ *
+ * <pre>
+ * header   magic, version, string count, record count, home count,
+ *          string bytes
+ * strings  string count + 1 offsets into the data, then the data: each
+ *          distinct image and text once, in UTF-8
+ * records  (padded to 4 bytes) record count records of 16 bytes:
+ *          image string, text string, first child record, child count
+ * </pre>
+ *
+ * Every tile of the board is a record; a category has a first child of 0
+ * or more and an item has -1. The home page is records 0 to home count -
+ * 1, and the children of each category are contiguous, so a category is
+ * read by visiting its range of records. Strings are decoded the first
+ * time they are asked for, so reading a board costs one decode per
+ * distinct string and no parsing.
+ *
+ * @author Moise Milenge
+ */
+final class BinaryBoard {
+
+    /** The first four bytes of a binary board: 0x89 "AAC", never valid UTF-8 text. */
+    static final int MAGIC = 0x43414189;
+
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 6 * Integer.BYTES;
+    private static final int RECORD_BYTES = 4 * Integer.BYTES;
+
+    private final ByteBuffer bytes;
+    private final int homeCount;
+    private final int offsets; // The position of the string offsets
+    private final int data; // The position of the string data
+    private final int records; // The position of the records
+    private final String[] strings; // The strings decoded so far
+
+    /**
+     * Opens a binary board in a mapped file.
+     *
+     * @param bytes the file, whose byte order is set to little-endian
+     * @throws IOException if the file is not a valid binary board
+     */
+    BinaryBoard(ByteBuffer bytes) throws IOException {
+        this.bytes = bytes.order(ByteOrder.LITTLE_ENDIAN);
+        if (!isBinary(bytes) || bytes.getInt(4) != VERSION) {
+            throw new IOException("Unsupported binary board");
+        }
+        int stringCount = bytes.getInt(8);
+        int recordCount = bytes.getInt(12);
+        this.homeCount = bytes.getInt(16);
+        int stringBytes = bytes.getInt(20);
+        this.offsets = HEADER_BYTES;
+        long end = align((long) this.offsets + ((long) stringCount + 1) * Integer.BYTES
+            + stringBytes) + (long) recordCount * RECORD_BYTES;
+        if (stringCount < 0 || recordCount < 0 || stringBytes < 0 || this.homeCount < 0
+            || this.homeCount > recordCount || end > bytes.limit()) {
+            throw new IOException("Truncated binary board");
+        }
+        this.data = this.offsets + (stringCount + 1) * Integer.BYTES;
+        this.records = align(this.data + stringBytes);
+        this.strings = new String[stringCount];
+        this.validate(stringBytes, recordCount);
+    }
+
+    /**
+     * Checks every string offset and record once, so that the accessors can
+     * read the board without checks: the strings must lie in order within
+     * the data, each record must name strings of the table, and each
+     * category's children must be records that come after it, so reading
+     * the board always ends.
+     *
+     * @param stringBytes the length of the string data
+     * @param recordCount the number of records
+     * @throws IOException if an offset or record is out of range
+     */
+    private void validate(int stringBytes, int recordCount) throws IOException {
+        int previous = 0;
+        for (int id = 0; id <= this.strings.length; id++) {
+            int offset = this.bytes.getInt(this.offsets + id * Integer.BYTES);
+            if (offset < previous || offset > stringBytes) {
+                throw new IOException("Corrupt binary board: bad offset of string " + id);
+            }
+            previous = offset;
+        }
+        for (int r = 0; r < recordCount; r++) {
+            int pos = this.records + r * RECORD_BYTES;
+            int image = this.bytes.getInt(pos);
+            int text = this.bytes.getInt(pos + 4);
+            int first = this.bytes.getInt(pos + 8);
+            int count = this.bytes.getInt(pos + 12);
+            if (image < 0 || image >= this.strings.length
+                || text < 0 || text >= this.strings.length) {
+                throw new IOException("Corrupt binary board: bad string in record " + r);
+            }
+            boolean item = first == -1 && count == 0;
+            if (!item && (first <= r || count < 0 || first > recordCount - count)) {
+                throw new IOException("Corrupt binary board: bad children of record " + r);
+            }
+        }
+    }
+
+    /**
+     * Determines whether a mapped file holds a binary board.
+     *
+     * @param bytes the file
+     * @return true if the file starts with {@link #MAGIC}
+     */
+    static boolean isBinary(ByteBuffer bytes) {
+        return bytes.limit() >= HEADER_BYTES
+            && bytes.order(ByteOrder.LITTLE_ENDIAN).getInt(0) == MAGIC;
+    }
+
+    /**
+     * Determines whether a file holds a binary board, by its first bytes.
+     *
+     * @param file the file
+     * @return true if the file starts with {@link #MAGIC}
+     * @throws IOException if the file cannot be read
+     */
+    static boolean isBinary(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // Read until the header is full or the file ends
+            }
+            return isBinary(header.flip());
+        }
+    }
+
+    /**
+     * Returns the number of records on the home page, which come first.
+     *
+     * @return the number of home-page records
+     */
+    int homeCount() {
+        return this.homeCount;
+    }
+
+    /**
+     * Returns the image of a record.
+     *
+     * @param r the record
+     * @return the image location
+     */
+    String image(int r) {
+        return this.string(this.bytes.getInt(this.records + r * RECORD_BYTES));
+    }
+
+    /**
+     * Returns the text of a record: an item's text or a category's name.
+     *
+     * @param r the record
+     * @return the text
+     */
+    String text(int r) {
+        return this.string(this.bytes.getInt(this.records + r * RECORD_BYTES + 4));
+    }
+
+    /**
+     * Returns the first child of a record.
+     *
+     * @param r the record
+     * @return the first record in the category, or -1 if the record is an
+     *         item
+     */
+    int firstChild(int r) {
+        return this.bytes.getInt(this.records + r * RECORD_BYTES + 8);
+    }
+
+    /**
+     * Returns the number of children of a record.
+     *
+     * @param r the record
+     * @return the number of records in the category, or 0 for an item
+     */
+    int childCount(int r) {
+        return this.bytes.getInt(this.records + r * RECORD_BYTES + 12);
+    }
+
+    /**
+     * Adds the memory retained by this board to a footprint: the decoded
+     * strings, which the categories share, are not counted again.
+     *
+     * @param total the footprint to add to
+     * @return {@code total}
+     */
+    Footprint footprint(Footprint total) {
+        total.addOther(this, 2 * Footprint.REFERENCE + 4 * Integer.BYTES);
+        total.addArray(this.strings, this.strings.length, Footprint.REFERENCE,
+            this.strings.length);
+        return total;
+    }
+
+    /**
+     * Returns a string of the table, decoding it the first time.
+     */
+    private String string(int id) {
+        String str = this.strings[id];
+        if (str == null) {
+            int from = this.bytes.getInt(this.offsets + id * Integer.BYTES);
+            int to = this.bytes.getInt(this.offsets + (id + 1) * Integer.BYTES);
+            byte[] utf8 = new byte[to - from];
+            this.bytes.get(this.data + from, utf8);
+            str = new String(utf8, StandardCharsets.UTF_8);
+            this.strings[id] = str;
+        }
+        return str;
+    }
+
+    private static int align(int position) {
+        return (position + Integer.BYTES - 1) & -Integer.BYTES;
+    }
+
+    private static long align(long position) {
+        return (position + Integer.BYTES - 1) & -Integer.BYTES;
+    }
+
+    /**
+     * Collects the strings and records of a board and writes them in the
+     * binary format. Records must be added in file order: the home page
+     * first, then the children of each category together.
+     */
+    static final class Builder {
+        private final AssociativeArray<String, Integer> ids = new AssociativeArray<>();
+        private byte[] data = new byte[1024];
+        private int dataLength;
+        private int[] offsets = new int[64];
+        private int[] records = new int[64];
+        private int recordCount;
+
+        /**
+         * Adds a record.
+         *
+         * @param image the image of the tile
+         * @param text the text of the tile
+         * @param firstChild the first record of a category, or -1 for an item
+         * @param childCount the number of records in a category, or 0
+         */
+        void add(String image, String text, int firstChild, int childCount) {
+            if (this.recordCount * 4 == this.records.length) {
+                this.records = Arrays.copyOf(this.records, this.records.length * 2);
+            }
+            int pos = this.recordCount++ * 4;
+            this.records[pos] = this.id(image);
+            this.records[pos + 1] = this.id(text);
+            this.records[pos + 2] = firstChild;
+            this.records[pos + 3] = childCount;
+        }
+
+        /**
+         * Returns the number of records added so far, which is the index of
+         * the next one.
+         *
+         * @return the number of records
+         */
+        int size() {
+            return this.recordCount;
+        }
+
+        /**
+         * Writes the board, replacing the file atomically as
+         * {@link BoardSnapshot#write} does.
+         *
+         * @param file the file to write
+         * @param homeCount the number of records on the home page
+         * @throws IOException if writing fails
+         */
+        void write(Path file, int homeCount) throws IOException {
+            int stringCount = this.ids.size();
+            int dataStart = HEADER_BYTES + (stringCount + 1) * Integer.BYTES;
+            int recordStart = align(dataStart + this.dataLength);
+            ByteBuffer out = ByteBuffer.allocate(recordStart + this.recordCount * RECORD_BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN);
+            out.putInt(MAGIC).putInt(VERSION).putInt(stringCount).putInt(this.recordCount)
+                .putInt(homeCount).putInt(this.dataLength);
+            for (int i = 0; i < stringCount; i++) {
+                out.putInt(this.offsets[i]);
+            }
+            out.putInt(this.dataLength);
+            out.put(this.data, 0, this.dataLength);
+            out.position(recordStart);
+            for (int i = 0; i < this.recordCount * 4; i++) {
+                out.putInt(this.records[i]);
+            }
+            out.flip();
+            Path temp = BoardSnapshot.tempFor(file);
+            try {
+                try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                    while (out.hasRemaining()) {
+                        channel.write(out);
+                    }
+                    channel.force(true);
+                }
+                BoardSnapshot.replace(temp, file);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+
+        /**
+         * Returns the id of a string, adding it to the table the first time.
+         */
+        private int id(String str) {
+            try {
+                if (this.ids.hasKey(str)) {
+                    return this.ids.get(str);
+                }
+                int id = this.ids.size();
+                this.ids.set(str, id);
+                byte[] utf8 = str.getBytes(StandardCharsets.UTF_8);
+                if (this.dataLength + utf8.length > this.data.length) {
+                    this.data = Arrays.copyOf(this.data,
+                        Math.max(this.data.length * 2, this.dataLength + utf8.length));
+                }
+                System.arraycopy(utf8, 0, this.data, this.dataLength, utf8.length);
+                if (id == this.offsets.length) {
+                    this.offsets = Arrays.copyOf(this.offsets, id * 2);
+                }
+                this.offsets[id] = this.dataLength;
+                this.dataLength += utf8.length;
+                return id;
+            } catch (KeyNotFoundException | NullKeyException e) {
+                // Strings of the board are never null, and a key just checked is there
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Converts AAC mapping files between the text format and the binary
+ * format, in whichever direction the input calls for: a text file is
+ * written as a binary board and a binary board as text. Converting back
+ * gives the same board, with the tiles of each category in the same
+ * order.
+ *
+ * <pre>
+ * java BoardConverter AACMappings.txt AACMappings.bin
+ * java BoardConverter AACMappings.bin AACMappings.txt
+ * </pre>
+ *
+ * @author Moise Milenge
+ */
+public class BoardConverter {
+
+    /**
+     * Converts the file named first on the command line into the file named
+     * second. If the input cannot be read, or the output cannot be written,
+     * the output file is left as it was and the exit status is 1.
+     *
+     * @param args the names of the input and output files
+     */
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.err.println("Usage: java BoardConverter <input file> <output file>");
+            System.exit(1);
+        }
+        try {
+            boolean toText = BinaryBoard.isBinary(Path.of(args[0]));
+            AACMappings mappings = AACMappings.readAll(args[0]);
+            if (toText) {
+                mappings.writeText(args[1]);
+            } else {
+                mappings.writeBinary(args[1]);
+            }
+        } catch (IOException e) {
+            System.err.println("Error converting " + args[0] + ": " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,225 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of changes to a board, kept next to the mappings file
+ * so that saving costs as much as the changes rather than the board. Each
+ * change is one record:
+ *
+ * <pre>
+ * int    length of the body
+ * body   byte kind, short depth, then that many category images, the
+ *        image and the text, each as DataOutput.writeUTF writes them
+ * int    CRC-32 of the body
+ * </pre>
+ *
+ * The images name the category changed by the path to it from the home
+ * page, so replaying a record reads only the categories on that path.
+ * Records are written straight to the file as changes are made; {@link
+ * #sync} makes them durable. A record cut short by a crash, or damaged,
+ * ends the log: replaying stops there and the log is truncated before new
+ * records are added.
+ *
+ * @author Moise Milenge
+ */
+final class BoardJournal {
+
+    /** A record of an item added to, or changed in, a category. */
+    static final byte ADD_ITEM = 1;
+
+    /** A record of a category added to a category or to the home page. */
+    static final byte ADD_CATEGORY = 2;
+
+    /** A record of a tile removed from a category or from the home page. */
+    static final byte REMOVE = 3;
+
+    private static final int FRAME_BYTES = 2 * Integer.BYTES;
+
+    /**
+     * Applies the records of a log.
+     */
+    interface Handler {
+        /**
+         * Applies one record.
+         *
+         * @param kind {@link #ADD_ITEM}, {@link #ADD_CATEGORY} or {@link #REMOVE}
+         * @param path the images of the categories from the home page to the
+         *        one changed; empty for the home page
+         * @param imageLoc the image of the tile
+         * @param text the text of the tile; empty for a removal
+         */
+        void apply(byte kind, String[] path, String imageLoc, String text);
+    }
+
+    private final Path file;
+    private FileChannel channel;
+    private final ByteArrayOutputStream body; // Reused by append()
+    private final DataOutputStream out; // Writes to body
+    private final CRC32 crc;
+
+    /**
+     * Opens a log for appending, creating it if need be. Records already in
+     * it are kept; call {@link #replay} to apply them, and to drop any
+     * damaged tail, before appending.
+     *
+     * @param file the log file
+     * @throws IOException if the file cannot be opened
+     */
+    BoardJournal(Path file) throws IOException {
+        this.file = file;
+        this.channel = open(file);
+        this.body = new ByteArrayOutputStream();
+        this.out = new DataOutputStream(this.body);
+        this.crc = new CRC32();
+    }
+
+    /**
+     * Applies the records of a log file in order, stopping at the first
+     * record that is incomplete or damaged. A missing file has no records.
+     *
+     * @param file the log file
+     * @param handler what to do with each record
+     * @return the number of bytes of whole records
+     * @throws IOException if the file cannot be read
+     */
+    static long replay(Path file, Handler handler) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file));
+        CRC32 crc = new CRC32();
+        while (bytes.remaining() >= FRAME_BYTES) {
+            int start = bytes.position();
+            int length = bytes.getInt();
+            if (length < 0 || length > bytes.remaining() - Integer.BYTES) {
+                break; // Cut short
+            }
+            crc.reset();
+            crc.update(bytes.array(), start + Integer.BYTES, length);
+            if (bytes.getInt(start + Integer.BYTES + length) != (int) crc.getValue()) {
+                break; // Damaged
+            }
+            DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(bytes.array(), start + Integer.BYTES, length));
+            byte kind = in.readByte();
+            String[] path = new String[in.readShort()];
+            for (int i = 0; i < path.length; i++) {
+                path[i] = in.readUTF();
+            }
+            String imageLoc = in.readUTF();
+            String text = in.readUTF();
+            handler.apply(kind, path, imageLoc, text);
+            bytes.position(start + FRAME_BYTES + length);
+        }
+        return bytes.position();
+    }
+
+    /**
+     * Applies the records of this log, then truncates it after the last
+     * whole record so that new records follow it.
+     *
+     * @param handler what to do with each record
+     * @throws IOException if the log cannot be read or truncated
+     */
+    void replay(Handler handler) throws IOException {
+        long valid = replay(this.file, handler);
+        this.channel.truncate(valid);
+        this.channel.position(valid);
+    }
+
+    /**
+     * Appends a record to the log. The record reaches the operating system
+     * at once, but may be lost in a crash until {@link #sync}.
+     *
+     * @param kind {@link #ADD_ITEM}, {@link #ADD_CATEGORY} or {@link #REMOVE}
+     * @param path the images of the categories from the home page to the one
+     *        changed
+     * @param depth the number of images of {@code path} to use
+     * @param imageLoc the image of the tile
+     * @param text the text of the tile
+     * @throws IOException if writing fails
+     */
+    void append(byte kind, String[] path, int depth, String imageLoc, String text)
+        throws IOException {
+        this.body.reset();
+        this.out.writeInt(0); // The length, filled in below
+        this.out.writeByte(kind);
+        this.out.writeShort(depth);
+        for (int i = 0; i < depth; i++) {
+            this.out.writeUTF(path[i]);
+        }
+        this.out.writeUTF(imageLoc);
+        this.out.writeUTF(text);
+        this.out.writeInt(0); // The CRC, filled in below
+        byte[] record = this.body.toByteArray();
+        int length = record.length - FRAME_BYTES;
+        this.crc.reset();
+        this.crc.update(record, Integer.BYTES, length);
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        buffer.putInt(0, length);
+        buffer.putInt(record.length - Integer.BYTES, (int) this.crc.getValue());
+        while (buffer.hasRemaining()) {
+            this.channel.write(buffer);
+        }
+    }
+
+    /**
+     * Makes every record appended so far durable.
+     *
+     * @throws IOException if the log cannot be synced
+     */
+    void sync() throws IOException {
+        this.channel.force(false);
+    }
+
+    /**
+     * Returns the size of the log.
+     *
+     * @return the number of bytes in the log
+     * @throws IOException if the size cannot be read
+     */
+    long size() throws IOException {
+        return this.channel.size();
+    }
+
+    /**
+     * Moves the records so far to another file and starts an empty log, so
+     * that they can be folded into the mappings file while changes go on
+     * being recorded.
+     *
+     * @param older where to move the records; it must not exist
+     * @throws IOException if the log cannot be moved or reopened
+     */
+    void rotate(Path older) throws IOException {
+        this.channel.force(false);
+        this.channel.close();
+        Files.move(this.file, older, StandardCopyOption.ATOMIC_MOVE);
+        this.channel = open(this.file);
+    }
+
+    /**
+     * Closes the log.
+     *
+     * @throws IOException if closing fails
+     */
+    void close() throws IOException {
+        this.channel.close();
+    }
+
+    private static FileChannel open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        return channel;
+    }
+}
@@ -0,0 +1,343 @@
+import edu.grinnell.csc207.util.Footprint;
+import edu.grinnell.csc207.util.KVPair;
+import edu.grinnell.csc207.util.KeyNotFoundException;
+import edu.grinnell.csc207.util.PersistentAssociativeArray;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The lines of a board in the text format, copied so that they can be
+ * written without holding the board's lock. A snapshot is a version of a
+ * {@link PersistentAssociativeArray} from each category's image, and ""
+ * for the home page, to a {@link Page} of its lines. The board keeps the
+ * pages from one snapshot to the next and makes again only those of the
+ * categories that changed, so a snapshot costs memory and time in
+ * proportion to the changes since the last one, not to the board.
+ * <p>
+ * Snapshots are written, like every other board file, to a temporary file
+ * next to the target, made durable, and renamed over the target in one
+ * step, so a crash leaves either the old file or the new one, never part
+ * of one.
+ * </p>
+ *
+ * @author Moise Milenge
+ */
+final class BoardSnapshot {
+
+    private static final int BUFFER_CHARS = 64 * 1024;
+
+    /**
+     * The lines of one category. A page holds only references to the
+     * images and texts, which are immutable, or, for a category that has
+     * not been read, to its lines in the mapped file, which are written as
+     * they are. Pages are filled when they are made and never changed once
+     * in a snapshot, so snapshots can share them.
+     */
+    static final class Page {
+        private int[] levels; // The number of > before each line, beyond those of the items
+        private boolean[] nested; // Whether each line starts a nested category
+        private String[] imageLocs;
+        private String[] texts;
+        private int size;
+        private final boolean whole; // Whether the lines of the nested categories are here too
+        private final ByteBuffer copied; // The lines as they are in a file, or null
+
+        /**
+         * Creates an empty page.
+         *
+         * @param capacity the number of lines expected
+         * @param whole whether the page will hold the lines of the nested
+         *        categories too, rather than leaving them to their pages
+         */
+        Page(int capacity, boolean whole) {
+            int length = Math.max(capacity, 1);
+            this.levels = new int[length];
+            this.nested = new boolean[length];
+            this.imageLocs = new String[length];
+            this.texts = new String[length];
+            this.whole = whole;
+            this.copied = null;
+        }
+
+        /**
+         * Creates a page of the lines of a mappings file, to be written as
+         * they are; they include the lines of the nested categories. The
+         * bytes are not copied, so they must not change while the page is
+         * in a snapshot.
+         *
+         * @param lines the lines, in the default charset, which are written
+         *        ending in a newline alone however they ended
+         */
+        Page(ByteBuffer lines) {
+            this.whole = true;
+            this.copied = lines;
+        }
+
+        /**
+         * Adds a line.
+         *
+         * @param level the number of {@code >} before the line, beyond those
+         *        before the items of the category
+         * @param category whether the line is a category, rather than an item
+         * @param imageLoc the image of the tile
+         * @param text the text of the tile
+         */
+        void add(int level, boolean category, String imageLoc, String text) {
+            if (this.size == this.levels.length) {
+                int capacity = this.size * 2;
+                this.levels = Arrays.copyOf(this.levels, capacity);
+                this.nested = Arrays.copyOf(this.nested, capacity);
+                this.imageLocs = Arrays.copyOf(this.imageLocs, capacity);
+                this.texts = Arrays.copyOf(this.texts, capacity);
+            }
+            this.levels[this.size] = level;
+            this.nested[this.size] = category;
+            this.imageLocs[this.size] = imageLoc;
+            this.texts[this.size] = text;
+            this.size++;
+        }
+
+        /**
+         * Adds the memory retained by this page to a footprint: the images
+         * and texts, which the categories share, are not counted again.
+         *
+         * @param total the footprint to add to
+         * @return {@code total}
+         */
+        Footprint footprint(Footprint total) {
+            total.addOther(this, 5 * Footprint.REFERENCE + Integer.BYTES + 1);
+            if (this.copied == null) {
+                total.addArray(this.levels, this.levels.length, Integer.BYTES, this.size);
+                total.addArray(this.nested, this.nested.length, 1, this.size);
+                total.addArray(this.imageLocs, this.imageLocs.length, Footprint.REFERENCE,
+                    this.size);
+                total.addArray(this.texts, this.texts.length, Footprint.REFERENCE, this.size);
+            } else {
+                total.addOther(this.copied, 3 * Footprint.REFERENCE + 5 * Integer.BYTES);
+            }
+            return total;
+        }
+    }
+
+    private final PersistentAssociativeArray<String, Page> pages;
+
+    /**
+     * Creates a snapshot of the given pages.
+     *
+     * @param pages the page of each category on the board, and of the home
+     *        page under ""
+     */
+    BoardSnapshot(PersistentAssociativeArray<String, Page> pages) {
+        this.pages = pages;
+    }
+
+    /**
+     * Adds the memory retained by this snapshot to a footprint. Pages and
+     * structure shared with snapshots already added are not counted again.
+     *
+     * @param total the footprint to add to
+     * @return {@code total}
+     */
+    Footprint footprint(Footprint total) {
+        return footprint(this.pages, total);
+    }
+
+    /**
+     * Adds the memory retained by a version of the pages of a board to a
+     * footprint, as {@link #footprint(Footprint)} does.
+     *
+     * @param pages the pages
+     * @param total the footprint to add to
+     * @return {@code total}
+     */
+    static Footprint footprint(PersistentAssociativeArray<String, Page> pages, Footprint total) {
+        pages.footprint(total);
+        for (KVPair<String, Page> pair : pages) {
+            pair.getValue().footprint(total);
+        }
+        return total;
+    }
+
+    /**
+     * Writes the lines to a file, replacing it atomically. The text is
+     * encoded in the default charset, as FileWriter would.
+     *
+     * @param file the file to write
+     * @throws IOException if writing fails, in which case the file is left
+     *         as it was
+     */
+    void write(Path file) throws IOException {
+        Path temp = tempFor(file);
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                Writer writer = new BufferedWriter(
+                    Channels.newWriter(channel, Charset.defaultCharset()), BUFFER_CHARS);
+                this.writePage(writer, channel, "", 0);
+                writer.flush();
+                channel.force(true);
+            }
+            replace(temp, file);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Creates an empty temporary file in the directory of a file, for
+     * {@link #replace}. The temporary file gets the permissions of the file
+     * if it exists, and otherwise those of any new file, so that replacing
+     * the file leaves them as writing it in place would.
+     *
+     * @param file the file to be replaced
+     * @return the temporary file
+     * @throws IOException if the file cannot be created
+     */
+    static Path tempFor(Path file) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        String prefix = file.getFileName().toString() + ".";
+        Path temp;
+        while (true) {
+            temp = dir.resolve(prefix + Long.toUnsignedString(
+                ThreadLocalRandom.current().nextLong()) + ".tmp");
+            try {
+                // Unlike createTempFile, createFile keeps the default permissions
+                Files.createFile(temp);
+                break;
+            } catch (FileAlreadyExistsException e) {
+                // Try another name
+            }
+        }
+        try {
+            PosixFileAttributeView view =
+                Files.getFileAttributeView(file, PosixFileAttributeView.class);
+            if (view != null) {
+                Files.setPosixFilePermissions(temp, view.readAttributes().permissions());
+            }
+        } catch (NoSuchFileException e) {
+            // A new file: the defaults are right
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        return temp;
+    }
+
+    /**
+     * Renames a durable temporary file over another file in one step, and
+     * makes the rename durable where the platform allows it.
+     *
+     * @param temp the temporary file, in the same directory
+     * @param file the file to replace
+     * @throws IOException if the file cannot be replaced
+     */
+    static void replace(Path temp, Path file) throws IOException {
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE,
+            StandardCopyOption.REPLACE_EXISTING);
+        try (FileChannel dir = FileChannel.open(file.toAbsolutePath().getParent(),
+                StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            // Directories cannot be opened or synced on every platform
+        }
+    }
+
+    /**
+     * Writes the lines of a category, each followed by the lines of its
+     * nested category, if it is one.
+     *
+     * @param writer the writer, over the channel
+     * @param channel the file
+     * @param categoryImage the image of the category, or "" for the home page
+     * @param level the number of {@code >} before each item of the category
+     * @throws IOException if writing fails
+     */
+    private void writePage(Writer writer, FileChannel channel, String categoryImage, int level)
+        throws IOException {
+        Page page;
+        try {
+            page = this.pages.get(categoryImage);
+        } catch (KeyNotFoundException e) {
+            // Every category on the board has a page
+            throw new IllegalStateException(e);
+        }
+        if (page.copied != null) {
+            writer.flush();
+            writeLines(channel, page.copied);
+            return;
+        }
+        for (int i = 0; i < page.size; i++) {
+            int lineLevel = level + page.levels[i];
+            if (page.nested[i] && lineLevel > 0) {
+                writeLevel(writer, lineLevel);
+                writer.write("+\n"); // The marker of a nested category
+            }
+            writeLevel(writer, lineLevel);
+            writer.write(page.imageLocs[i]);
+            writer.write(' ');
+            writer.write(page.texts[i]);
+            writer.write('\n');
+            if (page.nested[i] && !page.whole) {
+                this.writePage(writer, channel, page.imageLocs[i], lineLevel + 1);
+            }
+        }
+    }
+
+    /**
+     * Writes lines copied from a file, ending each with a newline alone,
+     * as the other lines are, whatever ended it in the file.
+     */
+    private static void writeLines(FileChannel channel, ByteBuffer lines) throws IOException {
+        ByteBuffer out = ByteBuffer.allocate(Math.min(lines.remaining() + 1, BUFFER_CHARS));
+        for (int i = lines.position(); i < lines.limit(); i++) {
+            byte b = lines.get(i);
+            boolean lineFeedNext = (i + 1 == lines.limit()) || lines.get(i + 1) == '\n';
+            if (b != '\r' || !lineFeedNext) {
+                if (!out.hasRemaining()) {
+                    drain(channel, out);
+                }
+                out.put(b);
+            }
+        }
+        if (!out.hasRemaining()) {
+            drain(channel, out);
+        }
+        if (lines.limit() == lines.position() || lines.get(lines.limit() - 1) != '\n') {
+            out.put((byte) '\n');
+        }
+        drain(channel, out);
+    }
+
+    /**
+     * Writes out what a buffer holds and empties it.
+     */
+    private static void drain(FileChannel channel, ByteBuffer out) throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+
+    /**
+     * Writes the {@code >} that start a line at the given depth.
+     */
+    private static void writeLevel(Writer writer, int level) throws IOException {
+        for (int j = 0; j < level; j++) {
+            writer.write('>');
+        }
+    }
+}
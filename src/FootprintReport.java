@@ -0,0 +1,43 @@
+import edu.grinnell.csc207.util.Footprint;
+
+/**
+ * Prints the estimated memory footprint of AAC mapping files, one line per
+ * category followed by the breakdown for the whole board, so that boards
+ * and data-structure variants can be compared.
+ *
+ * <pre>
+ * java FootprintReport AACMappingsExample.txt [more files ...]
+ * </pre>
+ *
+ * @author Moise Milenge
+ */
+public class FootprintReport {
+
+    /**
+     * Prints the report for each file named on the command line.
+     *
+     * @param args the names of the mapping files
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.err.println("Usage: java FootprintReport <mappings file> ...");
+            System.exit(1);
+        }
+        for (String filename : args) {
+            AACMappings mappings = new AACMappings(filename);
+            System.out.println(filename);
+            for (String categoryImage : mappings.getImageLocs()) {
+                mappings.select(categoryImage);
+                int items = mappings.getImageLocs().length;
+                String name = mappings.getCategory();
+                mappings.reset();
+                Footprint category = mappings.footprint(categoryImage);
+                System.out.printf("  %-30s %5d items %,10d bytes%n", name, items,
+                    category.totalBytes());
+            }
+            mappings.loadAll();
+            System.out.print(mappings.footprint());
+            System.out.println();
+        }
+    }
+}
@@ -4,9 +4,14 @@ import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
+import edu.grinnell.csc207.util.Footprint;
+import java.util.List;
 import org.junit.jupiter.api.Test;
 
 /**
@@ -157,4 +162,195 @@ public class TestAACCategory {
     assertTrue(containsString(abc, "imageC"), "imageLocs contains imageC");
   } // testImageLocs()
 
-} // class TestAACCategory
\ No newline at end of file
+
+  /**
+   * Test of removeItem.
+   */
+  @Test
+  void testRemoveItem() {
+    AACCategory category = new AACCategory("testRemoveItem");
+    category.addItem("imageA", "Apple");
+    category.addItem("imageB", "Banana");
+    category.addItem("imageC", "Cherry");
+    category.addItem("imageD", "Date");
+
+    category.removeItem("imageB");
+    assertFalse(category.hasImage("imageB"), "imageB is gone");
+    assertArrayEquals(new String[] {"imageA", "imageC", "imageD"},
+        category.getImageLocs(), "Removing keeps the order of the rest");
+
+    category.removeItem("imageD");
+    category.addItem("imageE", "Elderberry");
+    assertArrayEquals(new String[] {"imageA", "imageC", "imageE"},
+        category.getImageLocs(), "New images go at the end");
+    assertEquals("Cherry", category.select("imageC"), "imageC is still Cherry");
+
+    category.removeItem("imageZ");
+    assertEquals(3, category.getImageLocs().length,
+        "Removing a missing image changes nothing");
+  } // testRemoveItem()
+
+  /**
+   * Test of findImages, including that it keeps up with changes.
+   */
+  @Test
+  void testFindImages() {
+    AACCategory category = new AACCategory("testFindImages");
+    category.addItem("imageA", "Apple");
+    category.addItem("imageB", "Pizza");
+    category.addItem("imageC", "pizza ");
+
+    assertArrayEquals(new String[] {"imageB", "imageC"}, category.findImages("PIZZA"),
+        "Lookup ignores case and surrounding spaces");
+    assertEquals(0, category.findImages("Banana").length, "No match, no images");
+
+    category.addItem("imageB", "Banana");
+    assertArrayEquals(new String[] {"imageC"}, category.findImages("pizza"),
+        "Changing the text moves the image");
+    assertArrayEquals(new String[] {"imageB"}, category.findImages("banana"),
+        "Changing the text moves the image");
+
+    category.removeItem("imageC");
+    assertEquals(0, category.findImages("pizza").length, "Removed images are not found");
+  } // testFindImages()
+
+  /**
+   * Test of footprint.
+   */
+  @Test
+  void testFootprint() {
+    AACCategory category = new AACCategory("testFootprint");
+    Footprint empty = category.footprint();
+    assertEquals(0, empty.keyBytes(), "An empty category has no keys");
+    assertTrue(empty.unusedBytes() > 0, "An empty category has spare capacity");
+
+    String image = "imageA";
+    String text = "apple";
+    category.addItem(image, text);
+    Footprint one = category.footprint();
+    assertEquals(Footprint.stringSize(image), one.keyBytes(), "One key");
+    assertEquals(Footprint.stringSize(text), one.valueBytes(),
+        "One value, shared with the text index");
+    assertEquals(Footprint.objectSize(2 * Footprint.REFERENCE), one.pairBytes(),
+        "Only the text index uses pairs");
+    assertTrue(one.totalBytes() > empty.totalBytes(), "Adding an item costs memory");
+  } // testFootprint()
+
+  /**
+   * Test that the image list is reused until the images change, and that
+   * the image arrays handed out are copies.
+   */
+  @Test
+  void testImagesCached() {
+    AACCategory category = new AACCategory("testImagesCached");
+    category.addItem("imageA", "Apple");
+    category.addItem("imageB", "Banana");
+
+    List<String> list = category.getImageList();
+    assertSame(list, category.getImageList(), "No change, same list");
+    category.addItem("imageA", "Avocado");
+    assertSame(list, category.getImageList(), "Changing a text keeps the images");
+
+    String[] images = category.getImages();
+    assertNotSame(images, category.getImages(), "Each call gets its own array");
+    images[0] = "imageZ";
+    category.getImageLocs()[1] = "imageY";
+    assertEquals(List.of("imageA", "imageB"), list, "Changing an array leaves the list alone");
+    assertArrayEquals(new String[] {"imageA", "imageB"}, category.getImages(),
+        "Changing an array leaves the category alone");
+    images = category.getImages();
+
+    category.addItem("imageC", "Cherry");
+    assertArrayEquals(new String[] {"imageA", "imageB", "imageC"}, category.getImages(),
+        "Adding an image refreshes the array");
+    assertArrayEquals(new String[] {"imageA", "imageB"}, images,
+        "The old array is left alone");
+    category.removeItem("imageA");
+    assertEquals(List.of("imageB", "imageC"), category.getImageList(),
+        "Removing an image refreshes the list");
+    assertThrows(UnsupportedOperationException.class,
+        () -> category.getImageList().set(0, "imageZ"), "The list is read-only");
+  } // testImagesCached()
+
+  /**
+   * Test that frequency order puts the most used images first and that
+   * insertion order ignores use.
+   */
+  @Test
+  void testFrequencyOrder() {
+    AACCategory category = new AACCategory("testFrequencyOrder");
+    category.addItem("imageA", "Apple");
+    category.addItem("imageB", "Banana");
+    category.addItem("imageC", "Cherry");
+    category.select("imageC");
+    category.select("imageB");
+    category.select("imageB");
+    assertArrayEquals(new String[] {"imageA", "imageB", "imageC"}, category.getImages(),
+        "Insertion order by default");
+
+    category.setOrder(AACCategory.Order.FREQUENCY);
+    assertArrayEquals(new String[] {"imageB", "imageC", "imageA"}, category.getImages(),
+        "Uses made before switching count");
+    category.select("imageA");
+    category.select("imageA");
+    category.select("imageA");
+    assertArrayEquals(new String[] {"imageA", "imageB", "imageC"}, category.getImages(),
+        "A use moves the image up");
+    category.addItem("imageD", "Date");
+    category.removeItem("imageB");
+    assertArrayEquals(new String[] {"imageA", "imageC", "imageD"}, category.getImages(),
+        "New images start last");
+  } // testFrequencyOrder()
+
+  /**
+   * Test that a category only builds its ranking once an image is used or
+   * the order is by frequency, and that the ranking then has every image.
+   */
+  @Test
+  void testRankingOnDemand() {
+    AACCategory category = new AACCategory("testRankingOnDemand");
+    category.addItem("imageA", "Apple");
+    category.addItem("imageB", "Banana");
+    category.removeItem("imageA");
+    category.addItem("imageC", "Cherry");
+    long unranked = category.footprint().totalBytes();
+    category.getImages();
+    category.findImages("Banana");
+    assertEquals(unranked, category.footprint().totalBytes(), "No ranking in insertion order");
+
+    category.select("imageC");
+    assertTrue(category.footprint().totalBytes() > unranked, "A use builds the ranking");
+    category.setOrder(AACCategory.Order.FREQUENCY);
+    assertArrayEquals(new String[] {"imageC", "imageB"}, category.getImages(),
+        "Images added before the ranking are ranked");
+  } // testRankingOnDemand()
+
+  /**
+   * Test that removing most of a large category in frequency order keeps
+   * the ranking right.
+   */
+  @Test
+  void testRemoveManyByFrequency() {
+    AACCategory category = new AACCategory("testRemoveManyByFrequency");
+    category.setOrder(AACCategory.Order.FREQUENCY);
+    for (int i = 0; i < 10_000; i++) {
+      category.addItem("image" + i, "Text " + i);
+    } // for
+    category.select("image9998");
+    for (int i = 0; i < 10_000; i++) {
+      if (i % 4 != 0 && i != 9998) {
+        category.removeItem("image" + i);
+      } // if
+    } // for
+    String[] images = category.getImages();
+    assertEquals(2_501, images.length, "Size after removals");
+    assertEquals("image9998", images[0], "The used image first");
+    for (int i = 1; i < images.length; i++) {
+      assertEquals("image" + (4 * (i - 1)), images[i], "Unused images in insertion order");
+    } // for
+    category.select("image4");
+    category.select("image4");
+    assertEquals("image4", category.getImages()[0], "Uses after removals");
+  } // testRemoveManyByFrequency()
+
+} // class TestAACCategory
@@ -1,20 +1,37 @@
-public class TestAACCategory
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
+import edu.grinnell.csc207.util.Footprint;
+import edu.grinnell.csc207.util.SearchIndex;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.BeforeAll;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.io.File;
 import java.io.FileWriter;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
 /**
  * Tests of AACMappings.
  *
@@ -213,6 +230,24 @@ public class TestAACMappings {
     assertEquals("miscellaneous", mappings.getCategory(), "selected three");
   } // testGetCategoryB()
 
+  /**
+   * Can the name of the current category be read while another thread
+   * holds the mappings' lock, as a reload or a snapshot does?
+   *
+   * @throws Exception
+   *   If an IO operation fails or the read waits for the lock.
+   */
+  @Test
+  public void testGetCategoryUnlocked() throws Exception {
+    AACMappings mappings = new AACMappings(configFile(TEST_CONFIG));
+    mappings.select("one");
+    synchronized (mappings) {
+      assertEquals("fruit",
+          CompletableFuture.supplyAsync(mappings::getCategory).get(5, TimeUnit.SECONDS),
+          "read without the lock");
+    } // synchronized
+  } // testGetCategoryUnlocked()
+
   /**
    * Do we get the appropriate list of image locations with no
    * top-level categories?
@@ -464,4 +499,803 @@ public class TestAACMappings {
     assertEquals(4, mappings.getImageLocs().length, "4 toppings");
     assertEquals("pepperoni", mappings.select("p"), "selecting topping p");
   } // testAdd()
-} // class TestAACCategory
\ No newline at end of file
+
+  /**
+   * Test removing items and categories.
+   *
+   * @throws IOException
+   *   If an IO operation fails.
+   */
+  @Test
+  public void testRemove() throws IOException {
+    AACMappings mappings = new AACMappings(configFile(TEST_CONFIG));
+
+    assertEquals("", mappings.select("two"), "selecting category two");
+    mappings.removeItem("e");
+    assertArrayEquals(new String[] {"d", "f", "g"}, mappings.getImageLocs(),
+        "remaining clothes keep their order");
+    assertFalse(mappings.hasImage("e"), "e is gone");
+    mappings.removeItem("e");
+    assertEquals(3, mappings.getImageLocs().length, "removing twice is harmless");
+
+    mappings.reset();
+    mappings.removeItem("one");
+    assertArrayEquals(new String[] {"two", "three"}, mappings.getImageLocs(),
+        "remaining categories keep their order");
+    assertEquals("", mappings.select("two"), "selecting category two again");
+    assertEquals("gloves", mappings.select("g"), "g is still for gloves");
+  } // testRemove()
+
+  /**
+   * Make sure that the text lookups find the right tiles and keep up with
+   * changes.
+   */
+  @Test
+  public void testFind() throws IOException {
+    AACMappings mappings = new AACMappings(configFile(TEST_CONFIG));
+
+    assertArrayEquals(new String[] {"two"}, mappings.findCategories("Gloves"),
+        "gloves are in clothes");
+    assertArrayEquals(new String[] {"two"}, mappings.findImages("clothes"),
+        "finding a category on the home page");
+
+    mappings.select("two");
+    assertArrayEquals(new String[] {"g"}, mappings.findImages("gloves"), "g is for gloves");
+    mappings.addItem("p", "Gloves");
+    mappings.removeItem("g");
+    assertArrayEquals(new String[] {"p"}, mappings.findImages("gloves"),
+        "the new gloves replace the old");
+    assertArrayEquals(new String[] {"two"}, mappings.findCategories("gloves"),
+        "clothes still has gloves");
+    mappings.addItem("p", "mittens");
+    assertEquals(0, mappings.findCategories("gloves").length, "no more gloves");
+
+    mappings.reset();
+    mappings.removeItem("one");
+    assertEquals(0, mappings.findCategories("apple").length, "the fruit are gone");
+  } // testFind()
+
+  /**
+   * Make sure that search finds tiles across categories, tolerates typos,
+   * and keeps up with changes.
+   */
+  @Test
+  public void testSearch() throws IOException {
+    AACMappings mappings = new AACMappings(configFile(TEST_CONFIG));
+
+    SearchIndex.Result[] results = mappings.search("glove", 5);
+    assertEquals(1, results.length, "one pair of gloves");
+    assertEquals("two", results[0].getCategory(), "gloves are in clothes");
+    assertEquals("g", results[0].getImageLoc(), "g is for gloves");
+    assertEquals("c", mappings.search("chery", 5)[0].getImageLoc(), "typo for cherry");
+    assertEquals("", mappings.search("Clothes", 5)[0].getCategory(), "categories are tiles");
+    assertEquals("b", mappings.search("ba", 5)[0].getImageLoc(), "b is for banana");
+
+    mappings.select("two");
+    mappings.removeItem("g");
+    mappings.addItem("p", "pants");
+    assertEquals(0, mappings.search("gloves", 5).length, "no more gloves");
+    assertEquals("p", mappings.search("pan", 5)[0].getImageLoc(), "p is for pants");
+
+    mappings.reset();
+    mappings.removeItem("one");
+    assertEquals(0, mappings.search("apple", 5).length, "the fruit are gone");
+  } // testSearch()
+
+  /**
+   * Make sure that frequencies survive a save and a load.
+   */
+  @Test
+  public void testFrequencies() throws IOException {
+    String config = configFile(TEST_CONFIG);
+    String frequencies = tempDir.resolve("frequencies").toString();
+    AACMappings mappings = new AACMappings(config);
+    mappings.setOrder(AACCategory.Order.FREQUENCY);
+    mappings.select("one");
+    mappings.select("c");
+    mappings.select("one");
+    mappings.select("b");
+    mappings.select("one");
+    mappings.select("c");
+    mappings.reset();
+    mappings.saveFrequencies(frequencies);
+
+    AACMappings restored = new AACMappings(config);
+    restored.loadFrequencies(tempDir.resolve("missing").toString());
+    restored.setOrder(AACCategory.Order.FREQUENCY);
+    restored.select("one");
+    assertArrayEquals(new String[] {"a", "b", "c"}, restored.getImageLocs(),
+        "nothing loaded yet");
+    restored.loadFrequencies(frequencies);
+    assertArrayEquals(new String[] {"c", "b", "a"}, restored.getImageLocs(),
+        "cherry was picked most");
+    restored.reset();
+    restored.addItem("four", "vegetables");
+    restored.select("four");
+    restored.addItem("k", "kale");
+    restored.addItem("l", "leek");
+    restored.select("l");
+    assertArrayEquals(new String[] {"l", "k"}, restored.getImageLocs(),
+        "new categories use the same order");
+  } // testFrequencies()
+
+  /**
+   * Make sure that predictions follow the items selected, across
+   * categories, and skip items that are gone.
+   */
+  @Test
+  public void testPredict() throws IOException {
+    AACMappings mappings = new AACMappings(configFile(TEST_CONFIG));
+    assertEquals(0, mappings.predict(3).length, "nothing learned yet");
+    for (int i = 0; i < 3; i++) {
+      mappings.select("one");
+      mappings.select("a");
+      mappings.reset();
+      mappings.select("two");
+      mappings.select("g");
+      mappings.reset();
+    } // for
+    mappings.selectTile("one", "b");
+    mappings.startUtterance();
+
+    mappings.select("one");
+    mappings.select("a");
+    AACMappings.Prediction[] predictions = mappings.predict(3);
+    assertEquals(2, predictions.length, "not apples again");
+    assertEquals("two", predictions[0].getCategory(), "gloves follow apples");
+    assertEquals("g", predictions[0].getImageLoc(), "g is for gloves");
+    assertEquals("gloves", predictions[0].getText(), "gloves");
+    assertEquals("b", predictions[1].getImageLoc(), "then the rest by use");
+
+    assertEquals("gloves", mappings.selectTile("two", "g"), "select from another category");
+    assertEquals("a", mappings.predict(1)[0].getImageLoc(), "apples follow gloves");
+    assertEquals("fruit", mappings.getCategory(), "still in fruit");
+    mappings.removeItem("a");
+    assertEquals("b", mappings.predict(1)[0].getImageLoc(), "no more apples");
+  } // testPredict()
+
+  /**
+   * A board with categories nested three deep.
+   */
+  static final String NESTED_CONFIG =
+      """
+      food food
+      >a apple
+      >+
+      >fruit fruit
+      >>b banana
+      >>+
+      >>berries berries
+      >>>c cherry
+      >>>s strawberry
+      >>d date
+      >e egg
+      two clothes
+      >g gloves
+      """;
+
+  /**
+   * Make sure that a file written before categories could be nested reads
+   * as it always has: an item whose image starts with {@code +} is still an
+   * item, and is written back the same.
+   */
+  @Test
+  public void testPlusImage() throws IOException {
+    String config = "food food\n>+1.png plus one\n>a apple\n";
+    for (AACMappings.LoadMode mode : AACMappings.LoadMode.values()) {
+      AACMappings mappings = new AACMappings(configFile(config), mode);
+      mappings.select("food");
+      assertArrayEquals(new String[] {"+1.png", "a"}, mappings.getImageLocs(), "two items, " + mode);
+      assertEquals("plus one", mappings.select("+1.png"), "spoken, " + mode);
+      String saved = tempDir.resolve("plus").toString();
+      mappings.writeToFile(saved);
+      assertEquals(config, Files.readString(Path.of(saved)), "written back, " + mode);
+    } // for
+
+    AACMappings mappings = new AACMappings(configFile(config));
+    mappings.select("food");
+    mappings.addCategory("+nested", "nested");
+    mappings.select("+nested");
+    mappings.addItem("+2.png", "plus two");
+    String saved = tempDir.resolve("plus-nested").toString();
+    mappings.writeToFile(saved);
+    assertEquals(config + ">+\n>+nested nested\n>>+2.png plus two\n",
+        Files.readString(Path.of(saved)), "a nested category is marked on its own line");
+    AACMappings reread = new AACMappings(saved);
+    reread.select("food");
+    reread.select("+nested");
+    assertEquals("plus two", reread.select("+2.png"), "read back");
+  } // testPlusImage()
+
+  /**
+   * Make sure that we can move into and out of nested categories.
+   */
+  @Test
+  public void testNested() throws IOException {
+    AACMappings mappings = new AACMappings(configFile(NESTED_CONFIG));
+    assertArrayEquals(new String[] {"food", "two"}, mappings.getImageLocs(), "home page");
+    mappings.back();
+    assertEquals("", mappings.getCategory(), "no going back from home");
+
+    assertEquals("", mappings.select("food"), "enter food");
+    assertArrayEquals(new String[] {"a", "fruit", "e"}, mappings.getImageLocs(), "in food");
+    assertEquals("", mappings.select("fruit"), "enter fruit");
+    assertEquals("fruit", mappings.getCategory(), "in fruit");
+    assertEquals("banana", mappings.select("b"), "b is for banana");
+    assertFalse(mappings.hasImage("a"), "apple is one level up");
+    mappings.select("berries");
+    assertArrayEquals(new String[] {"c", "s"}, mappings.getImageLocs(), "in berries");
+    assertEquals("strawberry", mappings.select("s"), "s is for strawberry");
+
+    mappings.back();
+    assertEquals("fruit", mappings.getCategory(), "back to fruit");
+    mappings.back();
+    assertEquals("food", mappings.getCategory(), "back to food");
+    mappings.select("fruit");
+    mappings.select("berries");
+    mappings.reset();
+    assertEquals("", mappings.getCategory(), "home from anywhere");
+    assertEquals(1, mappings.search("cherry", 5).length, "search sees every level");
+  } // testNested()
+
+  /**
+   * Make sure that nested categories can be added, removed and saved.
+   */
+  @Test
+  public void testNestedChanges() throws IOException {
+    AACMappings mappings = new AACMappings(configFile(NESTED_CONFIG));
+    mappings.select("two");
+    mappings.addCategory("hats", "hats");
+    mappings.select("hats");
+    mappings.addItem("h", "hat");
+    mappings.addItem("i", "beanie");
+    mappings.reset();
+    mappings.select("food");
+    mappings.removeItem("fruit");
+    assertArrayEquals(new String[] {"a", "e"}, mappings.getImageLocs(), "fruit is gone");
+    assertEquals(0, mappings.search("cherry", 5).length, "and so are the berries");
+    assertEquals(0, mappings.findCategories("banana").length, "and the bananas");
+
+    String saved = tempDir.resolve("nested").toString();
+    mappings.writeToFile(saved);
+    assertEquals("food food\n>a apple\n>e egg\n"
+        + "two clothes\n>g gloves\n>+\n>hats hats\n>>h hat\n>>i beanie\n",
+        Files.readString(Path.of(saved)), "nested categories are marked");
+
+    AACMappings reloaded = new AACMappings(saved);
+    reloaded.select("two");
+    reloaded.select("hats");
+    assertEquals("beanie", reloaded.select("i"), "i is for beanie");
+    reloaded.reset();
+    reloaded.removeItem("two");
+    assertEquals(0, reloaded.search("beanie", 5).length, "hats went with clothes");
+  } // testNestedChanges()
+
+  /**
+   * Make sure that lazy and eager loading give the same board, and that
+   * lazy loading holds less until categories are entered.
+   */
+  @Test
+  public void testLoadModes() throws IOException {
+    String config = configFile(NESTED_CONFIG.replace("\n", "\r\n"));
+    AACMappings lazy = new AACMappings(config, AACMappings.LoadMode.LAZY);
+    AACMappings eager = new AACMappings(config, AACMappings.LoadMode.EAGER);
+    assertTrue(lazy.footprint().totalBytes() < eager.footprint().totalBytes(),
+        "nothing read beyond the home page");
+
+    lazy.select("food");
+    lazy.select("fruit");
+    lazy.select("berries");
+    assertEquals("cherry", lazy.select("c"), "read on entry");
+    String lazyFile = tempDir.resolve("lazy").toString();
+    String eagerFile = tempDir.resolve("eager").toString();
+    lazy.writeToFile(lazyFile);
+    eager.writeToFile(eagerFile);
+    assertEquals(NESTED_CONFIG, Files.readString(Path.of(lazyFile)), "lazy board");
+    assertEquals(NESTED_CONFIG, Files.readString(Path.of(eagerFile)), "eager board");
+  } // testLoadModes()
+
+  /**
+   * Make sure that a new category cannot take the image of a nested
+   * category, in every load mode and in either format, even when the
+   * category holding it has not been read yet.
+   */
+  @Test
+  public void testAddCategoryTakenUnread() throws IOException {
+    String config = configFile(NESTED_CONFIG);
+    String binaryFile = tempDir.resolve("taken.bin").toString();
+    new AACMappings(config).writeBinaryFile(binaryFile);
+    for (String file : new String[] {config, binaryFile}) {
+      for (AACMappings.LoadMode mode : AACMappings.LoadMode.values()) {
+        String label = mode + (file.equals(config) ? " text" : " binary");
+        AACMappings mappings = new AACMappings(file, mode);
+        mappings.addCategory("fruit", "taken");
+        mappings.addCategory("berries", "taken too");
+        mappings.addCategory("kiwi", "kiwi");
+        assertArrayEquals(new String[] {"food", "two", "kiwi"}, mappings.getImageLocs(),
+            label + ": only the new image added");
+        mappings.select("food");
+        mappings.select("fruit");
+        assertArrayEquals(new String[] {"b", "berries", "d"}, mappings.getImageLocs(),
+            label + ": the nested category is intact");
+        mappings.select("berries");
+        assertEquals("cherry", mappings.select("c"), label + ": deeper category intact");
+        mappings.reset();
+        mappings.select("kiwi");
+        assertEquals("kiwi", mappings.getCategory(), label + ": the new category");
+      } // for
+    } // for
+  } // testAddCategoryTakenUnread()
+
+  /**
+   * Make sure that the parser splits lines as String.split(" ", 2) and
+   * trim() would, and copes with blank lines and missing text.
+   */
+  @Test
+  public void testParseSpacing() throws IOException {
+    AACMappings mappings = new AACMappings(
+        configFile("one  fruit \n>\ta\tapple  pie \n\n>b\n>c  cher ry\t\ntwo\tclothes\n"));
+    mappings.select("one");
+    assertEquals("fruit", mappings.getCategory(), "name without spaces around it");
+    assertArrayEquals(new String[] {"a\tapple", "b", "c"}, mappings.getImageLocs(),
+        "images end at the first space");
+    assertEquals("pie", mappings.select("a\tapple"), "text after the first space");
+    assertEquals("", mappings.select("b"), "no text");
+    assertEquals("cher ry", mappings.select("c"), "inner spaces kept");
+    mappings.reset();
+    assertArrayEquals(new String[] {"one", "two\tclothes"}, mappings.getImageLocs(),
+        "tabs do not split");
+  } // testParseSpacing()
+
+  /**
+   * Make sure that a board loaded in the background is usable at once and
+   * ends up the same as one loaded eagerly.
+   */
+  @Test
+  public void testStreaming() throws IOException {
+    StringBuilder board = new StringBuilder();
+    for (int c = 0; c < 200; c++) {
+      board.append("c").append(c).append(" category ").append(c).append("\n");
+      for (int i = 0; i < 50; i++) {
+        board.append(">c").append(c).append("-").append(i).append(" word ").append(i).append("\n");
+      } // for
+    } // for
+    String config = configFile(board.toString());
+    AACMappings streaming = new AACMappings(config, AACMappings.LoadMode.STREAMING);
+    assertEquals(200, streaming.getImageLocs().length, "home page at once");
+    streaming.select("c199");
+    assertEquals("word 49", streaming.select("c199-49"), "last category ready on entry");
+    streaming.reset();
+    assertEquals(200, streaming.findCategories("word 7").length, "search waits for the rest");
+
+    String streamed = tempDir.resolve("streamed").toString();
+    String eager = tempDir.resolve("eager-streaming").toString();
+    streaming.writeToFile(streamed);
+    new AACMappings(config, AACMappings.LoadMode.EAGER).writeToFile(eager);
+    assertEquals(Files.readString(Path.of(eager)), Files.readString(Path.of(streamed)),
+        "same board");
+  } // testStreaming()
+
+  /**
+   * Make sure that a board converted to the binary format loads, lazily
+   * or eagerly, as the same board, and converts back to the same text.
+   */
+  @Test
+  public void testBinary() throws IOException {
+    String binaryFile = tempDir.resolve("board.bin").toString();
+    new AACMappings(configFile(NESTED_CONFIG)).writeBinaryFile(binaryFile);
+
+    AACMappings lazy = new AACMappings(binaryFile);
+    assertArrayEquals(new String[] {"food", "two"}, lazy.getImageLocs(), "home page");
+    lazy.select("food");
+    lazy.select("fruit");
+    assertEquals("fruit", lazy.getCategory(), "nested category");
+    lazy.select("berries");
+    assertEquals("cherry", lazy.select("c"), "read on entry");
+    lazy.reset();
+    assertEquals(1, lazy.findCategories("gloves").length, "rest read for search");
+
+    String lazyFile = tempDir.resolve("binary-lazy").toString();
+    String eagerFile = tempDir.resolve("binary-eager").toString();
+    lazy.writeToFile(lazyFile);
+    new AACMappings(binaryFile, AACMappings.LoadMode.EAGER).writeToFile(eagerFile);
+    assertEquals(NESTED_CONFIG, Files.readString(Path.of(lazyFile)), "lazy round trip");
+    assertEquals(NESTED_CONFIG, Files.readString(Path.of(eagerFile)), "eager round trip");
+  } // testBinary()
+
+  /**
+   * Make sure that a binary board with a record out of range is rejected
+   * when it is opened, leaving the board empty, and that reading it to
+   * write it elsewhere fails rather than giving an empty board.
+   */
+  @Test
+  public void testCorruptBinary() throws IOException {
+    Path binaryFile = tempDir.resolve("corrupt.bin");
+    new AACMappings(configFile(NESTED_CONFIG)).writeBinaryFile(binaryFile.toString());
+    byte[] good = Files.readAllBytes(binaryFile);
+    ByteBuffer header = ByteBuffer.wrap(good).order(ByteOrder.LITTLE_ENDIAN);
+    int records = (24 + (header.getInt(8) + 1) * 4 + header.getInt(20) + 3) & -4;
+
+    // A string id past the table, a child range past the records, and a
+    // category that holds itself
+    int[][] corruptions = {{records, 1000}, {records + 12, 1000}, {records + 8, 0}};
+    for (int[] corruption : corruptions) {
+      ByteBuffer bad = ByteBuffer.wrap(good.clone()).order(ByteOrder.LITTLE_ENDIAN);
+      bad.putInt(corruption[0], corruption[1]);
+      Files.write(binaryFile, bad.array());
+      for (AACMappings.LoadMode mode : AACMappings.LoadMode.values()) {
+        assertEquals(0, new AACMappings(binaryFile.toString(), mode).getImageLocs().length,
+            "empty board, " + mode);
+      } // for
+      assertThrows(IOException.class, () -> AACMappings.readAll(binaryFile.toString()),
+          "read to write");
+    } // for
+
+    Files.write(binaryFile, Arrays.copyOf(good, good.length - 4));
+    assertThrows(IOException.class, () -> AACMappings.readAll(binaryFile.toString()),
+        "truncated");
+  } // testCorruptBinary()
+
+  /**
+   * Make sure that a board parsed in parallel ends up the same as one read
+   * sequentially.
+   */
+  @Test
+  public void testParallel() throws IOException {
+    StringBuilder board = new StringBuilder();
+    for (int c = 0; c < 200; c++) {
+      board.append("c").append(c).append(" category ").append(c).append("\n");
+      for (int i = 0; i < 50; i++) {
+        board.append(">c").append(c).append("-").append(i).append(" word ").append(i).append("\n");
+      } // for
+      board.append(">+\n>n").append(c).append(" nested ").append(c).append("\n");
+      board.append(">>n").append(c).append("-0 deep word\n");
+    } // for
+    String config = configFile(board.toString());
+    AACMappings parallel = new AACMappings(config, AACMappings.LoadMode.PARALLEL);
+    AACMappings eager = new AACMappings(config, AACMappings.LoadMode.EAGER);
+    assertEquals(200, parallel.findCategories("word 7").length, "every category read");
+    parallel.select("c123");
+    parallel.select("n123");
+    assertEquals("deep word", parallel.select("n123-0"), "nested category read");
+    assertEquals(eager.search("deep", 5).length, parallel.search("deep", 5).length,
+        "same search index");
+
+    String parallelFile = tempDir.resolve("parallel").toString();
+    String eagerFile = tempDir.resolve("eager-parallel").toString();
+    parallel.writeToFile(parallelFile);
+    eager.writeToFile(eagerFile);
+    assertEquals(Files.readString(Path.of(eagerFile)), Files.readString(Path.of(parallelFile)),
+        "same board");
+  } // testParallel()
+
+  /**
+   * Make sure that changes kept in a journal come back on the next start,
+   * survive a damaged tail and can be folded into the mappings file.
+   */
+  @Test
+  public void testJournal() throws IOException {
+    String config = configFile(NESTED_CONFIG);
+    String journal = tempDir.resolve("journal").toString();
+    AACMappings mappings = new AACMappings(config);
+    mappings.openJournal(journal);
+    mappings.select("food");
+    mappings.select("fruit");
+    mappings.addItem("k", "kiwi");
+    mappings.reset();
+    mappings.addItem("h", "hats");
+    mappings.select("two");
+    mappings.removeItem("g");
+    mappings.saveJournal();
+    assertEquals(NESTED_CONFIG, Files.readString(Path.of(config)), "mappings file untouched");
+
+    Files.write(Path.of(journal), new byte[] {0, 0, 0, 9, 1},
+        StandardOpenOption.APPEND);
+    AACMappings restarted = new AACMappings(config);
+    restarted.openJournal(journal);
+    assertArrayEquals(new String[] {"food", "two", "h"}, restarted.getImageLocs(),
+        "category added");
+    restarted.select("food");
+    restarted.select("fruit");
+    assertEquals("kiwi", restarted.select("k"), "item added");
+    restarted.reset();
+    restarted.select("two");
+    assertEquals(0, restarted.getImageLocs().length, "item removed");
+    restarted.addItem("s", "socks");
+    restarted.saveJournal();
+
+    restarted.compactJournal().join();
+    assertEquals(0, Files.size(Path.of(journal)), "journal folded");
+    AACMappings folded = new AACMappings(config);
+    folded.select("two");
+    assertEquals("socks", folded.select("s"), "change after the damaged tail kept");
+    folded.reset();
+    folded.select("food");
+    folded.select("fruit");
+    assertEquals("kiwi", folded.select("k"), "mappings file rewritten");
+  } // testJournal()
+
+  /**
+   * Make sure that the autosaver coalesces changes into one atomic save
+   * and reports failed saves.
+   */
+  @Test
+  public void testAutosave() throws IOException, InterruptedException {
+    AACMappings mappings = new AACMappings(configFile(NESTED_CONFIG));
+    Path saved = tempDir.resolve("autosaved");
+    List<IOException> errors = new ArrayList<>();
+    Autosaver autosaver = new Autosaver(mappings, saved.toString(), 60_000, errors::add);
+    mappings.select("food");
+    for (int i = 0; i < 50; i++) {
+      mappings.addItem("k", "kiwi " + i);
+      autosaver.changed();
+    } // for
+    assertFalse(Files.exists(saved), "waits for the changes to stop");
+    autosaver.flush();
+    assertEquals(NESTED_CONFIG.replace(">e egg\n", ">e egg\n>k kiwi 49\n"),
+        Files.readString(saved), "last change saved");
+    try (Stream<Path> files = Files.list(tempDir)) {
+      assertFalse(files.anyMatch((file) -> file.toString().endsWith(".tmp")),
+          "no temporary files left");
+    } // try
+    autosaver.close();
+    assertTrue(errors.isEmpty(), "no errors");
+
+    Autosaver failing = new Autosaver(mappings,
+        tempDir.resolve("missing").resolve("board").toString(), 0, errors::add);
+    failing.changed();
+    failing.close();
+    assertEquals(1, errors.size(), "failure reported");
+  } // testAutosave()
+
+  /**
+   * Make sure that autosaving a board loaded lazily leaves the categories
+   * not entered unread, and writes the same file as a board read in full.
+   */
+  @Test
+  public void testAutosaveLazy() throws IOException, InterruptedException {
+    String binaryFile = tempDir.resolve("lazy.bin").toString();
+    new AACMappings(configFile(NESTED_CONFIG)).writeBinaryFile(binaryFile);
+    for (String config : new String[] {configFile(NESTED_CONFIG), binaryFile}) {
+      AACMappings mappings = new AACMappings(config);
+      mappings.select("food");
+      long two = mappings.footprint("two").totalBytes();
+      long fruit = mappings.footprint("fruit").totalBytes();
+      Path saved = tempDir.resolve("autosaved-lazy");
+      try (Autosaver autosaver = new Autosaver(mappings, saved.toString())) {
+        autosaver.changed();
+      } // try
+      assertEquals(two, mappings.footprint("two").totalBytes(), "still unread, " + config);
+      assertEquals(fruit, mappings.footprint("fruit").totalBytes(), "nested, " + config);
+      assertEquals(NESTED_CONFIG, Files.readString(saved), "whole board saved, " + config);
+    } // for
+
+    String ragged = "food food\n>a apple\n\n>+\n>fruit  fruit\n>>b banana\n"
+        + "two clothes\n>g gloves";
+    AACMappings mappings = new AACMappings(configFile(ragged));
+    Path saved = tempDir.resolve("autosaved-ragged");
+    mappings.writeToFile(saved.toString());
+    assertEquals(ragged + "\n", Files.readString(saved), "unread lines copied as they are");
+    AACMappings reread = new AACMappings(saved.toString(), AACMappings.LoadMode.EAGER);
+    reread.select("food");
+    reread.select("fruit");
+    assertEquals("banana", reread.select("b"), "and read back");
+  } // testAutosaveLazy()
+
+  /**
+   * Make sure that a snapshot keeps the board as it was when it was taken,
+   * and that the next snapshot shares the pages of the categories that did
+   * not change.
+   */
+  @Test
+  public void testSnapshotPages() throws IOException {
+    StringBuilder board = new StringBuilder();
+    for (int c = 0; c < 100; c++) {
+      board.append("c").append(c).append(" category ").append(c).append("\n");
+      for (int i = 0; i < 20; i++) {
+        board.append(">c").append(c).append("-").append(i).append(" word ").append(i).append("\n");
+      } // for
+    } // for
+    AACMappings mappings = new AACMappings(configFile(board.toString()),
+        AACMappings.LoadMode.EAGER);
+    BoardSnapshot before = mappings.snapshot();
+    mappings.select("c7");
+    mappings.addItem("k", "kiwi");
+    mappings.reset();
+    mappings.removeItem("c9");
+    mappings.addCategory("n", "new");
+    BoardSnapshot after = mappings.snapshot();
+
+    long alone = before.footprint(new Footprint()).totalBytes();
+    Footprint both = before.footprint(new Footprint());
+    after.footprint(both);
+    assertTrue(both.totalBytes() < alone + alone / 10, "unchanged pages shared");
+
+    Path beforeFile = tempDir.resolve("snapshot-before");
+    Path afterFile = tempDir.resolve("snapshot-after");
+    before.write(beforeFile);
+    after.write(afterFile);
+    assertEquals(board.toString(), Files.readString(beforeFile), "old snapshot unchanged");
+    String changed = board.toString().replace(">c7-19 word 19\n", ">c7-19 word 19\n>k kiwi\n");
+    int nine = changed.indexOf("c9 ");
+    changed = changed.substring(0, nine) + changed.substring(changed.indexOf("c10 "))
+        + "n new\n";
+    assertEquals(changed, Files.readString(afterFile), "new snapshot has the changes");
+
+    // Pages of categories not read yet are made again after a reload, whose
+    // mapping holds their lines elsewhere
+    String config = configFile(NESTED_CONFIG);
+    AACMappings lazy = new AACMappings(config);
+    lazy.snapshot();
+    String edited = "zero nothing\n>z zip\n" + NESTED_CONFIG.replace(">e egg", ">e eggs");
+    Files.writeString(Path.of(config), edited);
+    lazy.reload();
+    lazy.snapshot().write(afterFile);
+    assertEquals(edited, Files.readString(afterFile), "reloaded board");
+  } // testSnapshotPages()
+
+  /**
+   * Make sure that saving a board over its file keeps the permissions of
+   * the file, and gives a new file the usual permissions.
+   */
+  @Test
+  public void testSavePermissions() throws IOException {
+    if (!Files.getFileStore(tempDir).supportsFileAttributeView("posix")) {
+      return;
+    } // if
+    AACMappings mappings = new AACMappings(configFile(NESTED_CONFIG));
+    Path saved = tempDir.resolve("shared");
+    Files.writeString(saved, "");
+    Set<PosixFilePermission> shared = PosixFilePermissions.fromString("rw-rw-r--");
+    Files.setPosixFilePermissions(saved, shared);
+    try (Autosaver autosaver = new Autosaver(mappings, saved.toString())) {
+      autosaver.changed();
+    } // try
+    assertEquals(NESTED_CONFIG, Files.readString(saved), "saved");
+    assertEquals(shared, Files.getPosixFilePermissions(saved), "permissions kept");
+
+    Path fresh = tempDir.resolve("fresh");
+    Path usual = Files.createFile(tempDir.resolve("usual"));
+    try (Autosaver autosaver = new Autosaver(mappings, fresh.toString())) {
+      autosaver.changed();
+    } // try
+    assertEquals(Files.getPosixFilePermissions(usual), Files.getPosixFilePermissions(fresh),
+        "usual permissions for a new file");
+  } // testSavePermissions()
+
+  /**
+   * Make sure that a reload applies only the changed categories and keeps
+   * the categories entered, their use counts and the categories not read
+   * yet.
+   */
+  @Test
+  public void testReload() throws IOException, InterruptedException {
+    Path config = Path.of(configFile(NESTED_CONFIG));
+    AACMappings mappings = new AACMappings(config.toString());
+    mappings.setOrder(AACCategory.Order.FREQUENCY);
+    mappings.select("two");
+    mappings.select("g");
+    mappings.reset();
+    mappings.select("food");
+    mappings.select("fruit");
+
+    Files.writeString(config, "three hats\n>h hat\n"
+        + NESTED_CONFIG.replace(">g gloves\n", ">x scarf\n>g mittens\n"));
+    assertEquals(2, mappings.reload(), "one category added, one changed");
+    assertEquals("fruit", mappings.getCategory(), "still in the same category");
+    mappings.select("berries");
+    assertEquals("cherry", mappings.select("c"), "unchanged category read from the new file");
+    mappings.reset();
+    assertArrayEquals(new String[] {"three", "food", "two"}, mappings.getImageLocs(),
+        "file order");
+    mappings.select("two");
+    assertArrayEquals(new String[] {"g", "x"}, mappings.getImageLocs(), "use counts kept");
+    assertEquals("mittens", mappings.select("g"), "changed item");
+
+    Files.writeString(config, "three hats\n>h hat\ntwo clothes\n>g mittens\n");
+    assertEquals(2, mappings.reload(), "one category removed, one changed");
+    mappings.reset();
+    assertArrayEquals(new String[] {"three", "two"}, mappings.getImageLocs(), "food removed");
+    assertEquals(0, mappings.findCategories("cherry").length, "nested categories removed");
+    assertEquals(0, mappings.reload(), "nothing changed");
+
+    CountDownLatch reloaded = new CountDownLatch(1);
+    mappings.startWatching(reloaded::countDown);
+    Files.writeString(config, "three hats\n>h hat\n>k cap\ntwo clothes\n>g mittens\n");
+    assertTrue(reloaded.await(10, TimeUnit.SECONDS), "change noticed");
+    mappings.stopWatching();
+    mappings.select("three");
+    assertEquals("cap", mappings.select("k"), "change applied");
+  } // testReload()
+
+  /**
+   * Make sure that a reload keeps the changes in the journal, both after an
+   * edit from outside and after a fold of the journal, and leaves the board
+   * as a restart would.
+   */
+  @Test
+  public void testReloadJournal() throws IOException {
+    Path config = Path.of(configFile(NESTED_CONFIG));
+    String journal = tempDir.resolve("reloadJournal").toString();
+    AACMappings mappings = new AACMappings(config.toString());
+    mappings.openJournal(journal);
+    mappings.select("food");
+    mappings.addItem("n", "nut");
+    Files.writeString(config, NESTED_CONFIG.replace(">e egg\n", ">e egg\n>x extra\n"));
+    assertEquals(1, mappings.reload(), "food changed");
+    String[] expected = {"a", "fruit", "e", "x", "n"};
+    assertArrayEquals(expected, mappings.getImageLocs(), "journaled item kept");
+    AACMappings restarted = new AACMappings(config.toString());
+    restarted.openJournal(journal);
+    restarted.select("food");
+    assertArrayEquals(expected, restarted.getImageLocs(), "same board after a restart");
+
+    mappings.addItem("k", "kiwi");
+    CompletableFuture<Void> fold = mappings.compactJournal();
+    mappings.addItem("p", "pear");
+    fold.join();
+    assertTrue(mappings.reload() > 0, "fold rewrote food");
+    expected = new String[] {"a", "fruit", "e", "x", "n", "k", "p"};
+    assertArrayEquals(expected, mappings.getImageLocs(), "item added during the fold kept");
+    assertEquals("pear", mappings.select("p"), "its text kept");
+    restarted = new AACMappings(config.toString());
+    restarted.openJournal(journal);
+    restarted.select("food");
+    assertArrayEquals(expected, restarted.getImageLocs(), "same board after the fold");
+  } // testReloadJournal()
+
+  /**
+   * Make sure that a board with both a journal and a watcher, as the
+   * application runs it, keeps the changes made while the journal is
+   * folded once the watcher reloads the rewritten file.
+   */
+  @Test
+  public void testWatchJournal() throws IOException, InterruptedException {
+    Path config = Path.of(configFile(NESTED_CONFIG));
+    AACMappings mappings = new AACMappings(config.toString(), AACMappings.LoadMode.STREAMING);
+    mappings.openJournal(tempDir.resolve("watchJournal").toString());
+    CountDownLatch reloaded = new CountDownLatch(1);
+    mappings.startWatching(reloaded::countDown);
+    mappings.select("two");
+    mappings.addItem("k", "kilt");
+    CompletableFuture<Void> fold = mappings.compactJournal();
+    mappings.addItem("s", "scarf");
+    fold.join();
+    assertTrue(reloaded.await(10, TimeUnit.SECONDS), "rewritten file reloaded");
+    mappings.stopWatching();
+    assertArrayEquals(new String[] {"g", "k", "s"}, mappings.getImageLocs(),
+        "changes before and during the fold kept");
+  } // testWatchJournal()
+
+  /**
+   * Make sure that the text given to an image is offered again when the
+   * image is added to another board using the vocabulary, once the first
+   * board has closed it.
+   */
+  @Test
+  public void testVocabulary() throws IOException {
+    String vocabulary = tempDir.resolve("vocabulary").toString();
+    AACMappings mappings = new AACMappings(configFile(NESTED_CONFIG));
+    mappings.openVocabulary(vocabulary);
+    assertEquals("", mappings.suggestText("k"), "nothing known yet");
+    mappings.select("food");
+    assertEquals("egg", mappings.suggestText("e"), "text on the page");
+    mappings.addItem("k", "kiwi");
+    mappings.reset();
+    mappings.addItem("h", "hats");
+
+    AACMappings other = new AACMappings(configFile("one one\n"));
+    other.openVocabulary(vocabulary);
+    assertEquals("", other.suggestText("k"), "vocabulary open in the first board");
+    mappings.closeVocabulary();
+    other.openVocabulary(vocabulary);
+    other.select("one");
+    assertEquals("kiwi", other.suggestText("k"), "item from the other board");
+    assertEquals("hats", other.suggestText("h"), "category from the other board");
+    other.addItem("k", "kiwi fruit");
+    assertEquals("kiwi fruit", other.suggestText("k"), "text on the page");
+    other.reset();
+    assertEquals("kiwi fruit", other.suggestText("k"), "latest text");
+    other.closeVocabulary();
+  } // testVocabulary()
+} // class TestAACMappings
@@ -0,0 +1,277 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.grinnell.csc207.util.AssociativeArray;
+import edu.grinnell.csc207.util.KVPair;
+import edu.grinnell.csc207.util.KeyNotFoundException;
+import edu.grinnell.csc207.util.NullKeyException;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of AssociativeArray.
+ *
+ * @author Moise Milenge
+ */
+public class TestAssociativeArray {
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * A key whose hash code is chosen by the test, so that keys can be made
+   * to collide.
+   */
+  static class Key {
+    final String name;
+    final int hash;
+
+    Key(String name, int hash) {
+      this.name = name;
+      this.hash = hash;
+    } // Key(String, int)
+
+    @Override
+    public int hashCode() {
+      return this.hash;
+    } // hashCode()
+
+    @Override
+    public boolean equals(Object other) {
+      return (other instanceof Key) && ((Key) other).name.equals(this.name);
+    } // equals(Object)
+  } // class Key
+
+  /**
+   * Build an associative array mapping "key-i" to i for i in [0, n).
+   */
+  static AssociativeArray<String, Integer> numbered(int n) throws NullKeyException {
+    AssociativeArray<String, Integer> map = new AssociativeArray<>(1);
+    for (int i = 0; i < n; i++) {
+      map.set("key-" + i, i);
+    } // for
+    return map;
+  } // numbered(int)
+
+  // +-------+-------------------------------------------------------
+  // | Tests |
+  // +-------+
+
+  /**
+   * Are all keys still found after the array has grown, and its index been
+   * rebuilt, many times?
+   */
+  @Test
+  void testGetAfterGrowth() throws Exception {
+    AssociativeArray<String, Integer> map = numbered(10_000);
+    assertEquals(10_000, map.size(), "size after adding");
+    for (int i = 0; i < 10_000; i++) {
+      assertEquals(i, (int) map.get("key-" + i), "key-" + i);
+    } // for
+    assertFalse(map.hasKey("key-10000"), "a key never added");
+    assertThrows(KeyNotFoundException.class, () -> map.get("missing"));
+  } // testGetAfterGrowth()
+
+  /**
+   * Does setting an existing key update it in place?
+   */
+  @Test
+  void testUpdate() throws Exception {
+    AssociativeArray<String, Integer> map = numbered(3);
+    map.set("key-1", 100);
+    assertEquals(3, map.size(), "updating does not add");
+    assertEquals(100, (int) map.get("key-1"), "updated value");
+    assertEquals("key-1", map.keyAt(1), "updating keeps the position");
+  } // testUpdate()
+
+  /**
+   * Are keys with equal hash codes kept apart, before and after removals
+   * in the middle of their probe sequence?
+   */
+  @Test
+  void testCollisions() throws Exception {
+    AssociativeArray<Key, Integer> map = new AssociativeArray<>();
+    Key[] keys = new Key[50];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = new Key("k" + i, 42);
+      map.set(keys[i], i);
+    } // for
+    for (int i = 0; i < keys.length; i++) {
+      assertEquals(i, (int) map.get(keys[i]), "colliding key " + i);
+    } // for
+
+    for (int i = 0; i < keys.length; i += 3) {
+      map.remove(keys[i]);
+    } // for
+    for (int i = 0; i < keys.length; i++) {
+      assertEquals(i % 3 != 0, map.hasKey(keys[i]), "colliding key " + i + " after removals");
+      if (i % 3 != 0) {
+        assertEquals(i, (int) map.get(keys[i]), "value of colliding key " + i);
+      } // if
+    } // for
+    assertFalse(map.hasKey(new Key("other", 42)), "an absent key with the same hash");
+  } // testCollisions()
+
+  /**
+   * Does a removed key come back at the end, and do the others keep their
+   * order?
+   */
+  @Test
+  void testRemoveReAdd() throws Exception {
+    AssociativeArray<String, Integer> map = numbered(4);
+    map.remove("key-1");
+    map.remove("key-1");
+    assertEquals(3, map.size(), "removing twice removes once");
+    assertFalse(map.hasKey("key-1"), "removed key");
+    map.set("key-1", 1);
+    assertArrayEquals(new Object[] {"key-0", "key-2", "key-3", "key-1"}, map.keys(),
+        "a key added again goes last");
+    assertEquals(1, (int) map.get("key-1"), "value of the key added again");
+  } // testRemoveReAdd()
+
+  /**
+   * Are order and lookups kept when removals leave enough empty slots to
+   * compact the array?
+   */
+  @Test
+  void testCompaction() throws Exception {
+    AssociativeArray<String, Integer> map = numbered(1_000);
+    for (int i = 0; i < 1_000; i++) {
+      if (i % 10 != 0) {
+        map.remove("key-" + i);
+      } // if
+    } // for
+    assertEquals(100, map.size(), "size after removals");
+    for (int i = 0; i < 100; i++) {
+      assertEquals("key-" + (i * 10), map.keyAt(i), "order after compaction");
+      assertEquals(i * 10, (int) map.get("key-" + (i * 10)), "lookup after compaction");
+    } // for
+    map.set("new", -1);
+    assertEquals("new", map.keyAt(100), "adding after compaction");
+    assertTrue(map.hasKey("key-990"), "last surviving key");
+  } // testCompaction()
+
+  /**
+   * Do the traversals all skip removed pairs and agree on the order?
+   */
+  @Test
+  void testTraversal() throws Exception {
+    AssociativeArray<String, Integer> map = numbered(5);
+    map.remove("key-0");
+    map.remove("key-3");
+    String[] expected = {"key-1", "key-2", "key-4"};
+
+    StringBuilder visited = new StringBuilder();
+    map.forEach((key, value) -> visited.append(key).append('=').append(value).append(' '));
+    assertEquals("key-1=1 key-2=2 key-4=4 ", visited.toString(), "forEach");
+
+    StringBuilder iterated = new StringBuilder();
+    for (KVPair<String, Integer> pair : map) {
+      iterated.append(pair.getKey()).append(' ');
+    } // for
+    assertEquals("key-1 key-2 key-4 ", iterated.toString(), "iterator");
+
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals(expected[i], map.keyAt(i), "keyAt(" + i + ")");
+      assertEquals(Integer.valueOf(expected[i].substring(4)), map.valueAt(i),
+          "valueAt(" + i + ")");
+    } // for
+    assertThrows(IndexOutOfBoundsException.class, () -> map.keyAt(3));
+    assertThrows(IndexOutOfBoundsException.class, () -> map.valueAt(-1));
+  } // testTraversal()
+
+  /**
+   * Do keysInto and valuesInto fill an array that is large enough, and
+   * replace one that is not?
+   */
+  @Test
+  void testInto() throws Exception {
+    AssociativeArray<String, Integer> map = numbered(3);
+    String[] big = new String[4];
+    assertSame(big, map.keysInto(big), "a large enough array is used");
+    assertArrayEquals(new String[] {"key-0", "key-1", "key-2", null}, big, "keys copied");
+
+    Integer[] small = new Integer[1];
+    Integer[] values = map.valuesInto(small);
+    assertNotSame(small, values, "a small array is replaced");
+    assertArrayEquals(new Integer[] {0, 1, 2}, values, "values copied");
+  } // testInto()
+
+  /**
+   * Does ensureCapacity grow the array once up front, and trimToSize
+   * release what is not in use, without losing any pairs?
+   */
+  @Test
+  void testCapacity() throws Exception {
+    AssociativeArray<String, Integer> map = new AssociativeArray<>(0);
+    map.ensureCapacity(1_000);
+    long reserved = map.footprint().arrayBytes();
+    for (int i = 0; i < 1_000; i++) {
+      map.set("key-" + i, i);
+    } // for
+    assertEquals(reserved, map.footprint().arrayBytes(), "no growth within the capacity");
+    map.ensureCapacity(10);
+    assertEquals(reserved, map.footprint().arrayBytes(), "a smaller capacity is ignored");
+
+    for (int i = 100; i < 1_000; i++) {
+      map.remove("key-" + i);
+    } // for
+    map.trimToSize();
+    assertTrue(map.footprint().arrayBytes() < reserved / 4, "trimming releases capacity");
+    for (int i = 0; i < 100; i++) {
+      assertEquals(i, (int) map.get("key-" + i), "key-" + i + " after trimming");
+    } // for
+    map.set("key-100", 100);
+    assertEquals("key-100", map.keyAt(100), "adding after trimming");
+
+    AssociativeArray<String, Integer> empty = new AssociativeArray<>();
+    empty.trimToSize();
+    empty.set("only", 1);
+    assertEquals(1, (int) empty.get("only"), "adding to a trimmed empty array");
+  } // testCapacity()
+
+  /**
+   * Does setAll behave like set on each pair in turn?
+   */
+  @Test
+  void testSetAll() throws Exception {
+    AssociativeArray<String, Integer> map = numbered(2);
+    String[] keys = {"key-1", "a", "b", "a", "unused"};
+    Integer[] values = {10, 1, 2, 3, 99};
+    map.setAll(keys, values, 4);
+    assertArrayEquals(new Object[] {"key-0", "key-1", "a", "b"}, map.keys(),
+        "new keys go last, in order");
+    assertEquals(10, (int) map.get("key-1"), "an existing key is updated");
+    assertEquals(3, (int) map.get("a"), "a later duplicate wins");
+    assertFalse(map.hasKey("unused"), "only count pairs are used");
+
+    AssociativeArray<String, Integer> other = numbered(4);
+    other.remove("key-2");
+    other.set("key-0", -1);
+    map.setAll(other);
+    assertArrayEquals(new Object[] {"key-0", "key-1", "a", "b", "key-3"}, map.keys(),
+        "copying another array, which had a removal");
+    assertEquals(-1, (int) map.get("key-0"), "copied value");
+
+    String[] withNull = {"c", null, "d"};
+    assertThrows(NullKeyException.class, () -> map.setAll(withNull, new Integer[3], 3));
+    assertTrue(map.hasKey("c"), "pairs before the null key are set");
+    assertFalse(map.hasKey("d"), "pairs after the null key are not");
+  } // testSetAll()
+
+  /**
+   * Are null keys rejected by set and simply absent elsewhere?
+   */
+  @Test
+  void testNullKey() throws Exception {
+    AssociativeArray<String, Integer> map = numbered(2);
+    assertThrows(NullKeyException.class, () -> map.set(null, 0));
+    assertFalse(map.hasKey(null), "null is never a key");
+    map.remove(null);
+    assertEquals(2, map.size(), "removing null changes nothing");
+  } // testNullKey()
+} // class TestAssociativeArray
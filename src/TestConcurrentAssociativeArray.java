@@ -0,0 +1,124 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.grinnell.csc207.util.ConcurrentAssociativeArray;
+import edu.grinnell.csc207.util.KVPair;
+import edu.grinnell.csc207.util.KeyNotFoundException;
+import edu.grinnell.csc207.util.NullKeyException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of ConcurrentAssociativeArray.
+ *
+ * @author Moise Milenge
+ */
+public class TestConcurrentAssociativeArray {
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Build an associative array mapping "key-i" to i for i in [0, n).
+   */
+  static ConcurrentAssociativeArray<String, Integer> numbered(int n) throws NullKeyException {
+    ConcurrentAssociativeArray<String, Integer> map = new ConcurrentAssociativeArray<>();
+    for (int i = 0; i < n; i++) {
+      map.set("key-" + i, i);
+    } // for
+    return map;
+  } // numbered(int)
+
+  // +-------+-------------------------------------------------------
+  // | Tests |
+  // +-------+
+
+  /**
+   * Do set, get and remove behave like those of AssociativeArray, keeping
+   * the order of the keys?
+   */
+  @Test
+  void testBasics() throws Exception {
+    ConcurrentAssociativeArray<String, Integer> map = numbered(100);
+    map.set("key-5", 50);
+    map.remove("key-7");
+    map.remove("missing");
+    assertEquals(50, (int) map.get("key-5"), "updated");
+    assertFalse(map.hasKey("key-7"), "removed");
+    assertEquals(99, map.size(), "size");
+    assertThrows(KeyNotFoundException.class, () -> map.get("key-7"));
+    assertThrows(NullKeyException.class, () -> map.set(null, 1));
+    for (int i = 0; i < 90; i++) {
+      map.remove("key-" + i);
+    } // for
+    map.set("new", 0);
+    assertArrayEquals(new Object[] {"key-90", "key-91", "key-92", "key-93", "key-94", "key-95",
+        "key-96", "key-97", "key-98", "key-99", "new"}, map.keys(), "order after compaction");
+  } // testBasics()
+
+  /**
+   * Can the array be changed while it is being traversed?
+   */
+  @Test
+  void testTraversal() throws Exception {
+    ConcurrentAssociativeArray<String, Integer> map = numbered(10);
+    int seen = 0;
+    for (KVPair<String, Integer> pair : map) {
+      map.remove(pair.getKey());
+      map.set("more-" + pair.getKey(), 0);
+      seen++;
+    } // for
+    assertEquals(10, seen, "pairs present at the start");
+    assertEquals(10, map.size(), "size after");
+    AtomicInteger sum = new AtomicInteger();
+    map.forEach((key, value) -> {
+      sum.addAndGet(value + 1);
+      map.remove(key);
+    });
+    assertEquals(10, sum.get(), "forEach sees each pair once");
+    assertEquals(0, map.size(), "forEach may remove");
+  } // testTraversal()
+
+  /**
+   * Do readers always find the keys that are never removed while a
+   * writer adds and removes others?
+   */
+  @Test
+  void testConcurrentReads() throws Exception {
+    ConcurrentAssociativeArray<String, Integer> map = numbered(64);
+    AtomicInteger misses = new AtomicInteger();
+    Thread[] readers = new Thread[4];
+    for (int t = 0; t < readers.length; t++) {
+      readers[t] = new Thread(() -> {
+        for (int round = 0; round < 2000; round++) {
+          for (int i = 0; i < 64; i++) {
+            if (!map.hasKey("key-" + i)) {
+              misses.incrementAndGet();
+            } // if
+          } // for
+          for (KVPair<String, Integer> pair : map) {
+            if (pair.getValue() == null) {
+              misses.incrementAndGet();
+            } // if
+          } // for
+        } // for
+      });
+      readers[t].start();
+    } // for
+    for (int i = 0; i < 20000; i++) {
+      map.set("temp-" + i, i);
+      if (i >= 100) {
+        map.remove("temp-" + (i - 100));
+      } // if
+    } // for
+    for (Thread reader : readers) {
+      reader.join();
+    } // for
+    assertEquals(0, misses.get(), "no lookups missed");
+    assertEquals(164, map.size(), "size");
+    assertTrue(map.footprint().totalBytes() > 0, "footprint");
+  } // testConcurrentReads()
+} // class TestConcurrentAssociativeArray
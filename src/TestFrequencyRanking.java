@@ -0,0 +1,104 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import edu.grinnell.csc207.util.FrequencyRanking;
+import edu.grinnell.csc207.util.NullKeyException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of FrequencyRanking.
+ *
+ * @author Moise Milenge
+ */
+public class TestFrequencyRanking {
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Build a ranking of "key-i" for i in [0, n), on a clock that stands
+   * still.
+   */
+  static FrequencyRanking numbered(int n) throws NullKeyException {
+    FrequencyRanking ranking = new FrequencyRanking(1000, () -> 0L);
+    for (int i = 0; i < n; i++) {
+      ranking.add("key-" + i);
+    } // for
+    return ranking;
+  } // numbered(int)
+
+  // +-------+-------------------------------------------------------
+  // | Tests |
+  // +-------+
+
+  /**
+   * Do uses rank the keys, with ties in the order the keys were added?
+   */
+  @Test
+  void testUse() throws Exception {
+    FrequencyRanking ranking = numbered(4);
+    ranking.use("key-2");
+    ranking.use("key-3");
+    ranking.use("key-3");
+    ranking.use("missing");
+    assertArrayEquals(new String[] {"key-3", "key-2", "key-0", "key-1"}, ranking.keys(),
+        "ranked by use");
+    assertEquals(2.0, ranking.score("key-3"), 1e-9, "two uses");
+    assertThrows(NullKeyException.class, () -> ranking.add(null));
+  } // testUse()
+
+  /**
+   * Do removals keep the order of the other keys, and do uses, additions
+   * and lookups work across the empty slots they leave?
+   */
+  @Test
+  void testRemove() throws Exception {
+    FrequencyRanking ranking = numbered(1_000);
+    ranking.use("key-500");
+    int count = ranking.modCount();
+    for (int i = 0; i < 1_000; i += 2) {
+      ranking.remove("key-" + i);
+    } // for
+    ranking.remove("key-0");
+    assertEquals(500, ranking.size(), "size after removals");
+    assertEquals(count + 500, ranking.modCount(), "each removal counts once");
+    String[] keys = ranking.keys();
+    for (int i = 0; i < 500; i++) {
+      assertEquals("key-" + (2 * i + 1), keys[i], "order after removals");
+    } // for
+    assertEquals(0.0, ranking.score("key-500"), 0, "a removed key has no score");
+
+    ranking.use("key-999");
+    assertEquals("key-999", ranking.keys()[0], "a use moves past the empty slots");
+    ranking.add("key-0");
+    assertEquals("key-0", ranking.keys()[500], "a key added again goes last");
+    assertEquals(501, ranking.size(), "size after adding again");
+  } // testRemove()
+
+  /**
+   * Do the saved scores survive a removal, and load into another ranking?
+   */
+  @Test
+  void testSaveLoad() throws Exception {
+    FrequencyRanking ranking = numbered(5);
+    ranking.use("key-1");
+    ranking.use("key-3");
+    ranking.use("key-3");
+    ranking.remove("key-1");
+    ranking.remove("key-2");
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ranking.save(new DataOutputStream(bytes));
+
+    FrequencyRanking other = numbered(5);
+    other.remove("key-0");
+    other.load(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    assertArrayEquals(new String[] {"key-3", "key-1", "key-2", "key-4"}, other.keys(),
+        "loaded scores");
+    assertEquals(2.0, other.score("key-3"), 1e-6, "loaded score");
+  } // testSaveLoad()
+} // class TestFrequencyRanking
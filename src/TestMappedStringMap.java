@@ -0,0 +1,153 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.grinnell.csc207.util.KeyNotFoundException;
+import edu.grinnell.csc207.util.MappedStringMap;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of MappedStringMap.
+ *
+ * @author Moise Milenge
+ */
+public class TestMappedStringMap {
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Create an empty file for a map, deleted when the tests end.
+   */
+  static Path mapFile() throws IOException {
+    Path file = Files.createTempFile("TestMappedStringMap", ".map");
+    file.toFile().deleteOnExit();
+    return file;
+  } // mapFile()
+
+  // +-------+-------------------------------------------------------
+  // | Tests |
+  // +-------+
+
+  /**
+   * Are the entries, their order and null values all there when the file
+   * is opened again, after it has grown?
+   */
+  @Test
+  void testReopen() throws Exception {
+    Path file = mapFile();
+    MappedStringMap map = MappedStringMap.open(file.toString());
+    for (int i = 0; i < 5_000; i++) {
+      map.set("img-" + i, "text " + i);
+    } // for
+    map.set("img-1", "changed");
+    map.set("none", null);
+    map.set("caf\u00e9", "");
+    map.remove("img-0");
+    map.close();
+
+    MappedStringMap reopened = MappedStringMap.open(file.toString());
+    assertEquals(5_001, reopened.size(), "size");
+    assertEquals("img-1", reopened.keys()[0], "order");
+    assertEquals("changed", reopened.get("img-1"), "updated value");
+    assertEquals("text 4999", reopened.get("img-4999"), "last value");
+    assertNull(reopened.get("none"), "null value");
+    assertEquals("", reopened.get("caf\u00e9"), "empty value");
+    assertFalse(reopened.hasKey("img-0"), "removed key");
+    assertThrows(KeyNotFoundException.class, () -> reopened.get("img-0"));
+    reopened.close();
+
+    Files.writeString(file, "not a map file");
+    assertThrows(IOException.class, () -> MappedStringMap.open(file.toString()));
+  } // testReopen()
+
+  /**
+   * Can a file be open in only one map at a time, so that two maps cannot
+   * overwrite each other's header?
+   */
+  @Test
+  void testSingleOwner() throws Exception {
+    Path file = mapFile();
+    MappedStringMap map = MappedStringMap.open(file.toString());
+    map.set("img", "first");
+    assertThrows(IOException.class, () -> MappedStringMap.open(file.toString()));
+    map.set("more", "still works");
+    map.close();
+
+    MappedStringMap next = MappedStringMap.open(file.toString());
+    assertEquals(2, next.size(), "size after the failed open");
+    assertEquals("still works", next.get("more"), "value");
+    next.close();
+  } // testSingleOwner()
+
+  /**
+   * Does a map whose entries keep coming and going stop growing, and keep
+   * the order and values of the entries that stay?
+   */
+  @Test
+  void testReclaimRemoved() throws Exception {
+    Path file = mapFile();
+    MappedStringMap map = MappedStringMap.open(file.toString());
+    map.set("first", "stays");
+    long sizeAfterFirstRound = 0;
+    for (int round = 0; round < 50; round++) {
+      for (int i = 0; i < 1_000; i++) {
+        map.set("img-" + round + "-" + i, "text " + i);
+      } // for
+      for (int i = 0; i < 1_000; i++) {
+        map.remove("img-" + round + "-" + i);
+      } // for
+      map.set("last-" + round, "round " + round);
+      if (round == 0) {
+        sizeAfterFirstRound = Files.size(file);
+      } // if
+    } // for
+    assertTrue(Files.size(file) <= 2 * sizeAfterFirstRound,
+        "file size " + Files.size(file) + " against " + sizeAfterFirstRound);
+    assertEquals(51, map.size(), "size");
+    String[] keys = map.keys();
+    assertEquals("first", keys[0], "first key kept first");
+    for (int round = 0; round < 50; round++) {
+      assertEquals("last-" + round, keys[round + 1], "order of the kept keys");
+      assertEquals("round " + round, map.get("last-" + round), "value of a kept key");
+    } // for
+    map.close();
+
+    MappedStringMap reopened = MappedStringMap.open(file.toString());
+    assertEquals("stays", reopened.get("first"), "kept key after reopening");
+    assertEquals(51, reopened.size(), "size after reopening");
+    reopened.close();
+  } // testReclaimRemoved()
+
+  /**
+   * Does replacing values over and over, longer and shorter, keep the file
+   * from growing, and leave every value right?
+   */
+  @Test
+  void testReclaimReplaced() throws Exception {
+    Path file = mapFile();
+    MappedStringMap map = MappedStringMap.open(file.toString());
+    for (int i = 0; i < 100; i++) {
+      map.set("img-" + i, "text " + i);
+    } // for
+    long initialSize = Files.size(file);
+    for (int n = 0; n < 20_000; n++) {
+      map.set("img-" + (n % 100), "x".repeat(n % 200 + 1));
+    } // for
+    assertTrue(Files.size(file) <= 2 * initialSize,
+        "file size " + Files.size(file) + " against " + initialSize);
+    String[] expected = new String[100];
+    for (int i = 0; i < 100; i++) {
+      expected[i] = "img-" + i;
+      assertEquals("x".repeat((19_900 + i) % 200 + 1), map.get("img-" + i), "img-" + i);
+    } // for
+    assertArrayEquals(expected, map.keys(), "order kept");
+    map.close();
+  } // testReclaimReplaced()
+} // class TestMappedStringMap
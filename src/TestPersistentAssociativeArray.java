@@ -0,0 +1,88 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.grinnell.csc207.util.Footprint;
+import edu.grinnell.csc207.util.KeyNotFoundException;
+import edu.grinnell.csc207.util.NullKeyException;
+import edu.grinnell.csc207.util.PersistentAssociativeArray;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of PersistentAssociativeArray.
+ *
+ * @author Moise Milenge
+ */
+public class TestPersistentAssociativeArray {
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Build a version mapping "key-i" to i for i in [0, n).
+   */
+  static PersistentAssociativeArray<String, Integer> numbered(int n) throws NullKeyException {
+    PersistentAssociativeArray<String, Integer> map = new PersistentAssociativeArray<>();
+    for (int i = 0; i < n; i++) {
+      map = map.set("key-" + i, i);
+    } // for
+    return map;
+  } // numbered(int)
+
+  // +-------+-------------------------------------------------------
+  // | Tests |
+  // +-------+
+
+  /**
+   * Do set and remove leave the old version as it was?
+   */
+  @Test
+  void testVersions() throws Exception {
+    PersistentAssociativeArray<String, Integer> before = numbered(100);
+    PersistentAssociativeArray<String, Integer> after = before.set("key-5", 50).remove("key-7");
+    assertEquals(5, (int) before.get("key-5"), "old value kept");
+    assertTrue(before.hasKey("key-7"), "old key kept");
+    assertEquals(100, before.size(), "old size");
+    assertEquals(50, (int) after.get("key-5"), "new value");
+    assertFalse(after.hasKey("key-7"), "key removed");
+    assertEquals(99, after.size(), "new size");
+    assertThrows(KeyNotFoundException.class, () -> after.get("key-7"));
+    assertSame(after, after.remove("missing"), "removing a missing key changes nothing");
+    assertThrows(NullKeyException.class, () -> after.set(null, 1));
+  } // testVersions()
+
+  /**
+   * Are the keys listed in the order they were first set, even after
+   * removals?
+   */
+  @Test
+  void testOrder() throws Exception {
+    PersistentAssociativeArray<String, Integer> map = numbered(3).set("key-0", 9);
+    assertArrayEquals(new String[] {"key-0", "key-1", "key-2"}, map.keys(), "update keeps place");
+    map = numbered(200);
+    for (int i = 0; i < 190; i++) {
+      map = map.remove("key-" + i);
+    } // for
+    map = map.set("new", 0);
+    Object[] keys = map.keys();
+    assertEquals(11, keys.length, "size after compaction");
+    assertEquals("key-190", keys[0], "first left");
+    assertEquals("new", keys[10], "added last");
+  } // testOrder()
+
+  /**
+   * Does a new version share almost all of its memory with the old one?
+   */
+  @Test
+  void testSharing() throws Exception {
+    PersistentAssociativeArray<String, Integer> before = numbered(1000);
+    PersistentAssociativeArray<String, Integer> after = before.set("key-500", -1);
+    long alone = before.footprint().totalBytes();
+    Footprint both = before.footprint();
+    after.footprint(both);
+    assertTrue(both.totalBytes() < alone + 1000, "one change costs a path, not a copy");
+  } // testSharing()
+} // class TestPersistentAssociativeArray
@@ -0,0 +1,135 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.grinnell.csc207.util.Footprint;
+import edu.grinnell.csc207.util.SearchIndex;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of SearchIndex.
+ *
+ * @author Moise Milenge
+ */
+public class TestSearchIndex {
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Build an index of a few food tiles.
+   */
+  static SearchIndex food() throws Exception {
+    SearchIndex index = new SearchIndex();
+    index.add("food", "img/milk.png", "milk");
+    index.add("food", "img/cake.png", "cake");
+    index.add("food", "img/lime.png", "lime");
+    index.add("food", "img/sandwich.png", "sandwich");
+    index.add("food", "img/mill.png", "mill");
+    return index;
+  } // food()
+
+  /**
+   * Find the image of the best match for a query, or "" if none.
+   */
+  static String best(SearchIndex index, String query) {
+    SearchIndex.Result[] results = index.search(query, 1);
+    return (results.length == 0) ? "" : results[0].getImageLoc();
+  } // best(SearchIndex, String)
+
+  // +-------+-------------------------------------------------------
+  // | Tests |
+  // +-------+
+
+  /**
+   * Are words found when their first two letters are swapped, which
+   * leaves a short query no trigram in common with them?
+   */
+  @Test
+  void testTransposedStart() throws Exception {
+    SearchIndex index = food();
+    assertEquals("img/milk.png", best(index, "imlk"), "imlk");
+    assertEquals("img/cake.png", best(index, "acke"), "acke");
+    assertEquals("img/cake.png", best(index, "ACKE"), "case is ignored");
+    assertEquals("img/sandwich.png", best(index, "asndiwch"), "two swaps in eight letters");
+  } // testTransposedStart()
+
+  /**
+   * Do the words of about the same length still need to be within the
+   * allowed typos?
+   */
+  @Test
+  void testTooFar() throws Exception {
+    SearchIndex index = food();
+    assertEquals(0, index.search("ikml", 5).length, "two typos in four letters");
+    assertEquals(0, index.search("xyzw", 5).length, "nothing in common");
+    assertEquals("img/milk.png", best(index, "milk"), "exact match first");
+  } // testTooFar()
+
+  /**
+   * Are removed tiles left out of the words compared by length?
+   */
+  @Test
+  void testRemoved() throws Exception {
+    SearchIndex index = food();
+    index.remove("food", "img/cake.png");
+    assertEquals(0, index.search("acke", 5).length, "cake removed");
+    index.add("drinks", "img/cake2.png", "cake");
+    assertEquals("drinks", index.search("acke", 5)[0].getCategory(), "cake back elsewhere");
+  } // testRemoved()
+
+  /**
+   * Does adding all the tiles of another index find them as if they had
+   * been added one by one, replacing tiles that were already there?
+   */
+  @Test
+  void testAddAll() throws Exception {
+    SearchIndex index = new SearchIndex();
+    index.add("food", "img/milk.png", "old milk");
+    index.add("drinks", "img/water.png", "water");
+    SearchIndex other = food();
+    other.remove("food", "img/lime.png");
+    index.addAll(other);
+    assertEquals(5, index.size(), "size");
+    assertEquals("img/cake.png", best(index, "acke"), "a short word with a typo");
+    assertEquals("img/sandwich.png", best(index, "sandwhich"), "a long word with a typo");
+    assertEquals("img/water.png", best(index, "water"), "a tile that was there");
+    assertEquals(0, index.search("lime", 5).length, "a tile removed there");
+    assertEquals(0, index.search("old", 5).length, "a replaced tile");
+    assertEquals("img/milk.png", best(other, "milk"), "the other index is kept");
+  } // testAddAll()
+
+  /**
+   * Does the footprint grow with the tiles, counting each string once
+   * however many tiles share it?
+   */
+  @Test
+  void testFootprint() throws Exception {
+    long empty = new SearchIndex().footprint(new Footprint()).totalBytes();
+    SearchIndex index = food();
+    long food = index.footprint(new Footprint()).totalBytes();
+    assertTrue(food > empty, "tiles are counted");
+    for (int i = 0; i < 100; i++) {
+      index.add("more", "img/more" + i + ".png", "more food " + i);
+    } // for
+    assertTrue(index.footprint(new Footprint()).totalBytes() > food + 100 * 2 * 40,
+        "images, texts and postings are counted");
+
+    // Only words of up to ten letters are kept by length, which costs more
+    // than the one more trigram of an eleven-letter word
+    SearchIndex ten = new SearchIndex();
+    ten.add("", "img/a.png", "abcdefghij");
+    SearchIndex eleven = new SearchIndex();
+    eleven.add("", "img/a.png", "abcdefghijk");
+    assertTrue(ten.footprint(new Footprint()).arrayBytes()
+        > eleven.footprint(new Footprint()).arrayBytes(), "length buckets are counted");
+
+    Footprint shared = new Footprint();
+    String category = "more";
+    shared.addOther(category, 0);
+    long before = shared.totalBytes();
+    index.footprint(shared);
+    Footprint alone = index.footprint(new Footprint());
+    assertEquals(alone.totalBytes(), shared.totalBytes() - before + Footprint.stringSize(category),
+        "a string already counted is not counted again");
+  } // testFootprint()
+} // class TestSearchIndex
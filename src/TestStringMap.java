@@ -0,0 +1,166 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.grinnell.csc207.util.KeyNotFoundException;
+import edu.grinnell.csc207.util.NullKeyException;
+import edu.grinnell.csc207.util.StringMap;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of StringMap.
+ *
+ * @author Moise Milenge
+ */
+public class TestStringMap {
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Build a map from "img-i" to "text i" for i in [0, n).
+   */
+  static StringMap numbered(int n) throws NullKeyException {
+    StringMap map = new StringMap(1);
+    for (int i = 0; i < n; i++) {
+      map.set("img-" + i, "text " + i);
+    } // for
+    return map;
+  } // numbered(int)
+
+  // +-------+-------------------------------------------------------
+  // | Tests |
+  // +-------+
+
+  /**
+   * Are all keys still found after the map has grown many times?
+   */
+  @Test
+  void testGetAfterGrowth() throws Exception {
+    StringMap map = numbered(10_000);
+    assertEquals(10_000, map.size(), "size after adding");
+    for (int i = 0; i < 10_000; i++) {
+      assertEquals("text " + i, map.get("img-" + i), "img-" + i);
+    } // for
+    assertFalse(map.hasKey("img-10000"), "a key never added");
+    assertThrows(KeyNotFoundException.class, () -> map.get("missing"));
+    assertThrows(NullKeyException.class, () -> map.set(null, "x"));
+  } // testGetAfterGrowth()
+
+  /**
+   * Does the modification count follow the keys but not the values?
+   */
+  @Test
+  void testModCount() throws Exception {
+    StringMap map = numbered(3);
+    int count = map.modCount();
+    map.set("img-1", "changed");
+    assertEquals(count, map.modCount(), "updating a value");
+    assertEquals("changed", map.valueAt(1), "updated in place");
+    map.set("img-3", "text 3");
+    assertFalse(count == map.modCount(), "adding a key");
+    count = map.modCount();
+    map.remove("img-0");
+    assertFalse(count == map.modCount(), "removing a key");
+    count = map.modCount();
+    map.remove("img-0");
+    assertEquals(count, map.modCount(), "removing an absent key");
+  } // testModCount()
+
+  /**
+   * Does a removed key come back at the end, and do the others keep their
+   * order?
+   */
+  @Test
+  void testRemoveReAdd() throws Exception {
+    StringMap map = numbered(4);
+    map.remove("img-1");
+    assertEquals(3, map.size(), "size after removal");
+    assertFalse(map.hasKey("img-1"), "removed key");
+    map.set("img-1", "again");
+    assertArrayEquals(new String[] {"img-0", "img-2", "img-3", "img-1"}, map.keys(),
+        "a key added again goes last");
+    assertArrayEquals(new String[] {"text 0", "text 2", "text 3", "again"}, map.values(),
+        "values follow their keys");
+  } // testRemoveReAdd()
+
+  /**
+   * Does forEach skip removed entries and follow insertion order?
+   */
+  @Test
+  void testForEach() throws Exception {
+    StringMap map = numbered(4);
+    map.remove("img-2");
+    StringBuilder visited = new StringBuilder();
+    map.forEach((key, value) -> visited.append(key).append('=').append(value).append(';'));
+    assertEquals("img-0=text 0;img-1=text 1;img-3=text 3;", visited.toString(), "forEach");
+  } // testForEach()
+
+  /**
+   * Does ensureCapacity grow the map once up front, and trimToSize release
+   * what is not in use, without losing any entries?
+   */
+  @Test
+  void testCapacity() throws Exception {
+    StringMap map = new StringMap(0);
+    map.ensureCapacity(1_000);
+    long reserved = map.footprint().arrayBytes();
+    for (int i = 0; i < 1_000; i++) {
+      map.set("img-" + i, "text " + i);
+    } // for
+    assertEquals(reserved, map.footprint().arrayBytes(), "no growth within the capacity");
+
+    for (int i = 100; i < 1_000; i++) {
+      map.remove("img-" + i);
+    } // for
+    map.trimToSize();
+    assertTrue(map.footprint().arrayBytes() < reserved / 4, "trimming releases capacity");
+    for (int i = 0; i < 100; i++) {
+      assertEquals("text " + i, map.get("img-" + i), "img-" + i + " after trimming");
+    } // for
+    map.set("img-100", "text 100");
+    assertEquals("img-100", map.keyAt(100), "adding after trimming");
+  } // testCapacity()
+
+  /**
+   * Does setAll behave like set on each entry in turn?
+   */
+  @Test
+  void testSetAll() throws Exception {
+    StringMap map = numbered(2);
+    map.setAll(new String[] {"img-1", "a", "a", "unused"},
+        new String[] {"changed", "first", "second", "x"}, 3);
+    assertArrayEquals(new String[] {"img-0", "img-1", "a"}, map.keys(), "keys after setAll");
+    assertArrayEquals(new String[] {"text 0", "changed", "second"}, map.values(),
+        "an existing key is updated and a later duplicate wins");
+
+    StringMap other = numbered(4);
+    other.remove("img-2");
+    map.setAll(other);
+    assertArrayEquals(new String[] {"img-0", "img-1", "a", "img-3"}, map.keys(),
+        "copying another map, which had a removal");
+    assertEquals("text 1", map.get("img-1"), "copied value");
+  } // testSetAll()
+
+  /**
+   * Are order and lookups kept when removals leave enough empty slots to
+   * compact the map?
+   */
+  @Test
+  void testCompaction() throws Exception {
+    StringMap map = numbered(1_000);
+    for (int i = 0; i < 1_000; i++) {
+      if (i % 10 != 0) {
+        map.remove("img-" + i);
+      } // if
+    } // for
+    assertEquals(100, map.size(), "size after removals");
+    for (int i = 0; i < 100; i++) {
+      assertEquals("img-" + (i * 10), map.keyAt(i), "order after compaction");
+      assertEquals("text " + (i * 10), map.get("img-" + (i * 10)), "lookup after compaction");
+    } // for
+    assertThrows(IndexOutOfBoundsException.class, () -> map.keyAt(100));
+  } // testCompaction()
+} // class TestStringMap
@@ -1,12 +1,19 @@
 package edu.grinnell.csc207.util;
 
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.function.BiConsumer;
 
 /**
  * A basic implementation of associative arrays, which store key-value pairs
  * and allow lookup of values by key. The associative array is implemented
- * as a dynamically expanding array of {@link KVPair} objects.
+ * as a dynamically expanding array of {@link KVPair} objects, kept in
+ * insertion order, together with an open-addressing hash index over that
+ * array so that lookups take expected constant time. Removing a pair
+ * leaves an empty slot in the array rather than moving other pairs, so
+ * removal keeps the order of the remaining pairs; the array is compacted
+ * once empty slots outnumber pairs, or before positional access.
  *
  * @param <K> the type of keys maintained by this associative array
  * @param <V> the type of mapped values
@@ -17,18 +24,58 @@ import java.util.NoSuchElementException;
 public class AssociativeArray<K, V> implements Iterable<KVPair<K, V>> {
 
     private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * The key-value pairs, in insertion order. Only the first
+     * {@code used} entries are in use; removed pairs leave null entries.
+     */
     private KVPair<K, V>[] pairs;
+
+    /**
+     * The cached (spread) hash code of the key in the corresponding
+     * entry of {@code pairs}.
+     */
+    private int[] hashes;
+
+    /**
+     * The hash index. Each bucket holds one more than the position of a
+     * pair in {@code pairs}, or 0 if the bucket is empty. Collisions are
+     * resolved by linear probing. The length is always a power of two and
+     * at least twice {@code capacity} (see {@link HashIndex#tableSize}), so
+     * the index is never more than half full.
+     */
+    private int[] index;
+
     private int size;
+    private int used;
+    private int modCount; // Changes whenever a key is added or removed
     private int capacity;
 
     /**
      * Constructs an empty associative array with the default initial capacity.
      */
-    @SuppressWarnings("unchecked")
     public AssociativeArray() {
-        this.pairs = (KVPair<K, V>[]) new KVPair[DEFAULT_CAPACITY];
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs an empty associative array that can hold the given number
+     * of pairs before it needs to grow.
+     *
+     * @param initialCapacity the initial capacity
+     * @throws IllegalArgumentException if the capacity is negative
+     */
+    @SuppressWarnings("unchecked")
+    public AssociativeArray(int initialCapacity) {
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("Illegal capacity: " + initialCapacity);
+        }
+        this.pairs = (KVPair<K, V>[]) new KVPair[initialCapacity];
+        this.hashes = new int[initialCapacity];
+        this.index = new int[HashIndex.tableSize(initialCapacity)];
         this.size = 0;
-        this.capacity = DEFAULT_CAPACITY;
+        this.used = 0;
+        this.capacity = initialCapacity;
     }
 
     /**
@@ -44,18 +91,82 @@ public class AssociativeArray<K, V> implements Iterable<KVPair<K, V>> {
             throw new NullKeyException("Key cannot be null.");
         }
 
-        int pos = this.getKeyPos(key);
+        int hash = HashIndex.hash(key);
+        int pos = this.getKeyPos(key, hash);
         if (pos > -1) {
-            this.pairs[pos].set(key, value);
+            this.pairs[pos].setValue(value);
             return;
         }
 
-        if (size >= capacity) {
-            resize();
+        if (used >= capacity) {
+            // Reclaim empty slots if that frees enough room; otherwise grow.
+            resize(size < capacity / 2 ? capacity : Math.max(capacity * 2, DEFAULT_CAPACITY));
         }
 
-        this.pairs[size] = new KVPair<>(key, value);
+        this.pairs[used] = new KVPair<>(key, value);
+        this.hashes[used] = hash;
+        HashIndex.add(this.index, hash, used);
+        this.used++;
         this.size++;
+        this.modCount++;
+    }
+
+    /**
+     * Sets the first {@code count} keys to the corresponding values, as if
+     * by calling {@link #set} on each in turn, but growing the array at most
+     * once beforehand. Later duplicates of a key overwrite earlier ones.
+     *
+     * @param keys the keys to be added or updated
+     * @param values the values to be associated with the keys
+     * @param count the number of keys and values to use
+     * @throws NullKeyException if one of the keys is null; the pairs before
+     *         it have been set
+     */
+    public void setAll(K[] keys, V[] values, int count) throws NullKeyException {
+        this.ensureCapacity(this.size + count);
+        for (int i = 0; i < count; i++) {
+            this.set(keys[i], values[i]);
+        }
+    }
+
+    /**
+     * Sets every key of another associative array to its value there, in
+     * that array's order, growing this array at most once beforehand.
+     *
+     * @param other the associative array to copy pairs from
+     */
+    public void setAll(AssociativeArray<? extends K, ? extends V> other) {
+        this.ensureCapacity(this.size + other.size());
+        try {
+            for (int i = 0; i < other.size(); i++) {
+                this.set(other.keyAt(i), other.valueAt(i));
+            }
+        } catch (NullKeyException e) {
+            // Keys already in an associative array are never null.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Makes sure the associative array can hold at least the given number
+     * of pairs without growing again.
+     *
+     * @param minCapacity the desired minimum capacity
+     */
+    public void ensureCapacity(int minCapacity) {
+        if (minCapacity > this.capacity) {
+            this.resize(Math.max(minCapacity, this.capacity * 2));
+        }
+    }
+
+    /**
+     * Shrinks the underlying arrays to hold exactly the current pairs,
+     * releasing unused capacity.
+     */
+    public void trimToSize() {
+        if (this.size < this.capacity) {
+            this.resize(this.size);
+        }
     }
 
     /**
@@ -84,7 +195,8 @@ public class AssociativeArray<K, V> implements Iterable<KVPair<K, V>> {
     }
 
     /**
-     * Removes the key-value pair associated with the specified key.
+     * Removes the key-value pair associated with the specified key. The
+     * remaining pairs keep their order.
      *
      * @param key the key whose key-value pair is to be removed
      */
@@ -94,9 +206,16 @@ public class AssociativeArray<K, V> implements Iterable<KVPair<K, V>> {
             return; // Key not found, do nothing
         }
 
-        this.pairs[pos] = this.pairs[size - 1];
-        this.pairs[size - 1] = null;
+        int bucket = HashIndex.bucketOf(this.index, this.hashes, pos);
+        HashIndex.remove(this.index, this.hashes, bucket);
+        this.pairs[pos] = null;
         this.size--;
+        this.modCount++;
+        if (pos == this.used - 1) {
+            this.used--;
+        } else if (this.used - this.size > Math.max(this.size, DEFAULT_CAPACITY)) {
+            this.resize(this.capacity);
+        }
     }
 
     /**
@@ -109,11 +228,27 @@ public class AssociativeArray<K, V> implements Iterable<KVPair<K, V>> {
     }
 
     /**
-     * Returns an array of all keys in the associative array.
+     * Returns a count of the changes to the set of keys: it changes
+     * whenever a key is added or removed, but not when a value is updated.
+     * Callers can compare counts to tell whether something derived from
+     * the keys, such as a copy of {@link #keys()}, is still current.
+     *
+     * @return the modification count
+     */
+    public int modCount() {
+        return this.modCount;
+    }
+
+    /**
+     * Returns an array of all keys in the associative array. Since the
+     * array is created without knowing {@code K}, its runtime type is
+     * {@code Object[]}; use {@link #keysInto} for a typed array.
      *
      * @return an array of keys
      */
+    @SuppressWarnings("unchecked")
     public K[] keys() {
+        this.compact();
         K[] keysArray = (K[]) new Object[this.size];
         for (int i = 0; i < this.size; i++) {
             keysArray[i] = this.pairs[i].getKey();
@@ -121,6 +256,119 @@ public class AssociativeArray<K, V> implements Iterable<KVPair<K, V>> {
         return keysArray;
     }
 
+    /**
+     * Copies the keys into the given array, in insertion order. If the array
+     * is too small, a new array of the same runtime type is allocated.
+     *
+     * @param dest the array to copy into
+     * @return the array holding the keys, either {@code dest} or a new one
+     */
+    public K[] keysInto(K[] dest) {
+        this.compact();
+        if (dest.length < this.size) {
+            dest = Arrays.copyOf(dest, this.size);
+        }
+        for (int i = 0; i < this.size; i++) {
+            dest[i] = this.pairs[i].getKey();
+        }
+        return dest;
+    }
+
+    /**
+     * Copies the values into the given array, in the same order as the keys.
+     * If the array is too small, a new array of the same runtime type is
+     * allocated.
+     *
+     * @param dest the array to copy into
+     * @return the array holding the values, either {@code dest} or a new one
+     */
+    public V[] valuesInto(V[] dest) {
+        this.compact();
+        if (dest.length < this.size) {
+            dest = Arrays.copyOf(dest, this.size);
+        }
+        for (int i = 0; i < this.size; i++) {
+            dest[i] = this.pairs[i].getValue();
+        }
+        return dest;
+    }
+
+    /**
+     * Returns the key at the given position in insertion order. Together
+     * with {@link #valueAt(int)} and {@link #size()}, this lets callers walk
+     * the associative array without allocating an iterator. The first
+     * positional access after a removal compacts the array.
+     *
+     * @param i the position, between 0 (inclusive) and {@link #size()} (exclusive)
+     * @return the key at that position
+     * @throws IndexOutOfBoundsException if {@code i} is out of range
+     */
+    public K keyAt(int i) {
+        int pos = this.checkPos(i); // may compact, replacing the arrays
+        return this.pairs[pos].getKey();
+    }
+
+    /**
+     * Returns the value at the given position in insertion order.
+     *
+     * @param i the position, between 0 (inclusive) and {@link #size()} (exclusive)
+     * @return the value at that position
+     * @throws IndexOutOfBoundsException if {@code i} is out of range
+     */
+    public V valueAt(int i) {
+        int pos = this.checkPos(i); // may compact, replacing the arrays
+        return this.pairs[pos].getValue();
+    }
+
+    /**
+     * Calls the given action on each key and value, in insertion order,
+     * without allocating an iterator or exposing the underlying pairs.
+     *
+     * @param action the action to call
+     */
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        for (int i = 0; i < this.used; i++) {
+            KVPair<K, V> pair = this.pairs[i];
+            if (pair != null) {
+                action.accept(pair.getKey(), pair.getValue());
+            }
+        }
+    }
+
+    /**
+     * Estimates the memory retained by this associative array. Keys and
+     * values that are strings are counted; those of other types are not.
+     *
+     * @return the estimated footprint
+     */
+    public Footprint footprint() {
+        return this.footprint(new Footprint());
+    }
+
+    /**
+     * Adds the memory retained by this associative array to a footprint.
+     * Keys and values that are strings are counted; those of other types
+     * are not.
+     *
+     * @param total the footprint to add to
+     * @return {@code total}
+     */
+    public Footprint footprint(Footprint total) {
+        total.addOther(this, 3 * Footprint.REFERENCE + 4 * Integer.BYTES);
+        total.addArray(this.pairs, this.pairs.length, Footprint.REFERENCE, this.size);
+        total.addArray(this.hashes, this.hashes.length, Integer.BYTES, this.size);
+        total.addArray(this.index, this.index.length, Integer.BYTES, this.size);
+        for (int i = 0; i < this.used; i++) {
+            KVPair<K, V> pair = this.pairs[i];
+            if (pair != null) {
+                total.addPair(pair);
+                total.addKey(pair.getKey());
+                total.addValue(pair.getValue());
+            }
+        }
+        return total;
+    }
+
     /**
      * Creates an iterator to iterate through the key-value pairs in the associative array.
      *
@@ -136,7 +384,10 @@ public class AssociativeArray<K, V> implements Iterable<KVPair<K, V>> {
 
         @Override
         public boolean hasNext() {
-            return currentIndex < size;
+            while (currentIndex < used && pairs[currentIndex] == null) {
+                currentIndex++;
+            }
+            return currentIndex < used;
         }
 
         @Override
@@ -149,13 +400,50 @@ public class AssociativeArray<K, V> implements Iterable<KVPair<K, V>> {
     }
 
     /**
-     * Expands the underlying array to accommodate more key-value pairs.
+     * Moves the pairs, without empty slots, into arrays of the given
+     * capacity, which must be at least {@code size}. The index is rebuilt
+     * from the cached hash codes, so no key's {@code hashCode} or
+     * {@code equals} is called.
+     */
+    @SuppressWarnings("unchecked")
+    private void resize(int newCapacity) {
+        KVPair<K, V>[] newPairs = (KVPair<K, V>[]) new KVPair[newCapacity];
+        int[] newHashes = new int[newCapacity];
+        int n = 0;
+        for (int i = 0; i < this.used; i++) {
+            if (this.pairs[i] != null) {
+                newPairs[n] = this.pairs[i];
+                newHashes[n] = this.hashes[i];
+                n++;
+            }
+        }
+        this.pairs = newPairs;
+        this.hashes = newHashes;
+        this.used = n;
+        this.capacity = newCapacity;
+        this.index = HashIndex.rebuild(this.hashes, n, HashIndex.tableSize(newCapacity));
+    }
+
+    /**
+     * Removes any empty slots, so that the pairs occupy positions 0 through
+     * {@code size - 1}.
+     */
+    private void compact() {
+        if (this.used != this.size) {
+            this.resize(this.capacity);
+        }
+    }
+
+    /**
+     * Checks that a position refers to a pair in use.
      */
-    private void resize() {
-        KVPair<K, V>[] newArray = new KVPair[this.capacity * 2];
-        System.arraycopy(this.pairs, 0, newArray, 0, this.size);
-        this.pairs = newArray;
-        this.capacity *= 2;
+    private int checkPos(int i) {
+        if (i < 0 || i >= this.size) {
+            throw new IndexOutOfBoundsException("Index " + i + " out of bounds for size "
+                + this.size);
+        }
+        this.compact();
+        return i;
     }
 
     /**
@@ -165,11 +453,31 @@ public class AssociativeArray<K, V> implements Iterable<KVPair<K, V>> {
      * @return the index of the key-value pair containing the key, or -1 if not found
      */
     private int getKeyPos(K key) {
-        for (int i = 0; i < this.size; i++) {
-            if (this.pairs[i].getKey().equals(key)) {
-                return i;
+        if (key == null) {
+            return -1;
+        }
+        return this.getKeyPos(key, HashIndex.hash(key));
+    }
+
+    /**
+     * Finds the index of the key-value pair containing the specified key,
+     * given its already-computed hash.
+     *
+     * @param key the key to find in the associative array
+     * @param hash the spread hash code of the key
+     * @return the index of the key-value pair containing the key, or -1 if not found
+     */
+    private int getKeyPos(K key, int hash) {
+        int mask = this.index.length - 1;
+        for (int b = hash & mask; ; b = (b + 1) & mask) {
+            int slot = this.index[b];
+            if (slot == 0) {
+                return -1;
+            }
+            slot--;
+            if (this.hashes[slot] == hash && this.pairs[slot].getKey().equals(key)) {
+                return slot;
             }
         }
-        return -1;
     }
-}
\ No newline at end of file
+}
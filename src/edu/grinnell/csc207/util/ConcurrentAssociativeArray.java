@@ -0,0 +1,400 @@
+package edu.grinnell.csc207.util;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiConsumer;
+
+/**
+ * A thread-safe associative array with the same interface as
+ * {@link AssociativeArray}. Reads ({@code get}, {@code hasKey}, {@code size},
+ * {@code keys} and iteration) never lock; updates are serialized on a single
+ * writer lock, which suits the read-mostly traffic of an AAC board that is
+ * shared between the event thread and background workers.
+ * <p>
+ * Entries are found through a chained hash table whose chains are never
+ * modified in place: a removal publishes a fresh copy of the chain prefix,
+ * so a reader walking a chain never sees it change under it. Insertion
+ * order is kept in a separate log of entries, which is compacted once
+ * removed entries outnumber live ones.
+ * </p>
+ * <p>
+ * Iterators are weakly consistent: they reflect the entries present when
+ * the iterator was created and may or may not reflect later updates, and
+ * they never throw {@code ConcurrentModificationException}. Each pair they
+ * return is a fresh copy, so changing it does not affect the array.
+ * </p>
+ *
+ * @param <K> the type of keys maintained by this associative array
+ * @param <V> the type of mapped values
+ *
+ * @author Moise Milenge
+ */
+public class ConcurrentAssociativeArray<K, V> implements Iterable<KVPair<K, V>> {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * A key-value entry. The same entry is shared by the hash chains and
+     * the insertion-order log, so updating its value is visible to both.
+     */
+    private static final class Entry<K, V> {
+        final K key;
+        final int hash;
+        volatile V value;
+        volatile boolean removed;
+
+        Entry(K key, int hash, V value) {
+            this.key = key;
+            this.hash = hash;
+            this.value = value;
+        }
+    }
+
+    /**
+     * A link in an immutable hash chain.
+     */
+    private static final class Node<K, V> {
+        final Entry<K, V> entry;
+        final Node<K, V> next;
+
+        Node(Entry<K, V> entry, Node<K, V> next) {
+            this.entry = entry;
+            this.next = next;
+        }
+    }
+
+    /**
+     * The entries in insertion order. The entries array is only written
+     * below {@code count} before {@code count} is advanced, and a log is
+     * never appended to once it has been replaced.
+     */
+    private static final class Log<K, V> {
+        final Entry<K, V>[] entries;
+        volatile int count;
+
+        @SuppressWarnings("unchecked")
+        Log(int capacity) {
+            this.entries = (Entry<K, V>[]) new Entry<?, ?>[capacity];
+        }
+    }
+
+    /** The hash table; its length is a power of two. */
+    private volatile AtomicReferenceArray<Node<K, V>> table;
+
+    /** The insertion-order log. */
+    private volatile Log<K, V> log;
+
+    /** The number of live entries. */
+    private volatile int size;
+
+    /** Serializes all updates. */
+    private final Object writeLock = new Object();
+
+    /**
+     * Constructs an empty associative array with the default initial capacity.
+     */
+    public ConcurrentAssociativeArray() {
+        this.table = new AtomicReferenceArray<>(DEFAULT_CAPACITY * 2);
+        this.log = new Log<>(DEFAULT_CAPACITY);
+        this.size = 0;
+    }
+
+    /**
+     * Sets the value associated with the specified key. If the key already exists,
+     * its value is updated.
+     *
+     * @param key the key to be added or updated
+     * @param value the value to be associated with the specified key
+     * @throws NullKeyException if the specified key is null
+     */
+    public void set(K key, V value) throws NullKeyException {
+        if (key == null) {
+            throw new NullKeyException("Key cannot be null.");
+        }
+
+        int hash = HashIndex.hash(key);
+        synchronized (this.writeLock) {
+            Entry<K, V> existing = this.find(key, hash);
+            if (existing != null) {
+                existing.value = value;
+                return;
+            }
+
+            Entry<K, V> entry = new Entry<>(key, hash, value);
+            this.append(entry);
+            AtomicReferenceArray<Node<K, V>> tab = this.table;
+            int b = hash & (tab.length() - 1);
+            tab.set(b, new Node<>(entry, tab.get(b)));
+            this.size = this.size + 1;
+            if (this.size > tab.length() / 2) {
+                this.rehash(tab.length() * 2);
+            }
+        }
+    }
+
+    /**
+     * Gets the value associated with the specified key.
+     *
+     * @param key the key whose associated value is to be returned
+     * @return the value associated with the specified key
+     * @throws KeyNotFoundException if the key does not exist in the associative array
+     */
+    public V get(K key) throws KeyNotFoundException {
+        Entry<K, V> entry = (key == null) ? null : this.find(key, HashIndex.hash(key));
+        if (entry == null) {
+            throw new KeyNotFoundException("Key not found.");
+        }
+        return entry.value;
+    }
+
+    /**
+     * Checks if the associative array contains the specified key.
+     *
+     * @param key the key to check for existence
+     * @return {@code true} if the key is found, {@code false} otherwise
+     */
+    public boolean hasKey(K key) {
+        return key != null && this.find(key, HashIndex.hash(key)) != null;
+    }
+
+    /**
+     * Removes the key-value pair associated with the specified key. The
+     * remaining pairs keep their order.
+     *
+     * @param key the key whose key-value pair is to be removed
+     */
+    public void remove(K key) {
+        if (key == null) {
+            return;
+        }
+
+        int hash = HashIndex.hash(key);
+        synchronized (this.writeLock) {
+            AtomicReferenceArray<Node<K, V>> tab = this.table;
+            int b = hash & (tab.length() - 1);
+            Node<K, V> head = tab.get(b);
+            Node<K, V> target = head;
+            while (target != null
+                && !(target.entry.hash == hash && target.entry.key.equals(key))) {
+                target = target.next;
+            }
+            if (target == null) {
+                return; // Key not found, do nothing
+            }
+
+            // Copy the nodes in front of the target onto the rest of the chain.
+            Node<K, V> newHead = target.next;
+            for (Node<K, V> n = head; n != target; n = n.next) {
+                newHead = new Node<>(n.entry, newHead);
+            }
+            target.entry.removed = true;
+            tab.set(b, newHead);
+            this.size = this.size - 1;
+
+            Log<K, V> current = this.log;
+            if (current.count - this.size > Math.max(this.size, DEFAULT_CAPACITY)) {
+                this.compact(current.entries.length);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of key-value pairs in the associative array.
+     *
+     * @return the number of key-value pairs in this associative array
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns an array of all keys in the associative array, in insertion
+     * order, as of some moment during the call.
+     *
+     * @return an array of keys
+     */
+    @SuppressWarnings("unchecked")
+    public K[] keys() {
+        Log<K, V> current = this.log;
+        int count = current.count;
+        Object[] keysArray = new Object[count];
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            Entry<K, V> entry = current.entries[i];
+            if (!entry.removed) {
+                keysArray[n++] = entry.key;
+            }
+        }
+        if (n < count) {
+            Object[] trimmed = new Object[n];
+            System.arraycopy(keysArray, 0, trimmed, 0, n);
+            keysArray = trimmed;
+        }
+        return (K[]) keysArray;
+    }
+
+    /**
+     * Performs an action for each key-value pair, in insertion order. Like
+     * the iterator, it is weakly consistent and does not lock, so the
+     * action may update the array.
+     *
+     * @param action the action to perform on each key and value
+     */
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        Log<K, V> current = this.log;
+        int count = current.count;
+        for (int i = 0; i < count; i++) {
+            Entry<K, V> entry = current.entries[i];
+            if (!entry.removed) {
+                action.accept(entry.key, entry.value);
+            }
+        }
+    }
+
+    /**
+     * Estimates the memory retained by this associative array. Keys and
+     * values that are strings are counted; those of other types are not.
+     *
+     * @return the estimated footprint
+     */
+    public Footprint footprint() {
+        return this.footprint(new Footprint());
+    }
+
+    /**
+     * Adds the memory retained by this associative array to a footprint.
+     * Keys and values that are strings are counted; those of other types
+     * are not. The hash table is counted as a plain array of references.
+     *
+     * @param total the footprint to add to
+     * @return {@code total}
+     */
+    public Footprint footprint(Footprint total) {
+        AtomicReferenceArray<Node<K, V>> tab = this.table;
+        Log<K, V> current = this.log;
+        int count = current.count;
+        total.addOther(this, 3 * Footprint.REFERENCE + Integer.BYTES);
+        total.addOther(this.writeLock, 0);
+        total.addArray(tab, tab.length(), Footprint.REFERENCE, this.size);
+        for (int b = 0; b < tab.length(); b++) {
+            for (Node<K, V> n = tab.get(b); n != null; n = n.next) {
+                total.addOther(n, 2 * Footprint.REFERENCE);
+            }
+        }
+        total.addOther(current, Footprint.REFERENCE + Integer.BYTES);
+        total.addArray(current.entries, current.entries.length, Footprint.REFERENCE, count);
+        for (int i = 0; i < count; i++) {
+            Entry<K, V> entry = current.entries[i];
+            total.addOther(entry, 2 * Footprint.REFERENCE + Integer.BYTES + 1);
+            if (!entry.removed) {
+                total.addKey(entry.key);
+                total.addValue(entry.value);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Creates a weakly consistent iterator over copies of the key-value
+     * pairs in the associative array, in insertion order.
+     *
+     * @return an iterator over the key-value pairs
+     */
+    @Override
+    public Iterator<KVPair<K, V>> iterator() {
+        return new ConcurrentIterator();
+    }
+
+    private class ConcurrentIterator implements Iterator<KVPair<K, V>> {
+        private final Entry<K, V>[] entries;
+        private final int count;
+        private int currentIndex = 0;
+
+        ConcurrentIterator() {
+            Log<K, V> current = log;
+            this.count = current.count;
+            this.entries = current.entries;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (currentIndex < count && entries[currentIndex].removed) {
+                currentIndex++;
+            }
+            return currentIndex < count;
+        }
+
+        @Override
+        public KVPair<K, V> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Entry<K, V> entry = entries[currentIndex++];
+            return new KVPair<>(entry.key, entry.value);
+        }
+    }
+
+    /**
+     * Finds the live entry for a key, or null if there is none. Does not lock.
+     */
+    private Entry<K, V> find(K key, int hash) {
+        AtomicReferenceArray<Node<K, V>> tab = this.table;
+        for (Node<K, V> n = tab.get(hash & (tab.length() - 1)); n != null; n = n.next) {
+            Entry<K, V> entry = n.entry;
+            if (entry.hash == hash && entry.key.equals(key)) {
+                return entry.removed ? null : entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds an entry to the end of the insertion-order log, replacing the log
+     * with a larger one if it is full. Called with the write lock held.
+     */
+    private void append(Entry<K, V> entry) {
+        Log<K, V> current = this.log;
+        if (current.count == current.entries.length) {
+            this.compact(Math.max(this.size * 2, DEFAULT_CAPACITY));
+            current = this.log;
+        }
+        current.entries[current.count] = entry;
+        current.count = current.count + 1;
+    }
+
+    /**
+     * Publishes a new log of the given capacity holding only the live
+     * entries. Called with the write lock held.
+     */
+    private void compact(int capacity) {
+        Log<K, V> current = this.log;
+        Log<K, V> fresh = new Log<>(capacity);
+        int n = 0;
+        for (int i = 0; i < current.count; i++) {
+            Entry<K, V> entry = current.entries[i];
+            if (!entry.removed) {
+                fresh.entries[n++] = entry;
+            }
+        }
+        fresh.count = n;
+        this.log = fresh;
+    }
+
+    /**
+     * Publishes a new hash table of the given length holding every live
+     * entry. Called with the write lock held.
+     */
+    private void rehash(int length) {
+        AtomicReferenceArray<Node<K, V>> tab = new AtomicReferenceArray<>(length);
+        Log<K, V> current = this.log;
+        for (int i = 0; i < current.count; i++) {
+            Entry<K, V> entry = current.entries[i];
+            if (!entry.removed) {
+                int b = entry.hash & (length - 1);
+                tab.set(b, new Node<>(entry, tab.get(b)));
+            }
+        }
+        this.table = tab;
+    }
+}
@@ -0,0 +1,257 @@
+package edu.grinnell.csc207.util;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * An estimate of the heap memory retained by a data structure, broken down
+ * into the {@link KVPair} objects, the backing arrays (including their
+ * unused capacity), the key strings, the value strings, and the other
+ * objects of the structure itself. A footprint is filled in by the
+ * structures it measures, each adding its own parts and then those of the
+ * structures it holds.
+ * <p>
+ * Sizes follow the layout of a 64-bit HotSpot JVM with compressed
+ * references: 12-byte object headers, 16-byte array headers, 4-byte
+ * references and 8-byte alignment. Strings are assumed to be compact
+ * (one byte per character when all characters fit in Latin-1). An object
+ * reached more than once, such as an image location used both as a key
+ * and in an index, is counted only the first time.
+ * </p>
+ *
+ * @author Moise Milenge
+ */
+public class Footprint {
+
+    /** The size of an object header. */
+    public static final int HEADER = 12;
+
+    /** The size of an array header, including its length. */
+    public static final int ARRAY_HEADER = 16;
+
+    /** The size of a reference. */
+    public static final int REFERENCE = 4;
+
+    /** The alignment of objects. */
+    private static final int ALIGNMENT = 8;
+
+    /** The shallow size of a {@code String}: header, array, hash and flags. */
+    private static final int STRING = 24;
+
+    private long pairBytes;
+    private long arrayBytes;
+    private long unusedBytes;
+    private long keyBytes;
+    private long valueBytes;
+    private long otherBytes;
+
+    /** The objects counted so far. */
+    private final Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * Constructs an empty footprint.
+     */
+    public Footprint() {
+    }
+
+    // +------------------+-----------------------------------------------
+    // | Adding to totals |
+    // +------------------+
+
+    /**
+     * Adds a key-value pair object, not counting its key and value.
+     *
+     * @param pair the pair
+     */
+    public void addPair(KVPair<?, ?> pair) {
+        if (pair != null && this.seen.add(pair)) {
+            this.pairBytes += objectSize(2 * REFERENCE);
+        }
+    }
+
+    /**
+     * Adds a backing array, not counting the objects it refers to.
+     *
+     * @param array the array
+     * @param length the length of the array
+     * @param elementBytes the size of each element
+     * @param used the number of elements in use; the rest count as unused
+     */
+    public void addArray(Object array, int length, int elementBytes, int used) {
+        if (array != null && this.seen.add(array)) {
+            this.arrayBytes += arraySize(length, elementBytes);
+            this.unusedBytes += (long) (length - used) * elementBytes;
+        }
+    }
+
+    /**
+     * Adds a key. Only strings are counted; keys of other types are left to
+     * the caller.
+     *
+     * @param key the key
+     */
+    public void addKey(Object key) {
+        if (key instanceof String && this.seen.add(key)) {
+            this.keyBytes += stringSize((String) key);
+        }
+    }
+
+    /**
+     * Adds a value. Only strings are counted; values of other types are
+     * left to the caller.
+     *
+     * @param value the value
+     */
+    public void addValue(Object value) {
+        if (value instanceof String && this.seen.add(value)) {
+            this.valueBytes += stringSize((String) value);
+        }
+    }
+
+    /**
+     * Adds an object of the measured structure itself, such as the map
+     * object or a string it holds that is neither a key nor a value.
+     *
+     * @param object the object
+     * @param fieldBytes the total size of its fields, for objects other than
+     *        strings
+     */
+    public void addOther(Object object, int fieldBytes) {
+        if (object != null && this.seen.add(object)) {
+            this.otherBytes += (object instanceof String)
+                ? stringSize((String) object) : objectSize(fieldBytes);
+        }
+    }
+
+    // +---------+--------------------------------------------------------
+    // | Results |
+    // +---------+
+
+    /**
+     * Returns the bytes in key-value pair objects.
+     *
+     * @return the bytes in pairs
+     */
+    public long pairBytes() {
+        return this.pairBytes;
+    }
+
+    /**
+     * Returns the bytes in backing arrays, including unused capacity.
+     *
+     * @return the bytes in arrays
+     */
+    public long arrayBytes() {
+        return this.arrayBytes;
+    }
+
+    /**
+     * Returns the part of {@link #arrayBytes()} in unused capacity.
+     *
+     * @return the unused bytes in arrays
+     */
+    public long unusedBytes() {
+        return this.unusedBytes;
+    }
+
+    /**
+     * Returns the bytes in key strings.
+     *
+     * @return the bytes in keys
+     */
+    public long keyBytes() {
+        return this.keyBytes;
+    }
+
+    /**
+     * Returns the bytes in value strings.
+     *
+     * @return the bytes in values
+     */
+    public long valueBytes() {
+        return this.valueBytes;
+    }
+
+    /**
+     * Returns the bytes in the other objects of the structure.
+     *
+     * @return the bytes in other objects
+     */
+    public long otherBytes() {
+        return this.otherBytes;
+    }
+
+    /**
+     * Returns the estimated total retained bytes.
+     *
+     * @return the total bytes
+     */
+    public long totalBytes() {
+        return this.pairBytes + this.arrayBytes + this.keyBytes + this.valueBytes
+            + this.otherBytes;
+    }
+
+    /**
+     * Returns a report of the breakdown, one line per part.
+     *
+     * @return the report
+     */
+    @Override
+    public String toString() {
+        return String.format("pairs   %,12d%n"
+            + "arrays  %,12d (unused %,d)%n"
+            + "keys    %,12d%n"
+            + "values  %,12d%n"
+            + "other   %,12d%n"
+            + "total   %,12d%n",
+            this.pairBytes, this.arrayBytes, this.unusedBytes, this.keyBytes,
+            this.valueBytes, this.otherBytes, this.totalBytes());
+    }
+
+    // +-------------+----------------------------------------------------
+    // | Size models |
+    // +-------------+
+
+    /**
+     * Returns the size of an object with the given total size of fields.
+     *
+     * @param fieldBytes the size of the fields
+     * @return the size of the object
+     */
+    public static long objectSize(int fieldBytes) {
+        return align(HEADER + fieldBytes);
+    }
+
+    /**
+     * Returns the size of an array.
+     *
+     * @param length the length of the array
+     * @param elementBytes the size of each element
+     * @return the size of the array
+     */
+    public static long arraySize(int length, int elementBytes) {
+        return align(ARRAY_HEADER + (long) length * elementBytes);
+    }
+
+    /**
+     * Returns the size of a string, including its character array.
+     *
+     * @param str the string
+     * @return the size of the string
+     */
+    public static long stringSize(String str) {
+        int bytesPerChar = 1;
+        for (int i = 0; i < str.length(); i++) {
+            if (str.charAt(i) > 0xFF) {
+                bytesPerChar = 2;
+                break;
+            }
+        }
+        return STRING + arraySize(str.length(), bytesPerChar);
+    }
+
+    private static long align(long bytes) {
+        return (bytes + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+}
@@ -0,0 +1,392 @@
+package edu.grinnell.csc207.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.function.LongSupplier;
+
+/**
+ * A set of string keys ranked by how often, and how recently, each has
+ * been used. Every use adds to the key's score, and scores decay with a
+ * fixed half-life, so a key used often last month ranks below one used
+ * often this week. Keys with equal scores (such as unused keys) keep the
+ * order in which they were added.
+ * <p>
+ * Decay costs nothing per key: rather than shrinking every score as time
+ * passes, each use adds an increment that doubles every half-life, which
+ * ranks the keys the same way. The increments are rebased before they can
+ * overflow. A use moves its key up past the keys it now outscores, one
+ * swap at a time, so the ranking is never re-sorted, and a use takes no
+ * locks and allocates nothing.
+ * </p>
+ * <p>
+ * As in {@link AssociativeArray}, removing a key leaves an empty slot,
+ * which keeps its score so that the slots stay in rank order; the slots
+ * are compacted once there are more empty ones than keys, or when the
+ * arrays are full, so removing many keys costs time linear in their
+ * number.
+ * </p>
+ * <p>
+ * Rankings are not thread-safe.
+ * </p>
+ *
+ * @author Moise Milenge
+ */
+public class FrequencyRanking {
+
+    /** The default half-life of a use: one week. */
+    public static final long DEFAULT_HALF_LIFE = 7L * 24 * 60 * 60 * 1000;
+
+    /** Rebase once the increment reaches 2 to this power. */
+    private static final double MAX_EXPONENT = 512;
+
+    /** The initial capacity. */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private final double halfLife;
+    private final LongSupplier clock;
+
+    /** The time at which the increment was 1. */
+    private long base;
+
+    // The keys in rank order, with their hashes and scores. A removed
+    // key leaves a null in keys.
+    private String[] keys;
+    private int[] hashes;
+    private double[] scores;
+    private int size; // The number of keys
+    private int used; // The number of slots in use, including empty ones
+
+    /** The hash index over {@code keys}; see {@link HashIndex}. */
+    private int[] index;
+
+    private int modCount; // Changes whenever the order of the keys changes
+
+    /**
+     * Constructs an empty ranking with the default half-life, using the
+     * system clock.
+     */
+    public FrequencyRanking() {
+        this(DEFAULT_HALF_LIFE, System::currentTimeMillis);
+    }
+
+    /**
+     * Constructs an empty ranking.
+     *
+     * @param halfLifeMillis the time, in milliseconds, over which a use
+     *        loses half its weight
+     * @param clock the source of the current time, in milliseconds
+     * @throws IllegalArgumentException if the half-life is not positive
+     */
+    public FrequencyRanking(long halfLifeMillis, LongSupplier clock) {
+        if (halfLifeMillis <= 0) {
+            throw new IllegalArgumentException("Illegal half-life: " + halfLifeMillis);
+        }
+        this.halfLife = halfLifeMillis;
+        this.clock = clock;
+        this.base = clock.getAsLong();
+        this.keys = new String[DEFAULT_CAPACITY];
+        this.hashes = new int[DEFAULT_CAPACITY];
+        this.scores = new double[DEFAULT_CAPACITY];
+        this.index = new int[HashIndex.tableSize(DEFAULT_CAPACITY)];
+    }
+
+    /**
+     * Adds a key with no uses, after all the keys with equal scores. Adding
+     * a key that is already ranked does nothing.
+     *
+     * @param key the key
+     * @throws NullKeyException if the key is null
+     */
+    public void add(String key) throws NullKeyException {
+        if (key == null) {
+            throw new NullKeyException("Key cannot be null.");
+        }
+        if (this.find(key) >= 0) {
+            return;
+        }
+        if (this.used == this.keys.length) {
+            // Reclaim the empty slots if that frees enough room, or grow.
+            this.resize((this.size < this.keys.length / 2)
+                ? this.keys.length : this.keys.length * 2);
+        }
+        int pos = this.used++;
+        this.size++;
+        this.keys[pos] = key;
+        this.hashes[pos] = HashIndex.hash(key);
+        this.scores[pos] = 0;
+        HashIndex.add(this.index, this.hashes[pos], pos);
+        this.modCount++;
+    }
+
+    /**
+     * Removes a key. The other keys keep their order.
+     *
+     * @param key the key
+     */
+    public void remove(String key) {
+        int pos = this.find(key);
+        if (pos < 0) {
+            return;
+        }
+        HashIndex.remove(this.index, this.hashes, HashIndex.bucketOf(this.index, this.hashes, pos));
+        this.keys[pos] = null;
+        this.size--;
+        this.modCount++;
+        if (pos == this.used - 1) {
+            this.used--;
+        } else if (this.used - this.size > Math.max(this.size, DEFAULT_CAPACITY)) {
+            this.resize(this.keys.length);
+        }
+    }
+
+    /**
+     * Records a use of a key, moving it up past the keys it now outscores.
+     * Using a key that is not ranked does nothing.
+     *
+     * @param key the key
+     */
+    public void use(String key) {
+        int pos = this.find(key);
+        if (pos < 0) {
+            return;
+        }
+        double exponent = (this.clock.getAsLong() - this.base) / this.halfLife;
+        if (exponent > MAX_EXPONENT) {
+            this.rebase();
+            exponent = (this.clock.getAsLong() - this.base) / this.halfLife;
+        }
+        double score = this.scores[pos] + Math.pow(2, exponent);
+        this.scores[pos] = score;
+        while (pos > 0 && this.scores[pos - 1] < score) {
+            this.swapWithPrevious(pos);
+            pos--;
+        }
+    }
+
+    /**
+     * Returns the decayed number of uses of a key as of now: each use
+     * counts 1 when new, 1/2 after one half-life, and so on.
+     *
+     * @param key the key
+     * @return the decayed number of uses, or 0 if the key is not ranked
+     */
+    public double score(String key) {
+        int pos = this.find(key);
+        return (pos < 0) ? 0 : this.scores[pos] / this.increment();
+    }
+
+    /**
+     * Returns the number of keys.
+     *
+     * @return the number of keys
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns a new array of the keys, best first.
+     *
+     * @return the keys in rank order
+     */
+    public String[] keys() {
+        if (this.used == this.size) {
+            return Arrays.copyOf(this.keys, this.size);
+        }
+        String[] result = new String[this.size];
+        int n = 0;
+        for (int i = 0; i < this.used; i++) {
+            if (this.keys[i] != null) {
+                result[n++] = this.keys[i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns a count of the changes to the order of the keys, including
+     * additions and removals. Callers can compare counts to tell whether a
+     * copy of {@link #keys()} is still current.
+     *
+     * @return the modification count
+     */
+    public int modCount() {
+        return this.modCount;
+    }
+
+    // +-------------+--------------------------------------------------
+    // | Persistence |
+    // +-------------+
+
+    /**
+     * Writes the keys that have been used, with their decayed scores as of
+     * now, best first. Unused keys are not written.
+     *
+     * @param out the output to write to
+     * @throws IOException if writing fails
+     */
+    public void save(DataOutput out) throws IOException {
+        this.compact();
+        int count = 0;
+        while (count < this.size && this.scores[count] > 0) {
+            count++;
+        }
+        double increment = this.increment();
+        out.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            out.writeUTF(this.keys[i]);
+            out.writeFloat((float) (this.scores[i] / increment));
+        }
+    }
+
+    /**
+     * Reads scores written by {@link #save}, as of now, for the keys of this
+     * ranking, replacing their current scores, and re-ranks the keys. Saved
+     * keys that are not in this ranking are skipped.
+     *
+     * @param in the input to read from
+     * @throws IOException if reading fails
+     */
+    public void load(DataInput in) throws IOException {
+        this.compact();
+        int count = in.readInt();
+        double increment = this.increment();
+        for (int i = 0; i < count; i++) {
+            String key = in.readUTF();
+            float score = in.readFloat();
+            int pos = this.find(key);
+            if (pos >= 0) {
+                this.scores[pos] = score * increment;
+            }
+        }
+        // Insertion sort keeps equal scores in their current order.
+        for (int i = 1; i < this.size; i++) {
+            for (int pos = i; pos > 0 && this.scores[pos - 1] < this.scores[pos]; pos--) {
+                this.swapWithPrevious(pos);
+            }
+        }
+        this.modCount++;
+    }
+
+    /**
+     * Adds the memory retained by this ranking to a footprint. The keys
+     * are counted as keys.
+     *
+     * @param total the footprint to add to
+     * @return {@code total}
+     */
+    public Footprint footprint(Footprint total) {
+        total.addOther(this, 5 * Footprint.REFERENCE + 3 * Integer.BYTES + 2 * Long.BYTES);
+        total.addArray(this.keys, this.keys.length, Footprint.REFERENCE, this.size);
+        total.addArray(this.hashes, this.hashes.length, Integer.BYTES, this.size);
+        total.addArray(this.scores, this.scores.length, Double.BYTES, this.size);
+        total.addArray(this.index, this.index.length, Integer.BYTES, this.size);
+        for (int i = 0; i < this.used; i++) {
+            total.addKey(this.keys[i]);
+        }
+        return total;
+    }
+
+    // +---------+------------------------------------------------------
+    // | Helpers |
+    // +---------+
+
+    /**
+     * Returns the weight of a use made now.
+     */
+    private double increment() {
+        return Math.pow(2, (this.clock.getAsLong() - this.base) / this.halfLife);
+    }
+
+    /**
+     * Moves the base time to now, scaling the scores to match.
+     */
+    private void rebase() {
+        double increment = this.increment();
+        for (int i = 0; i < this.used; i++) {
+            this.scores[i] /= increment;
+        }
+        this.base = this.clock.getAsLong();
+    }
+
+    /**
+     * Moves the keys, without empty slots, into arrays of the given
+     * capacity, which must be at least {@code size}, and rebuilds the
+     * index.
+     */
+    private void resize(int capacity) {
+        String[] newKeys = new String[capacity];
+        int[] newHashes = new int[capacity];
+        double[] newScores = new double[capacity];
+        int n = 0;
+        for (int i = 0; i < this.used; i++) {
+            if (this.keys[i] != null) {
+                newKeys[n] = this.keys[i];
+                newHashes[n] = this.hashes[i];
+                newScores[n] = this.scores[i];
+                n++;
+            }
+        }
+        this.keys = newKeys;
+        this.hashes = newHashes;
+        this.scores = newScores;
+        this.used = n;
+        this.index = HashIndex.rebuild(this.hashes, n, HashIndex.tableSize(capacity));
+    }
+
+    /**
+     * Removes any empty slots, so that the keys occupy positions 0 through
+     * {@code size - 1}.
+     */
+    private void compact() {
+        if (this.used != this.size) {
+            this.resize(this.keys.length);
+        }
+    }
+
+    /**
+     * Swaps the key at a position with the one before it, which may be an
+     * empty slot, updating the index in place.
+     */
+    private void swapWithPrevious(int pos) {
+        int a = HashIndex.bucketOf(this.index, this.hashes, pos);
+        if (this.keys[pos - 1] != null) {
+            this.index[HashIndex.bucketOf(this.index, this.hashes, pos - 1)] = pos + 1;
+        }
+        this.index[a] = pos;
+
+        String key = this.keys[pos];
+        this.keys[pos] = this.keys[pos - 1];
+        this.keys[pos - 1] = key;
+        int hash = this.hashes[pos];
+        this.hashes[pos] = this.hashes[pos - 1];
+        this.hashes[pos - 1] = hash;
+        double score = this.scores[pos];
+        this.scores[pos] = this.scores[pos - 1];
+        this.scores[pos - 1] = score;
+        this.modCount++;
+    }
+
+    /**
+     * Finds the position of a key, or -1 if it is not ranked.
+     */
+    private int find(String key) {
+        if (key == null) {
+            return -1;
+        }
+        int hash = HashIndex.hash(key);
+        int mask = this.index.length - 1;
+        for (int b = hash & mask; ; b = (b + 1) & mask) {
+            int slot = this.index[b];
+            if (slot == 0) {
+                return -1;
+            }
+            slot--;
+            if (this.hashes[slot] == hash && this.keys[slot].equals(key)) {
+                return slot;
+            }
+        }
+    }
+}
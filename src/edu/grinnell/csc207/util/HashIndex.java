@@ -0,0 +1,119 @@
+package edu.grinnell.csc207.util;
+
+/**
+ * Helpers for the open-addressing hash indices used by the maps in this
+ * package. An index is an {@code int[]} whose length is a power of two;
+ * each bucket holds one more than the position of an entry in the map's
+ * dense entry arrays, or 0 if the bucket is empty. Collisions are resolved
+ * by linear probing, and every map keeps the hash of each entry in a
+ * parallel {@code int[]} so the index can be maintained without calling
+ * {@code hashCode} or {@code equals} again.
+ *
+ * @author Moise Milenge
+ */
+final class HashIndex {
+
+    private HashIndex() {
+    }
+
+    /**
+     * Computes the hash used for a key, spreading the high bits downward
+     * since only the low bits select a bucket.
+     *
+     * @param key the (non-null) key
+     * @return the spread hash code of the key
+     */
+    static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Computes the index length for a map of the given capacity: the
+     * smallest power of two that is at least twice the capacity, so the
+     * index is never more than half full.
+     *
+     * @param capacity the number of entries the map can hold
+     * @return the index length
+     */
+    static int tableSize(int capacity) {
+        if (capacity <= 1) {
+            return 2;
+        }
+        return Integer.highestOneBit(capacity - 1) << 2;
+    }
+
+    /**
+     * Records in the index that the entry at the given position has the
+     * given hash.
+     *
+     * @param index the index
+     * @param hash the hash of the entry
+     * @param pos the position of the entry
+     */
+    static void add(int[] index, int hash, int pos) {
+        int mask = index.length - 1;
+        int b = hash & mask;
+        while (index[b] != 0) {
+            b = (b + 1) & mask;
+        }
+        index[b] = pos + 1;
+    }
+
+    /**
+     * Builds a fresh index of the given length over the first
+     * {@code count} cached hashes.
+     *
+     * @param hashes the cached hashes of the entries
+     * @param count the number of entries
+     * @param length the length of the new index, a power of two
+     * @return the new index
+     */
+    static int[] rebuild(int[] hashes, int count, int length) {
+        int[] index = new int[length];
+        for (int i = 0; i < count; i++) {
+            add(index, hashes[i], i);
+        }
+        return index;
+    }
+
+    /**
+     * Finds the bucket of the index that refers to the entry at the given
+     * position.
+     *
+     * @param index the index
+     * @param hashes the cached hashes of the entries
+     * @param pos the position of an indexed entry
+     * @return the bucket holding {@code pos}
+     */
+    static int bucketOf(int[] index, int[] hashes, int pos) {
+        int mask = index.length - 1;
+        int b = hashes[pos] & mask;
+        while (index[b] != pos + 1) {
+            b = (b + 1) & mask;
+        }
+        return b;
+    }
+
+    /**
+     * Empties a bucket of the index, shifting later members of the same
+     * probe sequence back so that no lookup stops early at the hole.
+     *
+     * @param index the index
+     * @param hashes the cached hashes of the entries
+     * @param bucket the bucket to empty
+     */
+    static void remove(int[] index, int[] hashes, int bucket) {
+        int mask = index.length - 1;
+        int hole = bucket;
+        for (int b = (bucket + 1) & mask; index[b] != 0; b = (b + 1) & mask) {
+            int home = hashes[index[b] - 1] & mask;
+            // Move the entry unless its home lies strictly between the hole and b.
+            if (((b - home) & mask) >= ((b - hole) & mask)) {
+                index[hole] = index[b];
+                hole = b;
+            }
+        }
+        index[hole] = 0;
+    }
+}
@@ -0,0 +1,637 @@
+package edu.grinnell.csc207.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+
+/**
+ * A string-to-string map, like {@link StringMap}, whose contents live in a
+ * memory-mapped file rather than on the heap. Keys and values are stored
+ * as UTF-8 in a string arena, and entries are found through an
+ * open-addressing hash index kept in the same file, so a large vocabulary
+ * costs almost no heap, and reopening an existing file makes its entries
+ * available at once, with nothing to parse.
+ * <p>
+ * The file holds a header, then a table of fixed-width entry records in
+ * insertion order, then the hash index, then the arena:
+ * </p>
+ * <pre>
+ *   header   magic, version, size, used, record capacity,
+ *            index length, arena capacity, arena used,
+ *            arena garbage (9 ints)
+ *   records  hash, key offset, key length, value offset, value length
+ *            (5 ints each; a removed entry has key length -1, and a
+ *            null value has value length -1)
+ *   index    one int per bucket: record number + 1, or 0 if empty
+ *   arena    UTF-8 bytes of keys and values
+ * </pre>
+ * <p>
+ * When the records or the arena fill up, the file is extended and the
+ * index and arena moved up in place. Replacing a value, or removing an
+ * entry, leaves its old bytes unused in the arena, and a removed entry
+ * leaves its record unused; the header counts the unused bytes. Before
+ * the file is extended, it is compacted instead if that frees enough
+ * room: the live records slide down, keeping their order, the strings
+ * slide down after them, and the index is rebuilt. A map that is changed
+ * over and over so stays within a small multiple of its live contents.
+ * Strings are decoded only when a caller asks for them. Changes reach the
+ * file as the operating system writes the mapped pages back;
+ * {@link #flush()} forces them out. Like {@code StringMap}, this class is not thread-safe.
+ * </p>
+ * <p>
+ * A map file belongs to one open map at a time. The map keeps the header
+ * fields in fields of its own, so two maps changing one file would each
+ * write back counts that miss the other's entries, and corrupt it. The
+ * file is therefore locked while a map has it open, and opening it again,
+ * in this process or another, fails until that map is closed.
+ * </p>
+ *
+ * @author Moise Milenge
+ */
+public class MappedStringMap implements Closeable {
+
+    private static final int MAGIC = 0x41414356; // "AACV"
+    private static final int VERSION = 2;
+
+    private static final int HEADER_BYTES = 36;
+    private static final int RECORD_BYTES = 20;
+
+    private static final int DEFAULT_RECORDS = 1024;
+    private static final int DEFAULT_ARENA = 64 * 1024;
+
+    // Header fields, by byte offset
+    private static final int H_MAGIC = 0;
+    private static final int H_VERSION = 4;
+    private static final int H_SIZE = 8;
+    private static final int H_USED = 12;
+    private static final int H_RECORDS = 16;
+    private static final int H_INDEX = 20;
+    private static final int H_ARENA = 24;
+    private static final int H_ARENA_USED = 28;
+    private static final int H_GARBAGE = 32;
+
+    // Record fields, by byte offset within a record
+    private static final int R_HASH = 0;
+    private static final int R_KEY_OFF = 4;
+    private static final int R_KEY_LEN = 8;
+    private static final int R_VAL_OFF = 12;
+    private static final int R_VAL_LEN = 16;
+
+    private final FileChannel channel;
+    private MappedByteBuffer buf;
+
+    // Cached copies of header fields
+    private int size;
+    private int used;
+    private int recordCapacity;
+    private int indexLength;
+    private int arenaCapacity;
+    private int arenaUsed;
+    private int garbage;
+
+    // Cached region offsets
+    private int indexStart;
+    private int arenaStart;
+
+    private MappedStringMap(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Opens the map stored in the given file, creating an empty one if the
+     * file does not exist or is empty. The file stays locked until the map
+     * is closed.
+     *
+     * @param filename the name of the file
+     * @return the map
+     * @throws IOException if the file cannot be opened or mapped, is not
+     *         a map file, or is open in another map
+     */
+    public static MappedStringMap open(String filename) throws IOException {
+        Path path = Paths.get(filename);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedStringMap map = new MappedStringMap(channel);
+        try {
+            FileLock lock;
+            try {
+                lock = channel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                lock = null; // Locked by another map in this process
+            }
+            if (lock == null) {
+                throw new IOException(filename + " is open in another map");
+            }
+            if (channel.size() == 0) {
+                map.initialize(DEFAULT_RECORDS, DEFAULT_ARENA);
+            } else {
+                map.load();
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return map;
+    }
+
+    // +------------+---------------------------------------------------
+    // | Public API |
+    // +------------+
+
+    /**
+     * Sets the value associated with the specified key. If the key already
+     * exists, its value is updated.
+     *
+     * @param key the key to be added or updated
+     * @param value the value to be associated with the specified key
+     * @throws NullKeyException if the specified key is null
+     * @throws UncheckedIOException if the file cannot be extended
+     */
+    public void set(String key, String value) throws NullKeyException {
+        if (key == null) {
+            throw new NullKeyException("Key cannot be null.");
+        }
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] valBytes = (value == null) ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+        int valLen = (value == null) ? -1 : valBytes.length;
+        int hash = HashIndex.hash(key);
+
+        int rec = this.find(keyBytes, hash);
+        if (rec > -1) {
+            int oldLen = Math.max(0, this.buf.getInt(this.recordAt(rec) + R_VAL_LEN));
+            if (valBytes.length <= oldLen) {
+                this.putBytes(this.buf.getInt(this.recordAt(rec) + R_VAL_OFF), valBytes);
+                this.garbage += oldLen - valBytes.length;
+            } else {
+                // Compacting may move the record
+                rec = this.ensureRoom(0, valBytes.length, rec);
+                this.garbage += oldLen;
+                this.buf.putInt(this.recordAt(rec) + R_VAL_OFF, this.append(valBytes));
+            }
+            this.buf.putInt(this.recordAt(rec) + R_VAL_LEN, valLen);
+            this.writeCounts();
+            return;
+        }
+
+        this.ensureRoom(1, keyBytes.length + valBytes.length, -1);
+        rec = this.used;
+        int at = this.recordAt(rec);
+        this.buf.putInt(at + R_HASH, hash);
+        this.buf.putInt(at + R_KEY_OFF, this.append(keyBytes));
+        this.buf.putInt(at + R_KEY_LEN, keyBytes.length);
+        this.buf.putInt(at + R_VAL_OFF, this.append(valBytes));
+        this.buf.putInt(at + R_VAL_LEN, valLen);
+        this.addToIndex(hash, rec);
+        this.used++;
+        this.size++;
+        this.writeCounts();
+    }
+
+    /**
+     * Gets the value associated with the specified key.
+     *
+     * @param key the key whose associated value is to be returned
+     * @return the value associated with the specified key
+     * @throws KeyNotFoundException if the key does not exist in the map
+     */
+    public String get(String key) throws KeyNotFoundException {
+        int rec = (key == null) ? -1
+            : this.find(key.getBytes(StandardCharsets.UTF_8), HashIndex.hash(key));
+        if (rec == -1) {
+            throw new KeyNotFoundException("Key not found.");
+        }
+        int at = this.recordAt(rec);
+        return this.decode(this.buf.getInt(at + R_VAL_OFF), this.buf.getInt(at + R_VAL_LEN));
+    }
+
+    /**
+     * Checks if the map contains the specified key.
+     *
+     * @param key the key to check for existence
+     * @return {@code true} if the key is found, {@code false} otherwise
+     */
+    public boolean hasKey(String key) {
+        return key != null
+            && this.find(key.getBytes(StandardCharsets.UTF_8), HashIndex.hash(key)) > -1;
+    }
+
+    /**
+     * Removes the entry associated with the specified key. The remaining
+     * entries keep their order.
+     *
+     * @param key the key whose entry is to be removed
+     */
+    public void remove(String key) {
+        if (key == null) {
+            return;
+        }
+        int rec = this.find(key.getBytes(StandardCharsets.UTF_8), HashIndex.hash(key));
+        if (rec == -1) {
+            return; // Key not found, do nothing
+        }
+        this.removeFromIndex(this.bucketOf(rec));
+        int at = this.recordAt(rec);
+        this.garbage += this.buf.getInt(at + R_KEY_LEN)
+            + Math.max(0, this.buf.getInt(at + R_VAL_LEN));
+        this.buf.putInt(at + R_KEY_LEN, -1);
+        this.size--;
+        this.writeCounts();
+    }
+
+    /**
+     * Returns the number of entries in the map.
+     *
+     * @return the number of entries in this map
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns a new array of all keys in the map, in insertion order.
+     *
+     * @return an array of keys
+     */
+    public String[] keys() {
+        String[] result = new String[this.size];
+        int n = 0;
+        for (int rec = 0; rec < this.used; rec++) {
+            int at = this.recordAt(rec);
+            int len = this.buf.getInt(at + R_KEY_LEN);
+            if (len >= 0) {
+                result[n++] = this.decode(this.buf.getInt(at + R_KEY_OFF), len);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Calls the given action on each key and value, in insertion order,
+     * decoding each string as it goes.
+     *
+     * @param action the action to call
+     */
+    public void forEach(BiConsumer<? super String, ? super String> action) {
+        for (int rec = 0; rec < this.used; rec++) {
+            int at = this.recordAt(rec);
+            int len = this.buf.getInt(at + R_KEY_LEN);
+            if (len >= 0) {
+                action.accept(this.decode(this.buf.getInt(at + R_KEY_OFF), len),
+                    this.decode(this.buf.getInt(at + R_VAL_OFF), this.buf.getInt(at + R_VAL_LEN)));
+            }
+        }
+    }
+
+    /**
+     * Writes any changes still held in memory out to the file.
+     */
+    public void flush() {
+        this.buf.force();
+    }
+
+    /**
+     * Flushes the map and closes the file, which unlocks it. The map must
+     * not be used afterwards.
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        this.flush();
+        this.channel.close();
+    }
+
+    // +--------+-------------------------------------------------------
+    // | Layout |
+    // +--------+
+
+    /**
+     * Lays out an empty map in the (empty) file.
+     */
+    private void initialize(int records, int arena) throws IOException {
+        this.size = 0;
+        this.used = 0;
+        this.recordCapacity = records;
+        this.indexLength = HashIndex.tableSize(records);
+        this.arenaCapacity = arena;
+        this.arenaUsed = 0;
+        this.garbage = 0;
+        this.map();
+        this.buf.putInt(H_MAGIC, MAGIC);
+        this.buf.putInt(H_VERSION, VERSION);
+        this.writeCounts();
+    }
+
+    /**
+     * Reads the header of an existing map file.
+     */
+    private void load() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        this.channel.read(header, 0);
+        if (header.position() < HEADER_BYTES || header.getInt(H_MAGIC) != MAGIC
+            || header.getInt(H_VERSION) != VERSION) {
+            throw new IOException("Not a vocabulary map file.");
+        }
+        this.size = header.getInt(H_SIZE);
+        this.used = header.getInt(H_USED);
+        this.recordCapacity = header.getInt(H_RECORDS);
+        this.indexLength = header.getInt(H_INDEX);
+        this.arenaCapacity = header.getInt(H_ARENA);
+        this.arenaUsed = header.getInt(H_ARENA_USED);
+        this.garbage = header.getInt(H_GARBAGE);
+        this.map();
+    }
+
+    /**
+     * Maps the whole file for the current capacities, extending it if
+     * necessary.
+     */
+    private void map() throws IOException {
+        this.indexStart = HEADER_BYTES + this.recordCapacity * RECORD_BYTES;
+        this.arenaStart = this.indexStart + this.indexLength * 4;
+        long total = (long) this.arenaStart + this.arenaCapacity;
+        if (total > Integer.MAX_VALUE) {
+            throw new IOException("Vocabulary map would exceed 2GB.");
+        }
+        this.buf = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, total);
+    }
+
+    /**
+     * Writes the header fields that change as entries come and go.
+     */
+    private void writeCounts() {
+        this.buf.putInt(H_SIZE, this.size);
+        this.buf.putInt(H_USED, this.used);
+        this.buf.putInt(H_RECORDS, this.recordCapacity);
+        this.buf.putInt(H_INDEX, this.indexLength);
+        this.buf.putInt(H_ARENA, this.arenaCapacity);
+        this.buf.putInt(H_ARENA_USED, this.arenaUsed);
+        this.buf.putInt(H_GARBAGE, this.garbage);
+    }
+
+    /**
+     * Makes room for the given number of new records and arena bytes,
+     * compacting the map if at least half of its records or arena are
+     * unused, and otherwise growing the file and moving the index and
+     * arena up. Returns where the given record is afterwards.
+     */
+    private int ensureRoom(int records, int bytes, int rec) {
+        boolean needRecords = this.used + records > this.recordCapacity;
+        boolean needArena = (long) this.arenaUsed + bytes > this.arenaCapacity;
+        if (!needRecords && !needArena) {
+            return rec;
+        }
+        if (2 * (this.used - this.size) >= this.used || 2L * this.garbage >= this.arenaUsed) {
+            rec = this.compact(rec);
+            needRecords = this.used + records > this.recordCapacity;
+            needArena = (long) this.arenaUsed + bytes > this.arenaCapacity;
+            if (!needRecords && !needArena) {
+                return rec;
+            }
+        }
+
+        int oldArenaStart = this.arenaStart;
+        if (needRecords) {
+            this.recordCapacity *= 2;
+            this.indexLength = HashIndex.tableSize(this.recordCapacity);
+        }
+        if (needArena) {
+            this.arenaCapacity = (int) Math.min(Integer.MAX_VALUE,
+                Math.max(2L * this.arenaCapacity, (long) this.arenaUsed + bytes));
+        }
+        try {
+            this.map();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        // The arena only ever moves up, so copy it from the top down.
+        if (this.arenaStart != oldArenaStart) {
+            byte[] chunk = new byte[64 * 1024];
+            for (int end = this.arenaUsed; end > 0; ) {
+                int len = Math.min(chunk.length, end);
+                end -= len;
+                this.buf.get(oldArenaStart + end, chunk, 0, len);
+                this.buf.put(this.arenaStart + end, chunk, 0, len);
+            }
+        }
+
+        // The index may have moved or grown.
+        this.rebuildIndex();
+        this.writeCounts();
+        return rec;
+    }
+
+    /**
+     * Removes the unused records and arena bytes, keeping the order of the
+     * entries, and returns where the given record is afterwards.
+     */
+    private int compact(int rec) {
+        // Slide the live records down.
+        int moved = -1;
+        int live = 0;
+        byte[] record = new byte[RECORD_BYTES];
+        for (int r = 0; r < this.used; r++) {
+            int at = this.recordAt(r);
+            if (this.buf.getInt(at + R_KEY_LEN) >= 0) {
+                if (r == rec) {
+                    moved = live;
+                }
+                if (live != r) {
+                    this.buf.get(at, record);
+                    this.buf.put(this.recordAt(live), record);
+                }
+                live++;
+            }
+        }
+        this.used = live;
+
+        // Slide the strings down in the order they are in the arena. Each
+        // is named by its offset (high half) and its record and field (low
+        // half), so sorting puts them in arena order.
+        long[] strings = new long[2 * live];
+        int n = 0;
+        for (int r = 0; r < live; r++) {
+            int at = this.recordAt(r);
+            if (this.buf.getInt(at + R_KEY_LEN) > 0) {
+                strings[n++] = (long) this.buf.getInt(at + R_KEY_OFF) << 32 | (2 * r);
+            }
+            if (this.buf.getInt(at + R_VAL_LEN) > 0) {
+                strings[n++] = (long) this.buf.getInt(at + R_VAL_OFF) << 32 | (2 * r + 1);
+            }
+        }
+        Arrays.sort(strings, 0, n);
+        byte[] chunk = new byte[64 * 1024];
+        int end = 0;
+        for (int i = 0; i < n; i++) {
+            int slot = (int) strings[i];
+            int at = this.recordAt(slot >> 1);
+            int offField = ((slot & 1) == 0) ? R_KEY_OFF : R_VAL_OFF;
+            int off = (int) (strings[i] >>> 32);
+            int len = this.buf.getInt(at + offField + 4);
+            // Copying up from the bottom never overwrites bytes still to be read.
+            for (int done = 0; done < len && off != end; ) {
+                int part = Math.min(chunk.length, len - done);
+                this.buf.get(this.arenaStart + off + done, chunk, 0, part);
+                this.buf.put(this.arenaStart + end + done, chunk, 0, part);
+                done += part;
+            }
+            this.buf.putInt(at + offField, end);
+            end += len;
+        }
+        // Empty and null strings take no room; point them at the start.
+        for (int r = 0; r < live; r++) {
+            int at = this.recordAt(r);
+            if (this.buf.getInt(at + R_KEY_LEN) == 0) {
+                this.buf.putInt(at + R_KEY_OFF, 0);
+            }
+            if (this.buf.getInt(at + R_VAL_LEN) <= 0) {
+                this.buf.putInt(at + R_VAL_OFF, 0);
+            }
+        }
+        this.arenaUsed = end;
+        this.garbage = 0;
+
+        this.rebuildIndex();
+        this.writeCounts();
+        return moved;
+    }
+
+    /**
+     * Rebuilds the index from the records.
+     */
+    private void rebuildIndex() {
+        for (int b = 0; b < this.indexLength; b++) {
+            this.buf.putInt(this.indexStart + 4 * b, 0);
+        }
+        for (int rec = 0; rec < this.used; rec++) {
+            int at = this.recordAt(rec);
+            if (this.buf.getInt(at + R_KEY_LEN) >= 0) {
+                this.addToIndex(this.buf.getInt(at + R_HASH), rec);
+            }
+        }
+    }
+
+    // +-------+--------------------------------------------------------
+    // | Arena |
+    // +-------+
+
+    /**
+     * Appends bytes to the arena, which must have room, and returns their
+     * offset within it.
+     */
+    private int append(byte[] bytes) {
+        int off = this.arenaUsed;
+        this.putBytes(off, bytes);
+        this.arenaUsed += bytes.length;
+        return off;
+    }
+
+    private void putBytes(int off, byte[] bytes) {
+        this.buf.put(this.arenaStart + off, bytes);
+    }
+
+    private String decode(int off, int len) {
+        if (len < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[len];
+        this.buf.get(this.arenaStart + off, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private boolean arenaEquals(int off, int len, byte[] bytes) {
+        if (len != bytes.length) {
+            return false;
+        }
+        int base = this.arenaStart + off;
+        for (int i = 0; i < len; i++) {
+            if (this.buf.get(base + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // +-------+--------------------------------------------------------
+    // | Index |
+    // +-------+
+
+    private int recordAt(int rec) {
+        return HEADER_BYTES + rec * RECORD_BYTES;
+    }
+
+    private int bucket(int b) {
+        return this.buf.getInt(this.indexStart + 4 * b);
+    }
+
+    private void setBucket(int b, int value) {
+        this.buf.putInt(this.indexStart + 4 * b, value);
+    }
+
+    /**
+     * Finds the record for a key, or -1 if there is none.
+     */
+    private int find(byte[] keyBytes, int hash) {
+        int mask = this.indexLength - 1;
+        for (int b = hash & mask; ; b = (b + 1) & mask) {
+            int rec = this.bucket(b);
+            if (rec == 0) {
+                return -1;
+            }
+            rec--;
+            int at = this.recordAt(rec);
+            if (this.buf.getInt(at + R_HASH) == hash
+                && this.arenaEquals(this.buf.getInt(at + R_KEY_OFF),
+                    this.buf.getInt(at + R_KEY_LEN), keyBytes)) {
+                return rec;
+            }
+        }
+    }
+
+    // The remaining methods mirror those of HashIndex, for an index kept
+    // in the mapped file rather than in an int[].
+
+    private void addToIndex(int hash, int rec) {
+        int mask = this.indexLength - 1;
+        int b = hash & mask;
+        while (this.bucket(b) != 0) {
+            b = (b + 1) & mask;
+        }
+        this.setBucket(b, rec + 1);
+    }
+
+    private int bucketOf(int rec) {
+        int mask = this.indexLength - 1;
+        int b = this.buf.getInt(this.recordAt(rec) + R_HASH) & mask;
+        while (this.bucket(b) != rec + 1) {
+            b = (b + 1) & mask;
+        }
+        return b;
+    }
+
+    private void removeFromIndex(int bucket) {
+        int mask = this.indexLength - 1;
+        int hole = bucket;
+        for (int b = (bucket + 1) & mask; this.bucket(b) != 0; b = (b + 1) & mask) {
+            int rec = this.bucket(b) - 1;
+            int home = this.buf.getInt(this.recordAt(rec) + R_HASH) & mask;
+            if (((b - home) & mask) >= ((b - hole) & mask)) {
+                this.setBucket(hole, rec + 1);
+                hole = b;
+            }
+        }
+        this.setBucket(hole, 0);
+    }
+}
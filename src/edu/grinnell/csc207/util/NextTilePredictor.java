@@ -0,0 +1,350 @@
+package edu.grinnell.csc207.util;
+
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+/**
+ * A model of which tile a user is likely to select next, learned from the
+ * tiles selected so far. Tiles are named by strings, so tiles from any
+ * category can follow one another. The model counts, for the last two
+ * tiles selected (trigrams), for the last tile (bigrams) and overall
+ * (unigrams), which tiles came next, and predicts from the longest of
+ * those contexts that has been seen, backing off to the shorter ones to
+ * fill the remaining places.
+ * <p>
+ * Each context keeps a fixed-width row of its most frequent next tiles,
+ * sorted by count. An observation updates at most three rows, moving the
+ * tile up within each row as its count passes its neighbours', and a
+ * prediction reads the rows in order, so both take time proportional to
+ * the row width, whatever the length of the history. When a row is full,
+ * a new tile replaces the least frequent one and inherits its count plus
+ * one (the Space-Saving scheme), so a tile that becomes popular can still
+ * enter the row.
+ * </p>
+ * <p>
+ * Predictors are not thread-safe.
+ * </p>
+ *
+ * @author Moise Milenge
+ */
+public class NextTilePredictor {
+
+    /** The default number of next tiles kept for each context. */
+    public static final int DEFAULT_WIDTH = 8;
+
+    /** Counts are halved, row by row, before they reach this. */
+    private static final int MAX_COUNT = 1 << 30;
+
+    private final int width;
+
+    // The distinct tiles, with their hashes and a hash index over them.
+    private String[] tiles;
+    private int[] tileHashes;
+    private int[] tileIndex;
+    private int tileCount;
+
+    // The contexts seen, keyed by context(...), with their hashes and a hash
+    // index over them. Context i owns the row starting at i * width.
+    private long[] contextKeys;
+    private int[] contextHashes;
+    private int[] contextIndex;
+    private int contextCount;
+
+    // The rows: next tile ids and their counts, best first; a count of 0
+    // marks the end of a row.
+    private int[] next;
+    private int[] counts;
+
+    // The last two tiles selected, or -1.
+    private int previous;
+    private int beforePrevious;
+
+    // Marks the tiles already predicted, by epoch, so each is offered once.
+    private int[] marks;
+    private int epoch;
+
+    /**
+     * Constructs an empty predictor that keeps {@link #DEFAULT_WIDTH} next
+     * tiles for each context.
+     */
+    public NextTilePredictor() {
+        this(DEFAULT_WIDTH);
+    }
+
+    /**
+     * Constructs an empty predictor.
+     *
+     * @param width the number of next tiles kept for each context; at most
+     *        this many tiles are predicted from any one context
+     * @throws IllegalArgumentException if the width is not positive
+     */
+    public NextTilePredictor(int width) {
+        if (width <= 0) {
+            throw new IllegalArgumentException("Illegal width: " + width);
+        }
+        this.width = width;
+        this.tiles = new String[16];
+        this.tileHashes = new int[16];
+        this.tileIndex = new int[HashIndex.tableSize(16)];
+        this.marks = new int[16];
+        this.contextKeys = new long[16];
+        this.contextHashes = new int[16];
+        this.contextIndex = new int[HashIndex.tableSize(16)];
+        this.next = new int[16 * width];
+        this.counts = new int[16 * width];
+        this.previous = -1;
+        this.beforePrevious = -1;
+        this.addContext(context(-1, -1)); // The unigram context is row 0
+    }
+
+    // +------------+---------------------------------------------------
+    // | Public API |
+    // +------------+
+
+    /**
+     * Records that a tile was selected after the tiles observed before it.
+     *
+     * @param tile the name of the tile
+     * @throws NullKeyException if the tile is null
+     */
+    public void observe(String tile) throws NullKeyException {
+        if (tile == null) {
+            throw new NullKeyException("Tile cannot be null.");
+        }
+        int id = this.findTile(tile);
+        if (id < 0) {
+            id = this.addTile(tile);
+        }
+        this.count(0, id);
+        if (this.previous >= 0) {
+            this.count(this.row(context(-1, this.previous), true), id);
+            if (this.beforePrevious >= 0) {
+                this.count(this.row(context(this.beforePrevious, this.previous), true), id);
+            }
+        }
+        this.beforePrevious = this.previous;
+        this.previous = id;
+    }
+
+    /**
+     * Forgets the tiles selected so far, so the next prediction does not
+     * depend on them, as at the start of a new utterance. What has been
+     * learned is kept.
+     */
+    public void startUtterance() {
+        this.previous = -1;
+        this.beforePrevious = -1;
+    }
+
+    /**
+     * Predicts the tiles most likely to be selected next, best first. The
+     * tile selected last is not predicted again.
+     *
+     * @param out the array to fill with tile names
+     * @param limit the largest number of tiles to predict
+     * @param allowed which tiles may be predicted, such as those still on
+     *        the board
+     * @return the number of tiles put in {@code out}
+     */
+    public int predict(String[] out, int limit, Predicate<String> allowed) {
+        limit = Math.min(limit, out.length);
+        if (++this.epoch == 0) {
+            Arrays.fill(this.marks, 0);
+            this.epoch = 1;
+        }
+        if (this.previous >= 0) {
+            this.marks[this.previous] = this.epoch;
+        }
+        int n = 0;
+        if (this.beforePrevious >= 0) {
+            n = this.fill(this.row(context(this.beforePrevious, this.previous), false),
+                out, n, limit, allowed);
+        }
+        if (this.previous >= 0) {
+            n = this.fill(this.row(context(-1, this.previous), false), out, n, limit, allowed);
+        }
+        return this.fill(0, out, n, limit, allowed);
+    }
+
+    /**
+     * Returns the number of distinct tiles observed.
+     *
+     * @return the number of tiles
+     */
+    public int size() {
+        return this.tileCount;
+    }
+
+    /**
+     * Adds the memory retained by this predictor to a footprint. The tile
+     * names are counted as keys.
+     *
+     * @param total the footprint to add to
+     * @return {@code total}
+     */
+    public Footprint footprint(Footprint total) {
+        total.addOther(this, 9 * Footprint.REFERENCE + 6 * Integer.BYTES);
+        total.addArray(this.tiles, this.tiles.length, Footprint.REFERENCE, this.tileCount);
+        total.addArray(this.tileHashes, this.tileHashes.length, Integer.BYTES, this.tileCount);
+        total.addArray(this.tileIndex, this.tileIndex.length, Integer.BYTES, this.tileCount);
+        total.addArray(this.marks, this.marks.length, Integer.BYTES, this.tileCount);
+        total.addArray(this.contextKeys, this.contextKeys.length, Long.BYTES, this.contextCount);
+        total.addArray(this.contextHashes, this.contextHashes.length, Integer.BYTES,
+            this.contextCount);
+        total.addArray(this.contextIndex, this.contextIndex.length, Integer.BYTES,
+            this.contextCount);
+        total.addArray(this.next, this.next.length, Integer.BYTES, this.contextCount * this.width);
+        total.addArray(this.counts, this.counts.length, Integer.BYTES,
+            this.contextCount * this.width);
+        for (int i = 0; i < this.tileCount; i++) {
+            total.addKey(this.tiles[i]);
+        }
+        return total;
+    }
+
+    // +---------+------------------------------------------------------
+    // | Helpers |
+    // +---------+
+
+    /**
+     * Returns the key of the context of the tiles {@code a} then {@code b},
+     * where -1 stands for no tile: the unigram context is 0, and bigram
+     * contexts have no high bits.
+     */
+    private static long context(int a, int b) {
+        return ((long) (a + 1) << 32) | (b + 1);
+    }
+
+    /**
+     * Hashes a context key as {@link HashIndex#hash} would, without boxing.
+     */
+    private static int hash(long key) {
+        int h = Long.hashCode(key);
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Counts one more occurrence of a tile in a row, moving it up past the
+     * tiles it now outnumbers.
+     */
+    private void count(int row, int id) {
+        int start = row * this.width;
+        int end = start + this.width;
+        int pos = start;
+        while (pos < end && this.counts[pos] != 0 && this.next[pos] != id) {
+            pos++;
+        }
+        if (pos == end) {
+            pos = end - 1; // Replace the least frequent tile
+            this.next[pos] = id;
+        } else if (this.counts[pos] == 0) {
+            this.next[pos] = id;
+        }
+        if (this.counts[pos] == MAX_COUNT) {
+            for (int i = start; i < end; i++) {
+                this.counts[i] >>= 1;
+            }
+        }
+        int count = ++this.counts[pos];
+        for (; pos > start && this.counts[pos - 1] < count; pos--) {
+            this.next[pos] = this.next[pos - 1];
+            this.counts[pos] = this.counts[pos - 1];
+            this.next[pos - 1] = id;
+            this.counts[pos - 1] = count;
+        }
+    }
+
+    /**
+     * Adds the allowed tiles of a row that have not been predicted yet to
+     * {@code out}, from position {@code n}, up to {@code limit}.
+     *
+     * @return the new number of tiles in {@code out}
+     */
+    private int fill(int row, String[] out, int n, int limit, Predicate<String> allowed) {
+        if (row < 0) {
+            return n;
+        }
+        int end = (row + 1) * this.width;
+        for (int pos = row * this.width; pos < end && n < limit && this.counts[pos] != 0; pos++) {
+            int id = this.next[pos];
+            if (this.marks[id] != this.epoch) {
+                this.marks[id] = this.epoch;
+                if (allowed.test(this.tiles[id])) {
+                    out[n++] = this.tiles[id];
+                }
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Finds the id of a tile, or -1 if it has not been observed.
+     */
+    private int findTile(String tile) {
+        int hash = HashIndex.hash(tile);
+        int mask = this.tileIndex.length - 1;
+        for (int b = hash & mask; this.tileIndex[b] != 0; b = (b + 1) & mask) {
+            int id = this.tileIndex[b] - 1;
+            if (this.tileHashes[id] == hash && this.tiles[id].equals(tile)) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Adds a new tile, returning its id.
+     */
+    private int addTile(String tile) {
+        if (this.tileCount == this.tiles.length) {
+            int capacity = this.tileCount * 2;
+            this.tiles = Arrays.copyOf(this.tiles, capacity);
+            this.tileHashes = Arrays.copyOf(this.tileHashes, capacity);
+            this.marks = Arrays.copyOf(this.marks, capacity);
+            this.tileIndex = HashIndex.rebuild(this.tileHashes, this.tileCount,
+                HashIndex.tableSize(capacity));
+        }
+        int id = this.tileCount++;
+        this.tiles[id] = tile;
+        this.tileHashes[id] = HashIndex.hash(tile);
+        HashIndex.add(this.tileIndex, this.tileHashes[id], id);
+        return id;
+    }
+
+    /**
+     * Finds the row of a context, adding the context if asked to.
+     *
+     * @return the row, or -1 if the context is not there and was not added
+     */
+    private int row(long key, boolean add) {
+        int hash = hash(key);
+        int mask = this.contextIndex.length - 1;
+        for (int b = hash & mask; this.contextIndex[b] != 0; b = (b + 1) & mask) {
+            int row = this.contextIndex[b] - 1;
+            if (this.contextKeys[row] == key) {
+                return row;
+            }
+        }
+        return add ? this.addContext(key) : -1;
+    }
+
+    /**
+     * Adds a new context with an empty row, returning the row.
+     */
+    private int addContext(long key) {
+        if (this.contextCount == this.contextKeys.length) {
+            int capacity = this.contextCount * 2;
+            this.contextKeys = Arrays.copyOf(this.contextKeys, capacity);
+            this.contextHashes = Arrays.copyOf(this.contextHashes, capacity);
+            this.next = Arrays.copyOf(this.next, capacity * this.width);
+            this.counts = Arrays.copyOf(this.counts, capacity * this.width);
+            this.contextIndex = HashIndex.rebuild(this.contextHashes, this.contextCount,
+                HashIndex.tableSize(capacity));
+        }
+        int row = this.contextCount++;
+        this.contextKeys[row] = key;
+        this.contextHashes[row] = hash(key);
+        HashIndex.add(this.contextIndex, this.contextHashes[row], row);
+        return row;
+    }
+}
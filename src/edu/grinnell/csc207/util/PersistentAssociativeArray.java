@@ -0,0 +1,542 @@
+package edu.grinnell.csc207.util;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable associative array. Instead of changing the array,
+ * {@link #set} and {@link #remove} return a new version that shares
+ * almost all of its structure with the old one, so keeping old versions
+ * around (for undo, autosave, or readers running alongside an editor)
+ * costs O(log n) memory per change rather than a full copy.
+ * <p>
+ * Keys are found through a hash array mapped trie (HAMT) with 32-way
+ * branching. Insertion order is kept in a persistent 32-way vector of the
+ * entries, indexed by the order in which keys were first set; a removed
+ * key leaves an empty slot, and the vector is rebuilt once empty slots
+ * outnumber live entries. Since versions are immutable they may be shared
+ * freely between threads.
+ * </p>
+ *
+ * @param <K> the type of keys maintained by this associative array
+ * @param <V> the type of mapped values
+ *
+ * @author Moise Milenge
+ */
+public final class PersistentAssociativeArray<K, V> implements Iterable<KVPair<K, V>> {
+
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+
+    /**
+     * An entry. {@code seq} is the entry's position in the order vector.
+     */
+    private static final class Leaf<K, V> {
+        final K key;
+        final int hash;
+        final V value;
+        final int seq;
+
+        Leaf(K key, int hash, V value, int seq) {
+            this.key = key;
+            this.hash = hash;
+            this.value = value;
+            this.seq = seq;
+        }
+    }
+
+    /**
+     * An interior trie node. {@code array} holds one element, a
+     * {@code Leaf} or a child node, for each bit set in {@code bitmap}.
+     */
+    private static final class BitmapNode {
+        final int bitmap;
+        final Object[] array;
+
+        BitmapNode(int bitmap, Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+    }
+
+    /**
+     * A node for leaves whose hash codes are identical.
+     */
+    private static final class CollisionNode {
+        final int hash;
+        final Leaf<?, ?>[] leaves;
+
+        CollisionNode(int hash, Leaf<?, ?>[] leaves) {
+            this.hash = hash;
+            this.leaves = leaves;
+        }
+    }
+
+    /** The root of the trie, or null if empty. */
+    private final Object root;
+
+    /** The root of the order vector; each leaf level is an array of WIDTH leaves. */
+    private final Object[] order;
+
+    /** The shift of the top level of the order vector; 0 if the root is a leaf level. */
+    private final int orderShift;
+
+    /** The number of slots of the order vector in use, including emptied ones. */
+    private final int used;
+
+    /** The number of entries. */
+    private final int size;
+
+    /**
+     * Constructs an empty associative array.
+     */
+    public PersistentAssociativeArray() {
+        this(null, new Object[WIDTH], 0, 0, 0);
+    }
+
+    private PersistentAssociativeArray(Object root, Object[] order, int orderShift,
+        int used, int size) {
+        this.root = root;
+        this.order = order;
+        this.orderShift = orderShift;
+        this.used = used;
+        this.size = size;
+    }
+
+    // +------------+---------------------------------------------------
+    // | Public API |
+    // +------------+
+
+    /**
+     * Returns a version of this associative array in which the specified key
+     * maps to the specified value. If the key already exists, it keeps its
+     * place in the iteration order.
+     *
+     * @param key the key to be added or updated
+     * @param value the value to be associated with the specified key
+     * @return the new version
+     * @throws NullKeyException if the specified key is null
+     */
+    public PersistentAssociativeArray<K, V> set(K key, V value) throws NullKeyException {
+        if (key == null) {
+            throw new NullKeyException("Key cannot be null.");
+        }
+
+        int hash = HashIndex.hash(key);
+        Leaf<K, V> old = this.find(key, hash);
+        if (old != null) {
+            if (old.value == value) {
+                return this;
+            }
+            Leaf<K, V> leaf = new Leaf<>(key, hash, value, old.seq);
+            return new PersistentAssociativeArray<>(assoc(this.root, leaf, 0),
+                vectorSet(this.order, this.orderShift, old.seq, leaf),
+                this.orderShift, this.used, this.size);
+        }
+
+        Leaf<K, V> leaf = new Leaf<>(key, hash, value, this.used);
+        Object[] newOrder;
+        int newShift = this.orderShift;
+        if (this.used == (WIDTH << this.orderShift)) {
+            // The vector is full; add a level above it.
+            newOrder = new Object[WIDTH];
+            newOrder[0] = this.order;
+            newOrder[1] = vectorPath(this.orderShift, leaf);
+            newShift += BITS;
+        } else {
+            newOrder = vectorSet(this.order, this.orderShift, this.used, leaf);
+        }
+        return new PersistentAssociativeArray<>(assoc(this.root, leaf, 0), newOrder,
+            newShift, this.used + 1, this.size + 1);
+    }
+
+    /**
+     * Gets the value associated with the specified key.
+     *
+     * @param key the key whose associated value is to be returned
+     * @return the value associated with the specified key
+     * @throws KeyNotFoundException if the key does not exist in the associative array
+     */
+    public V get(K key) throws KeyNotFoundException {
+        Leaf<K, V> leaf = (key == null) ? null : this.find(key, HashIndex.hash(key));
+        if (leaf == null) {
+            throw new KeyNotFoundException("Key not found.");
+        }
+        return leaf.value;
+    }
+
+    /**
+     * Checks if the associative array contains the specified key.
+     *
+     * @param key the key to check for existence
+     * @return {@code true} if the key is found, {@code false} otherwise
+     */
+    public boolean hasKey(K key) {
+        return key != null && this.find(key, HashIndex.hash(key)) != null;
+    }
+
+    /**
+     * Returns a version of this associative array without the specified key.
+     * The remaining pairs keep their order.
+     *
+     * @param key the key whose key-value pair is to be removed
+     * @return the new version, or this version if the key is not present
+     */
+    public PersistentAssociativeArray<K, V> remove(K key) {
+        if (key == null) {
+            return this;
+        }
+        int hash = HashIndex.hash(key);
+        Leaf<K, V> old = this.find(key, hash);
+        if (old == null) {
+            return this;
+        }
+
+        PersistentAssociativeArray<K, V> result = new PersistentAssociativeArray<>(
+            dissoc(this.root, key, hash, 0),
+            vectorSet(this.order, this.orderShift, old.seq, null),
+            this.orderShift, this.used, this.size - 1);
+        if (result.used - result.size > Math.max(result.size, WIDTH)) {
+            result = result.compacted();
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of key-value pairs in the associative array.
+     *
+     * @return the number of key-value pairs in this associative array
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns an array of all keys in the associative array, in insertion
+     * order. Since the array is created without knowing {@code K}, its
+     * runtime type is {@code Object[]}.
+     *
+     * @return an array of keys
+     */
+    @SuppressWarnings("unchecked")
+    public K[] keys() {
+        Object[] keysArray = new Object[this.size];
+        int i = 0;
+        for (KVPair<K, V> pair : this) {
+            keysArray[i++] = pair.getKey();
+        }
+        return (K[]) keysArray;
+    }
+
+    /**
+     * Estimates the memory retained by this version, including the
+     * structure it shares with other versions. Keys and values that are
+     * strings are counted; those of other types are not.
+     *
+     * @return the estimated footprint
+     */
+    public Footprint footprint() {
+        return this.footprint(new Footprint());
+    }
+
+    /**
+     * Adds the memory retained by this version to a footprint. Nodes shared
+     * with versions already added are not counted again, so adding several
+     * versions to one footprint measures what they retain together.
+     *
+     * @param total the footprint to add to
+     * @return {@code total}
+     */
+    public Footprint footprint(Footprint total) {
+        total.addOther(this, 2 * Footprint.REFERENCE + 3 * Integer.BYTES);
+        nodeFootprint(this.root, total);
+        vectorFootprint(this.order, this.orderShift, total);
+        return total;
+    }
+
+    /**
+     * Creates an iterator over the key-value pairs in the associative array,
+     * in insertion order. Each pair returned is a fresh copy.
+     *
+     * @return an iterator over the key-value pairs
+     */
+    @Override
+    public Iterator<KVPair<K, V>> iterator() {
+        return new PersistentIterator();
+    }
+
+    private class PersistentIterator implements Iterator<KVPair<K, V>> {
+        private int currentIndex = 0;
+        private Object[] chunk;
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean hasNext() {
+            while (currentIndex < used) {
+                if ((currentIndex & MASK) == 0 || chunk == null) {
+                    chunk = vectorChunk(order, orderShift, currentIndex);
+                }
+                if (chunk[currentIndex & MASK] != null) {
+                    return true;
+                }
+                currentIndex++;
+            }
+            return false;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public KVPair<K, V> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Leaf<K, V> leaf = (Leaf<K, V>) chunk[currentIndex++ & MASK];
+            return new KVPair<>(leaf.key, leaf.value);
+        }
+    }
+
+    // +------+---------------------------------------------------------
+    // | Trie |
+    // +------+
+
+    /**
+     * Finds the leaf for a key, or null if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    private Leaf<K, V> find(K key, int hash) {
+        Object node = this.root;
+        for (int shift = 0; node != null; shift += BITS) {
+            if (node instanceof Leaf) {
+                Leaf<K, V> leaf = (Leaf<K, V>) node;
+                return (leaf.hash == hash && leaf.key.equals(key)) ? leaf : null;
+            } else if (node instanceof CollisionNode) {
+                for (Leaf<?, ?> leaf : ((CollisionNode) node).leaves) {
+                    if (leaf.key.equals(key)) {
+                        return (Leaf<K, V>) leaf;
+                    }
+                }
+                return null;
+            }
+            BitmapNode bn = (BitmapNode) node;
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bn.bitmap & bit) == 0) {
+                return null;
+            }
+            node = bn.array[Integer.bitCount(bn.bitmap & (bit - 1))];
+        }
+        return null;
+    }
+
+    /**
+     * Returns a copy of a subtrie with the given leaf added, replacing any
+     * leaf with the same key.
+     */
+    private static Object assoc(Object node, Leaf<?, ?> leaf, int shift) {
+        if (node == null) {
+            return leaf;
+        } else if (node instanceof Leaf) {
+            Leaf<?, ?> other = (Leaf<?, ?>) node;
+            if (other.hash == leaf.hash && other.key.equals(leaf.key)) {
+                return leaf;
+            }
+            return merge(other, leaf, shift);
+        } else if (node instanceof CollisionNode) {
+            CollisionNode cn = (CollisionNode) node;
+            if (cn.hash != leaf.hash) {
+                // Push the collision node down a level beside the new leaf.
+                BitmapNode wrapper = new BitmapNode(1 << ((cn.hash >>> shift) & MASK),
+                    new Object[] {cn});
+                return assoc(wrapper, leaf, shift);
+            }
+            Leaf<?, ?>[] leaves = cn.leaves;
+            for (int i = 0; i < leaves.length; i++) {
+                if (leaves[i].key.equals(leaf.key)) {
+                    Leaf<?, ?>[] copy = leaves.clone();
+                    copy[i] = leaf;
+                    return new CollisionNode(cn.hash, copy);
+                }
+            }
+            Leaf<?, ?>[] copy = new Leaf<?, ?>[leaves.length + 1];
+            System.arraycopy(leaves, 0, copy, 0, leaves.length);
+            copy[leaves.length] = leaf;
+            return new CollisionNode(cn.hash, copy);
+        }
+
+        BitmapNode bn = (BitmapNode) node;
+        int bit = 1 << ((leaf.hash >>> shift) & MASK);
+        int idx = Integer.bitCount(bn.bitmap & (bit - 1));
+        if ((bn.bitmap & bit) == 0) {
+            Object[] array = new Object[bn.array.length + 1];
+            System.arraycopy(bn.array, 0, array, 0, idx);
+            array[idx] = leaf;
+            System.arraycopy(bn.array, idx, array, idx + 1, bn.array.length - idx);
+            return new BitmapNode(bn.bitmap | bit, array);
+        }
+        Object[] array = bn.array.clone();
+        array[idx] = assoc(bn.array[idx], leaf, shift + BITS);
+        return new BitmapNode(bn.bitmap, array);
+    }
+
+    /**
+     * Builds the smallest subtrie holding two leaves with different keys.
+     */
+    private static Object merge(Leaf<?, ?> a, Leaf<?, ?> b, int shift) {
+        if (shift >= Integer.SIZE || a.hash == b.hash) {
+            return new CollisionNode(a.hash, new Leaf<?, ?>[] {a, b});
+        }
+        int fa = (a.hash >>> shift) & MASK;
+        int fb = (b.hash >>> shift) & MASK;
+        if (fa == fb) {
+            return new BitmapNode(1 << fa, new Object[] {merge(a, b, shift + BITS)});
+        }
+        Object[] array = (fa < fb) ? new Object[] {a, b} : new Object[] {b, a};
+        return new BitmapNode((1 << fa) | (1 << fb), array);
+    }
+
+    /**
+     * Returns a copy of a subtrie without the given key, or null if the
+     * result would be empty. The key must be present.
+     */
+    private static Object dissoc(Object node, Object key, int hash, int shift) {
+        if (node instanceof Leaf) {
+            return null;
+        } else if (node instanceof CollisionNode) {
+            Leaf<?, ?>[] leaves = ((CollisionNode) node).leaves;
+            if (leaves.length == 2) {
+                return leaves[0].key.equals(key) ? leaves[1] : leaves[0];
+            }
+            Leaf<?, ?>[] copy = new Leaf<?, ?>[leaves.length - 1];
+            int n = 0;
+            for (Leaf<?, ?> leaf : leaves) {
+                if (!leaf.key.equals(key)) {
+                    copy[n++] = leaf;
+                }
+            }
+            return new CollisionNode(hash, copy);
+        }
+
+        BitmapNode bn = (BitmapNode) node;
+        int bit = 1 << ((hash >>> shift) & MASK);
+        int idx = Integer.bitCount(bn.bitmap & (bit - 1));
+        Object child = dissoc(bn.array[idx], key, hash, shift + BITS);
+        if (child == null) {
+            if (bn.array.length == 1) {
+                return null;
+            }
+            Object[] array = new Object[bn.array.length - 1];
+            System.arraycopy(bn.array, 0, array, 0, idx);
+            System.arraycopy(bn.array, idx + 1, array, idx, array.length - idx);
+            if (array.length == 1 && !(array[0] instanceof BitmapNode)) {
+                return array[0]; // Let a lone leaf move up toward the root.
+            }
+            return new BitmapNode(bn.bitmap & ~bit, array);
+        }
+        if (bn.array.length == 1 && !(child instanceof BitmapNode)) {
+            return child;
+        }
+        Object[] array = bn.array.clone();
+        array[idx] = child;
+        return new BitmapNode(bn.bitmap, array);
+    }
+
+    /**
+     * Adds a subtrie to a footprint.
+     */
+    private static void nodeFootprint(Object node, Footprint total) {
+        if (node instanceof Leaf) {
+            Leaf<?, ?> leaf = (Leaf<?, ?>) node;
+            total.addOther(leaf, 2 * Footprint.REFERENCE + 2 * Integer.BYTES);
+            total.addKey(leaf.key);
+            total.addValue(leaf.value);
+        } else if (node instanceof CollisionNode) {
+            Leaf<?, ?>[] leaves = ((CollisionNode) node).leaves;
+            total.addOther(node, Footprint.REFERENCE + Integer.BYTES);
+            total.addArray(leaves, leaves.length, Footprint.REFERENCE, leaves.length);
+            for (Leaf<?, ?> leaf : leaves) {
+                nodeFootprint(leaf, total);
+            }
+        } else if (node instanceof BitmapNode) {
+            Object[] array = ((BitmapNode) node).array;
+            total.addOther(node, Footprint.REFERENCE + Integer.BYTES);
+            total.addArray(array, array.length, Footprint.REFERENCE, array.length);
+            for (Object child : array) {
+                nodeFootprint(child, total);
+            }
+        }
+    }
+
+    // +--------------+-------------------------------------------------
+    // | Order vector |
+    // +--------------+
+
+    /**
+     * Adds the arrays of the vector to a footprint; the leaves they hold
+     * are in the trie too.
+     */
+    private static void vectorFootprint(Object[] node, int shift, Footprint total) {
+        int used = 0;
+        for (Object slot : node) {
+            if (slot != null) {
+                used++;
+                if (shift > 0) {
+                    vectorFootprint((Object[]) slot, shift - BITS, total);
+                }
+            }
+        }
+        total.addArray(node, node.length, Footprint.REFERENCE, used);
+    }
+
+    /**
+     * Returns a copy of the vector with slot i set to the given value. The
+     * vector must already have room for slot i.
+     */
+    private static Object[] vectorSet(Object[] node, int shift, int i, Object value) {
+        Object[] copy = node.clone();
+        if (shift == 0) {
+            copy[i & MASK] = value;
+        } else {
+            int sub = (i >>> shift) & MASK;
+            Object[] child = (Object[]) node[sub];
+            copy[sub] = (child == null)
+                ? vectorPath(shift - BITS, value)
+                : vectorSet(child, shift - BITS, i, value);
+        }
+        return copy;
+    }
+
+    /**
+     * Builds a fresh branch of the given shift whose first slot is the value.
+     */
+    private static Object[] vectorPath(int shift, Object value) {
+        Object[] node = new Object[WIDTH];
+        node[0] = (shift == 0) ? value : vectorPath(shift - BITS, value);
+        return node;
+    }
+
+    /**
+     * Returns the leaf level of the vector that holds slot i.
+     */
+    private static Object[] vectorChunk(Object[] node, int shift, int i) {
+        for (int s = shift; s > 0; s -= BITS) {
+            node = (Object[]) node[(i >>> s) & MASK];
+        }
+        return node;
+    }
+
+    /**
+     * Rebuilds this version with no empty slots in the order vector.
+     */
+    private PersistentAssociativeArray<K, V> compacted() {
+        PersistentAssociativeArray<K, V> result = new PersistentAssociativeArray<>();
+        try {
+            for (KVPair<K, V> pair : this) {
+                result = result.set(pair.getKey(), pair.getValue());
+            }
+        } catch (NullKeyException e) {
+            // Keys already in the array are never null.
+            throw new IllegalStateException(e);
+        }
+        return result;
+    }
+}
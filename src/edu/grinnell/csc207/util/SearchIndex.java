@@ -0,0 +1,849 @@
+package edu.grinnell.csc207.util;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * A search index over the tiles of a board, for finding a tile by typing
+ * a few letters of its text or image name. Tiles are added and removed one
+ * at a time as the board changes, and queries return the best matches
+ * first: exact words, then words the query begins, then words within a
+ * typo or two of the query.
+ * <p>
+ * The index has two levels. The first maps each distinct word to the
+ * tiles that use it. The second breaks each distinct word into trigrams
+ * (three-character pieces, with the start and end of the word marked) and
+ * maps each trigram to the words that contain it. A query word can only
+ * match words that share enough of its trigrams (all of them for a prefix,
+ * all but four per typo otherwise), so only those words are compared with
+ * it, each once however many tiles use it; the tiles are then scored from
+ * their words' postings. A query word with no more trigrams than four per
+ * typo, such as a four-letter word with its first two letters swapped,
+ * may share none with the word meant, so it is also compared with every
+ * word of about its length, which the index keeps in buckets by length.
+ * </p>
+ * <p>
+ * The index is not thread-safe; queries reuse scratch arrays.
+ * </p>
+ *
+ * @author Moise Milenge
+ */
+public class SearchIndex {
+
+    /**
+     * A search result: one tile and how well it matched.
+     */
+    public static final class Result {
+        private final String category;
+        private final String imageLoc;
+        private final String text;
+        private final int score;
+
+        Result(String category, String imageLoc, String text, int score) {
+            this.category = category;
+            this.imageLoc = imageLoc;
+            this.text = text;
+            this.score = score;
+        }
+
+        /**
+         * Returns the category of the tile, as given to {@link SearchIndex#add}.
+         *
+         * @return the category
+         */
+        public String getCategory() {
+            return this.category;
+        }
+
+        /**
+         * Returns the image location of the tile.
+         *
+         * @return the image location
+         */
+        public String getImageLoc() {
+            return this.imageLoc;
+        }
+
+        /**
+         * Returns the text of the tile.
+         *
+         * @return the text
+         */
+        public String getText() {
+            return this.text;
+        }
+
+        /**
+         * Returns the score of the match; higher is better.
+         *
+         * @return the score
+         */
+        public int getScore() {
+            return this.score;
+        }
+
+        @Override
+        public String toString() {
+            return this.category + " " + this.imageLoc + " " + this.text + " (" + this.score + ")";
+        }
+    }
+
+    private static final Result[] NO_RESULTS = new Result[0];
+    private static final int[] NO_INTS = new int[0];
+
+    /** Scores for a query word matching a word of a tile. */
+    private static final int EXACT = 100;
+    private static final int PREFIX = 90;
+    private static final int FUZZY = 60;
+    private static final int PER_TYPO = 15;
+
+    /** The penalty for matching a word of the image name rather than the text. */
+    private static final int IMAGE_PENALTY = 20;
+
+    /** The bonus for a tile whose whole text is the query. */
+    private static final int WHOLE_TEXT = 50;
+
+    /** The longest words kept in the length buckets. */
+    private static final int LONGEST_BUCKETED = 10;
+
+    // Tiles, by id. Ids of removed tiles are reused.
+    private String[] categories = new String[16];
+    private String[] imageLocs = new String[16];
+    private String[] texts = new String[16];
+    private int[] textLengths = new int[16]; // The number of words in each text
+    private int[] freeIds = new int[16];
+    private int freeCount;
+    private int nextTile;
+    private int size;
+
+    /** Maps category and image location (see {@link #tileKey}) to tile ids. */
+    private final AssociativeArray<String, Integer> tileIds = new AssociativeArray<>();
+
+    // Distinct words, by id, with their postings. Each posting entry is a
+    // tile id shifted left by one, with the low bit set for an image word.
+    private final AssociativeArray<String, Integer> wordIds = new AssociativeArray<>();
+    private String[] words = new String[16];
+    private int[][] wordPostings = new int[16][];
+    private int[] wordPostingSizes = new int[16];
+    private int wordCount;
+
+    // The trigram postings (word ids), in an open-addressing table keyed by trigram.
+    private int[] grams = new int[64];
+    private int[][] gramPostings = new int[64][];
+    private int[] gramPostingSizes = new int[64];
+    private int gramCount;
+
+    // The ids of the distinct words of each length, up to LONGEST_BUCKETED.
+    private int[][] lengthWords = new int[LONGEST_BUCKETED + 1][];
+    private int[] lengthWordCounts = new int[LONGEST_BUCKETED + 1];
+
+    // Scratch space for queries, indexed by word id or by tile id.
+    private int[] wordHits = new int[16];
+    private int[] wordHitsEpoch = new int[16];
+    private int[] tileBest = new int[16];
+    private int[] tileBestEpoch = new int[16];
+    private int[] tileTotal = new int[16];
+    private int[] tileMatched = new int[16];
+    private int[] tileMatchedEpoch = new int[16];
+    private int[] touched = new int[16]; // The tiles matched by a query
+    private int epoch;
+    private int[] row0 = new int[16];
+    private int[] row1 = new int[16];
+    private int[] row2 = new int[16];
+
+    /**
+     * Constructs an empty index.
+     */
+    public SearchIndex() {
+        this.size = 0;
+    }
+
+    // +------------+---------------------------------------------------
+    // | Public API |
+    // +------------+
+
+    /**
+     * Adds a tile to the index, replacing any tile with the same category
+     * and image location.
+     *
+     * @param category the category of the tile
+     * @param imageLoc the image location of the tile
+     * @param text the text of the tile
+     * @throws NullKeyException if the category or image location is null
+     */
+    public void add(String category, String imageLoc, String text) throws NullKeyException {
+        if (category == null || imageLoc == null) {
+            throw new NullKeyException("Key cannot be null.");
+        }
+        this.remove(category, imageLoc);
+
+        int id = this.newTile();
+        this.categories[id] = category;
+        this.imageLocs[id] = imageLoc;
+        this.texts[id] = (text == null) ? "" : text;
+        this.textLengths[id] = words(text).length;
+        this.tileIds.set(tileKey(category, imageLoc), id);
+        this.size++;
+
+        int[] entries = this.entries(id);
+        for (int i = 0; i < entries.length; i += 2) {
+            this.post(entries[i], entries[i + 1]);
+        }
+    }
+
+    /**
+     * Adds every tile of another index, as if by {@link #add} in the order
+     * they were added there, but taking their words from the other index
+     * rather than splitting their texts again: each distinct word is looked
+     * up here once, and its postings are copied over. Indexes of parts of a
+     * board can so be built on several threads and then added to one index
+     * at a small fraction of the cost of adding their tiles.
+     *
+     * @param other the index whose tiles to add; it is left as it is
+     */
+    public void addAll(SearchIndex other) {
+        int[] ids = new int[other.nextTile]; // Maps tile ids there to tile ids here
+        try {
+            for (int i = 0; i < other.tileIds.size(); i++) {
+                String key = other.tileIds.keyAt(i);
+                int otherId = other.tileIds.valueAt(i);
+                String category = other.categories[otherId];
+                String imageLoc = other.imageLocs[otherId];
+                if (this.tileIds.hasKey(key)) {
+                    this.remove(category, imageLoc);
+                }
+                int id = this.newTile();
+                this.categories[id] = category;
+                this.imageLocs[id] = imageLoc;
+                this.texts[id] = other.texts[otherId];
+                this.textLengths[id] = other.textLengths[otherId];
+                this.tileIds.set(key, id);
+                this.size++;
+                ids[otherId] = id;
+            }
+        } catch (NullKeyException e) {
+            // The keys were keys there
+            throw new IllegalStateException(e);
+        }
+
+        for (int w = 0; w < other.wordCount; w++) {
+            int n = other.wordPostingSizes[w];
+            if (n == 0) {
+                continue;
+            }
+            int word = this.wordId(other.words[w]);
+            int[] posting = other.wordPostings[w];
+            for (int i = 0; i < n; i++) {
+                int entry = posting[i];
+                this.post(word, (ids[entry >>> 1] << 1) | (entry & 1));
+            }
+        }
+    }
+
+    /**
+     * Removes a tile from the index, if it is there.
+     *
+     * @param category the category of the tile
+     * @param imageLoc the image location of the tile
+     */
+    public void remove(String category, String imageLoc) {
+        if (category == null || imageLoc == null) {
+            return;
+        }
+        String key = tileKey(category, imageLoc);
+        int id;
+        try {
+            if (!this.tileIds.hasKey(key)) {
+                return;
+            }
+            id = this.tileIds.get(key);
+        } catch (KeyNotFoundException e) {
+            return;
+        }
+
+        int[] entries = this.entries(id);
+        for (int i = 0; i < entries.length; i += 2) {
+            this.unpost(entries[i], entries[i + 1]);
+        }
+        this.tileIds.remove(key);
+        this.categories[id] = null;
+        this.imageLocs[id] = null;
+        this.texts[id] = null;
+        if (this.freeCount == this.freeIds.length) {
+            this.freeIds = Arrays.copyOf(this.freeIds, this.freeCount * 2);
+        }
+        this.freeIds[this.freeCount++] = id;
+        this.size--;
+    }
+
+    /**
+     * Returns the number of tiles in the index.
+     *
+     * @return the number of tiles
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Adds the memory retained by this index to a footprint: the tiles, the
+     * words and their postings, the trigram table, the words by length, and
+     * the scratch space kept for queries. Strings shared with the board are counted once.
+     *
+     * @param total the footprint to add to
+     * @return {@code total}
+     */
+    public Footprint footprint(Footprint total) {
+        total.addOther(this, 26 * Footprint.REFERENCE + 6 * Integer.BYTES);
+        total.addArray(this.categories, this.categories.length, Footprint.REFERENCE, this.nextTile);
+        total.addArray(this.imageLocs, this.imageLocs.length, Footprint.REFERENCE, this.nextTile);
+        total.addArray(this.texts, this.texts.length, Footprint.REFERENCE, this.nextTile);
+        for (int t = 0; t < this.nextTile; t++) {
+            total.addOther(this.categories[t], 0);
+            total.addOther(this.imageLocs[t], 0);
+            total.addOther(this.texts[t], 0);
+        }
+        total.addArray(this.textLengths, this.textLengths.length, Integer.BYTES, this.nextTile);
+        total.addArray(this.freeIds, this.freeIds.length, Integer.BYTES, this.freeCount);
+        this.tileIds.footprint(total);
+        this.wordIds.footprint(total);
+        total.addArray(this.words, this.words.length, Footprint.REFERENCE, this.wordCount);
+        total.addArray(this.wordPostings, this.wordPostings.length, Footprint.REFERENCE,
+            this.wordCount);
+        total.addArray(this.wordPostingSizes, this.wordPostingSizes.length, Integer.BYTES,
+            this.wordCount);
+        for (int w = 0; w < this.wordCount; w++) {
+            total.addOther(this.words[w], 0);
+            int[] posting = this.wordPostings[w];
+            if (posting != null) {
+                total.addArray(posting, posting.length, Integer.BYTES, this.wordPostingSizes[w]);
+            }
+        }
+        total.addArray(this.grams, this.grams.length, Integer.BYTES, this.gramCount);
+        total.addArray(this.gramPostings, this.gramPostings.length, Footprint.REFERENCE,
+            this.gramCount);
+        total.addArray(this.gramPostingSizes, this.gramPostingSizes.length, Integer.BYTES,
+            this.gramCount);
+        for (int slot = 0; slot < this.gramPostings.length; slot++) {
+            int[] posting = this.gramPostings[slot];
+            if (posting != null) {
+                total.addArray(posting, posting.length, Integer.BYTES,
+                    this.gramPostingSizes[slot]);
+            }
+        }
+        total.addArray(this.lengthWords, this.lengthWords.length, Footprint.REFERENCE,
+            this.lengthWords.length);
+        total.addArray(this.lengthWordCounts, this.lengthWordCounts.length, Integer.BYTES,
+            this.lengthWordCounts.length);
+        for (int len = 0; len < this.lengthWords.length; len++) {
+            int[] bucket = this.lengthWords[len];
+            if (bucket != null) {
+                total.addArray(bucket, bucket.length, Integer.BYTES, this.lengthWordCounts[len]);
+            }
+        }
+        for (int[] scratch : new int[][] {this.wordHits, this.wordHitsEpoch, this.tileBest,
+            this.tileBestEpoch, this.tileTotal, this.tileMatched, this.tileMatchedEpoch,
+            this.touched, this.row0, this.row1, this.row2}) {
+            total.addArray(scratch, scratch.length, Integer.BYTES, scratch.length);
+        }
+        return total;
+    }
+
+    /**
+     * Finds the tiles that best match a query. Every word of the query must
+     * match a word of the tile's text or image name, exactly, as a prefix,
+     * or with a typo (two typos for words of eight or more letters). Case
+     * is ignored.
+     *
+     * @param query the query
+     * @param limit the maximum number of results
+     * @return the matching tiles, best first
+     */
+    public Result[] search(String query, int limit) {
+        String[] queryWords = words(query);
+        if (queryWords.length == 0 || limit <= 0 || this.size == 0) {
+            return NO_RESULTS;
+        }
+
+        // Score the tiles one query word at a time, keeping only those that
+        // matched every word so far.
+        int queryEpoch = ++this.epoch;
+        int[] touched = this.touched;
+        int touchedCount = 0;
+        for (int w = 0; w < queryWords.length; w++) {
+            int[] matches = this.matchWords(queryWords[w]);
+            int wordEpoch = ++this.epoch;
+            touchedCount = 0;
+            for (int m = 0; m < matches.length; m += 2) {
+                int[] posting = this.wordPostings[matches[m]];
+                for (int i = 0, end = this.wordPostingSizes[matches[m]]; i < end; i++) {
+                    int entry = posting[i];
+                    int tile = entry >>> 1;
+                    if (w > 0 && (this.tileMatchedEpoch[tile] != queryEpoch
+                        || this.tileMatched[tile] != w)) {
+                        continue;
+                    }
+                    int score = matches[m + 1] - (((entry & 1) != 0) ? IMAGE_PENALTY : 0);
+                    if (this.tileBestEpoch[tile] != wordEpoch) {
+                        this.tileBestEpoch[tile] = wordEpoch;
+                        this.tileBest[tile] = score;
+                        if (touchedCount == touched.length) {
+                            touched = this.touched = Arrays.copyOf(touched, touchedCount * 2);
+                        }
+                        touched[touchedCount++] = tile;
+                    } else if (score > this.tileBest[tile]) {
+                        this.tileBest[tile] = score;
+                    }
+                }
+            }
+            for (int i = 0; i < touchedCount; i++) {
+                int tile = touched[i];
+                if (w == 0) {
+                    this.tileMatchedEpoch[tile] = queryEpoch;
+                    this.tileTotal[tile] = 0;
+                }
+                this.tileTotal[tile] += this.tileBest[tile];
+                this.tileMatched[tile] = w + 1;
+            }
+        }
+
+        // Keep the best, breaking ties by id so that results do not depend
+        // on the order of the postings.
+        int[] topIds = new int[Math.min(limit, touchedCount)];
+        int[] topScores = new int[topIds.length];
+        int n = 0;
+        for (int i = 0; i < touchedCount; i++) {
+            int tile = touched[i];
+            int score = this.tileTotal[tile];
+            if (score == EXACT * queryWords.length && this.textLengths[tile] == queryWords.length
+                && Arrays.equals(words(this.texts[tile]), queryWords)) {
+                score += WHOLE_TEXT;
+            }
+            if (n == topIds.length && !ranksBefore(score, tile, topScores[n - 1], topIds[n - 1])) {
+                continue;
+            }
+            int pos = (n < topIds.length) ? n++ : n - 1;
+            while (pos > 0 && ranksBefore(score, tile, topScores[pos - 1], topIds[pos - 1])) {
+                topIds[pos] = topIds[pos - 1];
+                topScores[pos] = topScores[pos - 1];
+                pos--;
+            }
+            topIds[pos] = tile;
+            topScores[pos] = score;
+        }
+
+        Result[] results = new Result[n];
+        for (int i = 0; i < n; i++) {
+            int id = topIds[i];
+            results[i] = new Result(this.categories[id], this.imageLocs[id], this.texts[id],
+                topScores[i]);
+        }
+        return results;
+    }
+
+    private static boolean ranksBefore(int score, int id, int otherScore, int otherId) {
+        return score > otherScore || (score == otherScore && id < otherId);
+    }
+
+    // +----------+-----------------------------------------------------
+    // | Matching |
+    // +----------+
+
+    /**
+     * Finds the distinct words that a query word matches, with their
+     * scores, as pairs of word id and score.
+     */
+    private int[] matchWords(String word) {
+        int[] wordGrams = queryGrams(word);
+        int typos = maxTypos(word);
+        int needed = Math.max(1, wordGrams.length - 4 * typos);
+        int wordEpoch = ++this.epoch;
+        int[] result = new int[16];
+        int n = 0;
+        for (int gram : wordGrams) {
+            int slot = this.gramSlot(gram);
+            if (this.grams[slot] == 0) {
+                continue;
+            }
+            int[] posting = this.gramPostings[slot];
+            for (int i = 0, end = this.gramPostingSizes[slot]; i < end; i++) {
+                int id = posting[i];
+                if (this.wordHitsEpoch[id] != wordEpoch) {
+                    this.wordHitsEpoch[id] = wordEpoch;
+                    this.wordHits[id] = 0;
+                }
+                if (++this.wordHits[id] != needed || this.wordPostingSizes[id] == 0) {
+                    continue;
+                }
+                int score = this.match(word, this.words[id], typos);
+                if (score > 0) {
+                    if (n == result.length) {
+                        result = Arrays.copyOf(result, n * 2);
+                    }
+                    result[n++] = id;
+                    result[n++] = score;
+                }
+            }
+        }
+
+        // The typos may have changed every trigram of the word, so compare
+        // it with the words of about its length that shared none.
+        if (wordGrams.length <= 4 * typos) {
+            int longest = Math.min(LONGEST_BUCKETED, word.length() + typos);
+            for (int len = Math.max(1, word.length() - typos); len <= longest; len++) {
+                int[] bucket = this.lengthWords[len];
+                for (int i = 0, end = this.lengthWordCounts[len]; i < end; i++) {
+                    int id = bucket[i];
+                    if (this.wordHitsEpoch[id] == wordEpoch || this.wordPostingSizes[id] == 0) {
+                        continue;
+                    }
+                    int score = this.match(word, this.words[id], typos);
+                    if (score > 0) {
+                        if (n == result.length) {
+                            result = Arrays.copyOf(result, n * 2);
+                        }
+                        result[n++] = id;
+                        result[n++] = score;
+                    }
+                }
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /**
+     * Returns the number of typos allowed in a query word.
+     */
+    private static int maxTypos(String word) {
+        return (word.length() < 4) ? 0 : (word.length() < 8) ? 1 : 2;
+    }
+
+    /**
+     * Scores how well a query word matches a word of a tile, or returns 0
+     * if it does not.
+     */
+    private int match(String word, String tileWord, int typos) {
+        if (tileWord.startsWith(word)) {
+            return (tileWord.length() == word.length())
+                ? EXACT : PREFIX - Math.min(10, tileWord.length() - word.length());
+        }
+        if (typos == 0 || tileWord.length() < word.length() - typos) {
+            return 0;
+        }
+        int distance = this.prefixDistance(word, tileWord, typos);
+        return (distance <= typos) ? FUZZY - PER_TYPO * distance : 0;
+    }
+
+    /**
+     * Computes the smallest edit distance (with transpositions) between a
+     * query word and a prefix of a tile word, giving up once it must
+     * exceed the limit.
+     */
+    private int prefixDistance(String word, String tileWord, int limit) {
+        int n = tileWord.length();
+        if (this.row0.length <= n) {
+            this.row0 = new int[n + 1];
+            this.row1 = new int[n + 1];
+            this.row2 = new int[n + 1];
+        }
+        int[] before = this.row0; // two rows back
+        int[] prev = this.row1;
+        int[] cur = this.row2;
+        for (int j = 0; j <= n; j++) {
+            prev[j] = j;
+        }
+        int prevMin = 0;
+        for (int i = 1; i <= word.length(); i++) {
+            char c = word.charAt(i - 1);
+            cur[0] = i;
+            int rowMin = i;
+            for (int j = 1; j <= n; j++) {
+                char d = tileWord.charAt(j - 1);
+                int cost = (c == d) ? 0 : 1;
+                int v = Math.min(Math.min(prev[j] + 1, cur[j - 1] + 1), prev[j - 1] + cost);
+                if (i > 1 && j > 1 && c == tileWord.charAt(j - 2) && word.charAt(i - 2) == d) {
+                    v = Math.min(v, before[j - 2] + 1);
+                }
+                cur[j] = v;
+                rowMin = Math.min(rowMin, v);
+            }
+            if (rowMin > limit && prevMin > limit) {
+                return rowMin; // no later row can come back under the limit
+            }
+            prevMin = rowMin;
+            int[] t = before;
+            before = prev;
+            prev = cur;
+            cur = t;
+        }
+        // The whole query against any prefix of the tile word.
+        int best = prev[0];
+        for (int j = 1; j <= n; j++) {
+            best = Math.min(best, prev[j]);
+        }
+        return best;
+    }
+
+    // +----------+-----------------------------------------------------
+    // | Postings |
+    // +----------+
+
+    /**
+     * Returns the distinct posting entries of a tile, as pairs of word id
+     * and entry, adding any new words to the index.
+     */
+    private int[] entries(int tile) {
+        String[] textWords = words(this.texts[tile]);
+        String[] imageWords = words(imageName(this.imageLocs[tile]));
+        int[] result = new int[2 * (textWords.length + imageWords.length)];
+        int n = 0;
+        for (int i = 0; i < textWords.length + imageWords.length; i++) {
+            boolean image = i >= textWords.length;
+            int word = this.wordId(image ? imageWords[i - textWords.length] : textWords[i]);
+            int entry = (tile << 1) | (image ? 1 : 0);
+            boolean seen = false;
+            for (int j = 0; j < n && !seen; j += 2) {
+                seen = result[j] == word && result[j + 1] == entry;
+            }
+            if (!seen) {
+                result[n++] = word;
+                result[n++] = entry;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /**
+     * Returns an id for a new tile, reusing that of a removed tile if there
+     * is one.
+     */
+    private int newTile() {
+        if (this.freeCount > 0) {
+            return this.freeIds[--this.freeCount];
+        }
+        int id = this.nextTile++;
+        if (id == this.categories.length) {
+            this.growTiles(id * 2);
+        }
+        return id;
+    }
+
+    private void post(int word, int entry) {
+        int[] posting = this.wordPostings[word];
+        int n = this.wordPostingSizes[word];
+        if (n == posting.length) {
+            posting = this.wordPostings[word] = Arrays.copyOf(posting, Math.max(4, n * 2));
+        }
+        posting[n] = entry;
+        this.wordPostingSizes[word] = n + 1;
+    }
+
+    /**
+     * Removes an entry from the postings of a word. Postings do not keep
+     * order, so the last entry takes its place. Words that lose their last
+     * tile stay in the index, as they are likely to come back.
+     */
+    private void unpost(int word, int entry) {
+        int[] posting = this.wordPostings[word];
+        int n = this.wordPostingSizes[word];
+        for (int i = 0; i < n; i++) {
+            if (posting[i] == entry) {
+                posting[i] = posting[n - 1];
+                this.wordPostingSizes[word] = n - 1;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Finds the id of a distinct word, adding the word and its trigrams if
+     * it is new.
+     */
+    private int wordId(String word) {
+        try {
+            if (this.wordIds.hasKey(word)) {
+                return this.wordIds.get(word);
+            }
+            int id = this.wordCount++;
+            if (id == this.words.length) {
+                this.words = Arrays.copyOf(this.words, id * 2);
+                this.wordPostings = Arrays.copyOf(this.wordPostings, id * 2);
+                this.wordPostingSizes = Arrays.copyOf(this.wordPostingSizes, id * 2);
+                this.wordHits = Arrays.copyOf(this.wordHits, id * 2);
+                this.wordHitsEpoch = Arrays.copyOf(this.wordHitsEpoch, id * 2);
+            }
+            this.words[id] = word;
+            this.wordPostings[id] = NO_INTS;
+            this.wordIds.set(word, id);
+            for (int gram : grams(word, true)) {
+                this.postGram(gram, id);
+            }
+            int len = word.length();
+            if (len <= LONGEST_BUCKETED) {
+                int count = this.lengthWordCounts[len];
+                if (this.lengthWords[len] == null) {
+                    this.lengthWords[len] = new int[16];
+                } else if (count == this.lengthWords[len].length) {
+                    this.lengthWords[len] = Arrays.copyOf(this.lengthWords[len], count * 2);
+                }
+                this.lengthWords[len][count] = id;
+                this.lengthWordCounts[len] = count + 1;
+            }
+            return id;
+        } catch (KeyNotFoundException | NullKeyException e) {
+            // Words are never null, and the word was just found.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void growTiles(int capacity) {
+        this.categories = Arrays.copyOf(this.categories, capacity);
+        this.imageLocs = Arrays.copyOf(this.imageLocs, capacity);
+        this.texts = Arrays.copyOf(this.texts, capacity);
+        this.textLengths = Arrays.copyOf(this.textLengths, capacity);
+        this.tileBest = Arrays.copyOf(this.tileBest, capacity);
+        this.tileBestEpoch = Arrays.copyOf(this.tileBestEpoch, capacity);
+        this.tileTotal = Arrays.copyOf(this.tileTotal, capacity);
+        this.tileMatched = Arrays.copyOf(this.tileMatched, capacity);
+        this.tileMatchedEpoch = Arrays.copyOf(this.tileMatchedEpoch, capacity);
+    }
+
+    // +----------+-----------------------------------------------------
+    // | Trigrams |
+    // +----------+
+
+    /**
+     * Returns the distinct trigrams of a word, padded with two start marks
+     * and, for words of the index, one end mark. Query words are not
+     * marked at the end, so that they also match longer words they begin.
+     */
+    private static int[] grams(String word, boolean markEnd) {
+        int len = word.length() + (markEnd ? 1 : 0);
+        int[] result = new int[len];
+        for (int i = 0; i < len; i++) {
+            result[i] = gram(charAt(word, i - 2), charAt(word, i - 1), charAt(word, i));
+        }
+        Arrays.sort(result);
+        int n = 0;
+        for (int i = 0; i < len; i++) {
+            if (i == 0 || result[i] != result[i - 1]) {
+                result[n++] = result[i];
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    private static int[] queryGrams(String word) {
+        return grams(word, false);
+    }
+
+    /**
+     * Returns a character of a padded word: '$' before and after it.
+     */
+    private static char charAt(String word, int i) {
+        return (i < 0 || i >= word.length()) ? '$' : word.charAt(i);
+    }
+
+    /**
+     * Packs three characters into a nonzero int. Characters beyond the
+     * first 1024 share codes, which only adds candidates.
+     */
+    private static int gram(char a, char b, char c) {
+        return ((a & 0x3FF) << 20) | ((b & 0x3FF) << 10) | (c & 0x3FF) | (1 << 30);
+    }
+
+    /**
+     * Finds the slot of a trigram in the table, or the empty slot where it
+     * would go.
+     */
+    private int gramSlot(int gram) {
+        int mask = this.grams.length - 1;
+        int h = gram * 0x9E3779B9; // Fibonacci hashing, as trigrams differ mostly in low bits
+        int slot = (h ^ (h >>> 16)) & mask;
+        while (this.grams[slot] != 0 && this.grams[slot] != gram) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void postGram(int gram, int word) {
+        int slot = this.gramSlot(gram);
+        if (this.grams[slot] == 0) {
+            if (2 * (this.gramCount + 1) > this.grams.length) {
+                this.growGrams();
+                slot = this.gramSlot(gram);
+            }
+            this.grams[slot] = gram;
+            this.gramPostings[slot] = new int[4];
+            this.gramCount++;
+        }
+        int[] posting = this.gramPostings[slot];
+        int n = this.gramPostingSizes[slot];
+        if (n == posting.length) {
+            posting = this.gramPostings[slot] = Arrays.copyOf(posting, n * 2);
+        }
+        posting[n] = word;
+        this.gramPostingSizes[slot] = n + 1;
+    }
+
+    private void growGrams() {
+        int[] oldGrams = this.grams;
+        int[][] oldPostings = this.gramPostings;
+        int[] oldSizes = this.gramPostingSizes;
+        this.grams = new int[oldGrams.length * 2];
+        this.gramPostings = new int[oldGrams.length * 2][];
+        this.gramPostingSizes = new int[oldGrams.length * 2];
+        for (int i = 0; i < oldGrams.length; i++) {
+            if (oldGrams[i] != 0) {
+                int slot = this.gramSlot(oldGrams[i]);
+                this.grams[slot] = oldGrams[i];
+                this.gramPostings[slot] = oldPostings[i];
+                this.gramPostingSizes[slot] = oldSizes[i];
+            }
+        }
+    }
+
+    // +-------+--------------------------------------------------------
+    // | Words |
+    // +-------+
+
+    /**
+     * Splits text into lower-case words of letters and digits.
+     */
+    static String[] words(String text) {
+        if (text == null) {
+            return new String[0];
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        String[] result = new String[4];
+        int n = 0;
+        int start = -1;
+        for (int i = 0; i <= lower.length(); i++) {
+            boolean inWord = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+            if (inWord && start < 0) {
+                start = i;
+            } else if (!inWord && start >= 0) {
+                if (n == result.length) {
+                    result = Arrays.copyOf(result, n * 2);
+                }
+                result[n++] = lower.substring(start, i);
+                start = -1;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /**
+     * Returns the file name of an image location, without its directory or
+     * extension.
+     */
+    static String imageName(String imageLoc) {
+        int start = Math.max(imageLoc.lastIndexOf('/'), imageLoc.lastIndexOf('\\')) + 1;
+        int end = imageLoc.lastIndexOf('.');
+        return imageLoc.substring(start, (end > start) ? end : imageLoc.length());
+    }
+
+    private static String tileKey(String category, String imageLoc) {
+        return category + '\n' + imageLoc;
+    }
+}
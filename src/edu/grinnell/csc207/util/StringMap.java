@@ -0,0 +1,402 @@
+package edu.grinnell.csc207.util;
+
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+
+/**
+ * An associative array from strings to strings. It behaves like an
+ * {@code AssociativeArray<String, String>}, but keeps keys, values and
+ * cached hash codes in parallel arrays rather than in one {@link KVPair}
+ * per entry, so an entry costs no objects beyond its two strings.
+ * Entries are kept in insertion order and found through an open-addressing
+ * hash index. As in {@link AssociativeArray}, removal leaves an empty slot
+ * so that the remaining entries keep their order.
+ *
+ * @author Moise Milenge
+ */
+public class StringMap {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * The keys, in insertion order. Only the first {@code used} are in use;
+     * removed entries leave null keys.
+     */
+    private String[] keys;
+
+    /** The value for the key at the same position of {@code keys}. */
+    private String[] values;
+
+    /** The cached hash of the key at the same position of {@code keys}. */
+    private int[] hashes;
+
+    /** The hash index over {@code keys}; see {@link HashIndex}. */
+    private int[] index;
+
+    private int size;
+    private int used;
+    private int modCount; // Changes whenever a key is added or removed
+
+    /**
+     * Constructs an empty map with the default initial capacity.
+     */
+    public StringMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs an empty map that can hold the given number of entries
+     * before it needs to grow.
+     *
+     * @param initialCapacity the initial capacity
+     * @throws IllegalArgumentException if the capacity is negative
+     */
+    public StringMap(int initialCapacity) {
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("Illegal capacity: " + initialCapacity);
+        }
+        this.keys = new String[initialCapacity];
+        this.values = new String[initialCapacity];
+        this.hashes = new int[initialCapacity];
+        this.index = new int[HashIndex.tableSize(initialCapacity)];
+        this.size = 0;
+        this.used = 0;
+    }
+
+    /**
+     * Sets the value associated with the specified key. If the key already
+     * exists, its value is updated.
+     *
+     * @param key the key to be added or updated
+     * @param value the value to be associated with the specified key
+     * @throws NullKeyException if the specified key is null
+     */
+    public void set(String key, String value) throws NullKeyException {
+        if (key == null) {
+            throw new NullKeyException("Key cannot be null.");
+        }
+
+        int hash = HashIndex.hash(key);
+        int pos = this.getKeyPos(key, hash);
+        if (pos > -1) {
+            this.values[pos] = value;
+            return;
+        }
+
+        int capacity = this.keys.length;
+        if (this.used >= capacity) {
+            // Reclaim empty slots if that frees enough room; otherwise grow.
+            this.resize(this.size < capacity / 2
+                ? capacity : Math.max(capacity * 2, DEFAULT_CAPACITY));
+        }
+
+        this.keys[this.used] = key;
+        this.values[this.used] = value;
+        this.hashes[this.used] = hash;
+        HashIndex.add(this.index, hash, this.used);
+        this.used++;
+        this.size++;
+        this.modCount++;
+    }
+
+    /**
+     * Sets the first {@code count} keys to the corresponding values, as if
+     * by calling {@link #set} on each in turn, but growing the map at most
+     * once beforehand. Later duplicates of a key overwrite earlier ones.
+     *
+     * @param keys the keys to be added or updated
+     * @param values the values to be associated with the keys
+     * @param count the number of keys and values to use
+     * @throws NullKeyException if one of the keys is null; the entries before
+     *         it have been set
+     */
+    public void setAll(String[] keys, String[] values, int count) throws NullKeyException {
+        this.ensureCapacity(this.size + count);
+        for (int i = 0; i < count; i++) {
+            this.set(keys[i], values[i]);
+        }
+    }
+
+    /**
+     * Sets every key of another map to its value there, in that map's
+     * order, growing this map at most once beforehand.
+     *
+     * @param other the map to copy entries from
+     */
+    public void setAll(StringMap other) {
+        other.compact();
+        this.ensureCapacity(this.size + other.size);
+        try {
+            this.setAll(other.keys, other.values, other.size);
+        } catch (NullKeyException e) {
+            // Keys already in a map are never null.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Makes sure the map can hold at least the given number of entries
+     * without growing again.
+     *
+     * @param minCapacity the desired minimum capacity
+     */
+    public void ensureCapacity(int minCapacity) {
+        if (minCapacity > this.keys.length) {
+            this.resize(Math.max(minCapacity, this.keys.length * 2));
+        }
+    }
+
+    /**
+     * Shrinks the underlying arrays to hold exactly the current entries,
+     * releasing unused capacity.
+     */
+    public void trimToSize() {
+        if (this.size < this.keys.length) {
+            this.resize(this.size);
+        }
+    }
+
+    /**
+     * Gets the value associated with the specified key.
+     *
+     * @param key the key whose associated value is to be returned
+     * @return the value associated with the specified key
+     * @throws KeyNotFoundException if the key does not exist in the map
+     */
+    public String get(String key) throws KeyNotFoundException {
+        int pos = this.getKeyPos(key);
+        if (pos > -1) {
+            return this.values[pos];
+        }
+        throw new KeyNotFoundException("Key not found.");
+    }
+
+    /**
+     * Checks if the map contains the specified key.
+     *
+     * @param key the key to check for existence
+     * @return {@code true} if the key is found, {@code false} otherwise
+     */
+    public boolean hasKey(String key) {
+        return this.getKeyPos(key) > -1;
+    }
+
+    /**
+     * Removes the entry associated with the specified key. The remaining
+     * entries keep their order.
+     *
+     * @param key the key whose entry is to be removed
+     */
+    public void remove(String key) {
+        int pos = this.getKeyPos(key);
+        if (pos == -1) {
+            return; // Key not found, do nothing
+        }
+
+        int bucket = HashIndex.bucketOf(this.index, this.hashes, pos);
+        HashIndex.remove(this.index, this.hashes, bucket);
+        this.keys[pos] = null;
+        this.values[pos] = null;
+        this.size--;
+        this.modCount++;
+        if (pos == this.used - 1) {
+            this.used--;
+        } else if (this.used - this.size > Math.max(this.size, DEFAULT_CAPACITY)) {
+            this.resize(this.keys.length);
+        }
+    }
+
+    /**
+     * Returns the number of entries in the map.
+     *
+     * @return the number of entries in this map
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns a count of the changes to the set of keys: it changes
+     * whenever a key is added or removed, but not when a value is updated.
+     * Callers can compare counts to tell whether something derived from
+     * the keys, such as a copy of {@link #keys()}, is still current.
+     *
+     * @return the modification count
+     */
+    public int modCount() {
+        return this.modCount;
+    }
+
+    /**
+     * Returns a new array of all keys in the map, in insertion order.
+     *
+     * @return an array of keys
+     */
+    public String[] keys() {
+        this.compact();
+        return Arrays.copyOf(this.keys, this.size);
+    }
+
+    /**
+     * Returns a new array of all values in the map, in the same order as
+     * {@link #keys()}.
+     *
+     * @return an array of values
+     */
+    public String[] values() {
+        this.compact();
+        return Arrays.copyOf(this.values, this.size);
+    }
+
+    /**
+     * Returns the key at the given position in insertion order. The first
+     * positional access after a removal compacts the map.
+     *
+     * @param i the position, between 0 (inclusive) and {@link #size()}
+     *          (exclusive)
+     * @return the key at that position
+     * @throws IndexOutOfBoundsException if {@code i} is out of range
+     */
+    public String keyAt(int i) {
+        int pos = this.checkPos(i); // may compact, replacing the arrays
+        return this.keys[pos];
+    }
+
+    /**
+     * Returns the value at the given position in insertion order.
+     *
+     * @param i the position, between 0 (inclusive) and {@link #size()}
+     *          (exclusive)
+     * @return the value at that position
+     * @throws IndexOutOfBoundsException if {@code i} is out of range
+     */
+    public String valueAt(int i) {
+        int pos = this.checkPos(i); // may compact, replacing the arrays
+        return this.values[pos];
+    }
+
+    /**
+     * Calls the given action on each key and value, in insertion order.
+     *
+     * @param action the action to call
+     */
+    public void forEach(BiConsumer<? super String, ? super String> action) {
+        for (int i = 0; i < this.used; i++) {
+            if (this.keys[i] != null) {
+                action.accept(this.keys[i], this.values[i]);
+            }
+        }
+    }
+
+    /**
+     * Estimates the memory retained by this map.
+     *
+     * @return the estimated footprint
+     */
+    public Footprint footprint() {
+        return this.footprint(new Footprint());
+    }
+
+    /**
+     * Adds the memory retained by this map to a footprint.
+     *
+     * @param total the footprint to add to
+     * @return {@code total}
+     */
+    public Footprint footprint(Footprint total) {
+        total.addOther(this, 4 * Footprint.REFERENCE + 3 * Integer.BYTES);
+        total.addArray(this.keys, this.keys.length, Footprint.REFERENCE, this.size);
+        total.addArray(this.values, this.values.length, Footprint.REFERENCE, this.size);
+        total.addArray(this.hashes, this.hashes.length, Integer.BYTES, this.size);
+        total.addArray(this.index, this.index.length, Integer.BYTES, this.size);
+        for (int i = 0; i < this.used; i++) {
+            if (this.keys[i] != null) {
+                total.addKey(this.keys[i]);
+                total.addValue(this.values[i]);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Moves the entries, without empty slots, into arrays of the given
+     * capacity, which must be at least {@code size}, and rebuilds the index
+     * from the cached hash codes.
+     */
+    private void resize(int capacity) {
+        String[] newKeys = new String[capacity];
+        String[] newValues = new String[capacity];
+        int[] newHashes = new int[capacity];
+        int n = 0;
+        for (int i = 0; i < this.used; i++) {
+            if (this.keys[i] != null) {
+                newKeys[n] = this.keys[i];
+                newValues[n] = this.values[i];
+                newHashes[n] = this.hashes[i];
+                n++;
+            }
+        }
+        this.keys = newKeys;
+        this.values = newValues;
+        this.hashes = newHashes;
+        this.used = n;
+        this.index = HashIndex.rebuild(this.hashes, n, HashIndex.tableSize(capacity));
+    }
+
+    /**
+     * Removes any empty slots, so that the entries occupy positions 0
+     * through {@code size - 1}.
+     */
+    private void compact() {
+        if (this.used != this.size) {
+            this.resize(this.keys.length);
+        }
+    }
+
+    /**
+     * Checks that a position refers to an entry in use.
+     */
+    private int checkPos(int i) {
+        if (i < 0 || i >= this.size) {
+            throw new IndexOutOfBoundsException("Index " + i + " out of bounds for size "
+                + this.size);
+        }
+        this.compact();
+        return i;
+    }
+
+    /**
+     * Finds the position of the specified key.
+     *
+     * @param key the key to find
+     * @return the position of the key, or -1 if not found
+     */
+    private int getKeyPos(String key) {
+        if (key == null) {
+            return -1;
+        }
+        return this.getKeyPos(key, HashIndex.hash(key));
+    }
+
+    /**
+     * Finds the position of the specified key, given its already-computed
+     * hash.
+     *
+     * @param key the key to find
+     * @param hash the spread hash code of the key
+     * @return the position of the key, or -1 if not found
+     */
+    private int getKeyPos(String key, int hash) {
+        int mask = this.index.length - 1;
+        for (int b = hash & mask; ; b = (b + 1) & mask) {
+            int slot = this.index[b];
+            if (slot == 0) {
+                return -1;
+            }
+            slot--;
+            if (this.hashes[slot] == hash && this.keys[slot].equals(key)) {
+                return slot;
+            }
+        }
+    }
+}
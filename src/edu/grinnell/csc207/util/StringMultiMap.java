@@ -0,0 +1,126 @@
+package edu.grinnell.csc207.util;
+
+import java.util.Arrays;
+
+/**
+ * A map from strings to sets of strings, such as a reverse index from the
+ * text of a tile to the images that say it. Each key's values are kept in
+ * the order they were added, without duplicates. Keys whose last value is
+ * removed disappear.
+ *
+ * @author Moise Milenge
+ */
+public class StringMultiMap {
+
+    private static final String[] NONE = new String[0];
+
+    /** The values for each key; each array is full (no unused slots). */
+    private final AssociativeArray<String, String[]> map;
+
+    /**
+     * Constructs an empty multimap.
+     */
+    public StringMultiMap() {
+        this.map = new AssociativeArray<>();
+    }
+
+    /**
+     * Adds a value to the set for a key, if it is not already there.
+     *
+     * @param key the key
+     * @param value the value to add
+     * @throws NullKeyException if the key is null
+     */
+    public void add(String key, String value) throws NullKeyException {
+        String[] values = this.get(key);
+        for (String v : values) {
+            if (v.equals(value)) {
+                return;
+            }
+        }
+        values = Arrays.copyOf(values, values.length + 1);
+        values[values.length - 1] = value;
+        this.map.set(key, values);
+    }
+
+    /**
+     * Removes a value from the set for a key, if it is there.
+     *
+     * @param key the key
+     * @param value the value to remove
+     */
+    public void remove(String key, String value) {
+        String[] values = this.get(key);
+        for (int i = 0; i < values.length; i++) {
+            if (values[i].equals(value)) {
+                if (values.length == 1) {
+                    this.map.remove(key);
+                } else {
+                    String[] rest = new String[values.length - 1];
+                    System.arraycopy(values, 0, rest, 0, i);
+                    System.arraycopy(values, i + 1, rest, i, rest.length - i);
+                    try {
+                        this.map.set(key, rest);
+                    } catch (NullKeyException e) {
+                        // The key was found, so it is not null.
+                        throw new IllegalStateException(e);
+                    }
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the values for a key, in the order they were added. The
+     * array is shared and must not be modified.
+     *
+     * @param key the key
+     * @return the values for the key; an empty array if there are none
+     */
+    public String[] get(String key) {
+        try {
+            return this.map.hasKey(key) ? this.map.get(key) : NONE;
+        } catch (KeyNotFoundException e) {
+            return NONE;
+        }
+    }
+
+    /**
+     * Checks if a key has any values.
+     *
+     * @param key the key
+     * @return {@code true} if the key has at least one value
+     */
+    public boolean hasKey(String key) {
+        return this.map.hasKey(key);
+    }
+
+    /**
+     * Returns the number of keys with at least one value.
+     *
+     * @return the number of keys
+     */
+    public int size() {
+        return this.map.size();
+    }
+
+    /**
+     * Adds the memory retained by this multimap to a footprint. The arrays
+     * of values count as backing arrays.
+     *
+     * @param total the footprint to add to
+     * @return {@code total}
+     */
+    public Footprint footprint(Footprint total) {
+        total.addOther(this, Footprint.REFERENCE);
+        this.map.footprint(total);
+        this.map.forEach((key, values) -> {
+            total.addArray(values, values.length, Footprint.REFERENCE, values.length);
+            for (String value : values) {
+                total.addValue(value);
+            }
+        });
+        return total;
+    }
+}